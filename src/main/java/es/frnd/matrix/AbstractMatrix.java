@@ -23,6 +23,7 @@
  */
 package es.frnd.matrix;
 
+import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
 import java.util.ArrayList;
@@ -35,6 +36,10 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import es.frnd.metrics.Metrics;
+import es.frnd.metrics.Metrics.Counter;
+import es.frnd.metrics.Metrics.Distribution;
+
 /**
  * 
  * @author fernando
@@ -51,6 +56,9 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 	final Map<C, Cell<T, V>>			totalRow;
 	final Map<R, Cell<T, V>>			totalColumn;
 	final Cell<T, V>					total;
+	private Metrics						metrics;
+	private List<MatrixListener<R, C, V>>	listeners;
+	private ChangeBatch<R, C, V>		changes;
 
 	/**
 	 * Returns the row resolver.
@@ -79,6 +87,22 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 	 */
 	protected abstract Cell<T, V> createCell();
 
+	/**
+	 * Returns a new and empty cell for the total of a row, by default as any
+	 * other cell.
+	 */
+	protected Cell<T, V> createRowTotal() {
+		return createCell();
+	}
+
+	/**
+	 * Returns a new and empty cell for the total of a column, by default as
+	 * any other cell.
+	 */
+	protected Cell<T, V> createColumnTotal() {
+		return createCell();
+	}
+
 	public AbstractMatrix(Map<R, Map<C, Matrix.Cell<T, V>>> backingMap, List<T> allItems,
 			Map<C, Cell<T, V>> totalRow, Map<R, Cell<T, V>> totalColumn, Cell<T, V> total) {
 		super();
@@ -106,7 +130,7 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 
 	@Override
 	public boolean contains(R rowKey, C columnKey) {
-		Map<C, ?> map = row(rowKey);
+		Map<C, ?> map = backingMap.get(rowKey);
 		return map != null ? map.containsKey(columnKey) : false;
 	}
 
@@ -122,8 +146,15 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 
 	@Override
 	public Cell<T, V> get(R row, C column) {
-		Map<C, Cell<T, V>> rowMap = row(row);
-		return rowMap != null && rowMap.get(column) != null ? rowMap.get(column) : getEmptyCell();
+		Map<C, Cell<T, V>> rowMap = backingMap.get(row);
+		Cell<T, V> cell = rowMap != null ? rowMap.get(column) : null;
+		if (metrics != null) {
+			metrics.count(Counter.LOOKUPS);
+			if (cell == null) {
+				metrics.count(Counter.MISSES);
+			}
+		}
+		return cell != null ? cell : getEmptyCell();
 	}
 	
 	private es.frnd.matrix.Matrix.Cell<T, V> getEmptyCell() {
@@ -475,11 +506,29 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 
 	@Override
 	public void clear() {
-		backingMap.clear();
-		allItems.clear();
-		totalColumn.clear();
-		totalRow.clear();
-		total.clear();
+		begin();
+		try {
+			if (changes != null) {
+				for (Map.Entry<R, Map<C, Cell<T, V>>> row : backingMap.entrySet()) {
+					for (Map.Entry<C, Cell<T, V>> cell : row.getValue().entrySet()) {
+						cleared(Change.Kind.CELL, row.getKey(), cell.getKey(), cell.getValue());
+					}
+				}
+				for (Map.Entry<R, Cell<T, V>> total : totalColumn.entrySet()) {
+					cleared(Change.Kind.ROW_TOTAL, total.getKey(), null, total.getValue());
+				}
+				for (Map.Entry<C, Cell<T, V>> total : totalRow.entrySet()) {
+					cleared(Change.Kind.COLUMN_TOTAL, null, total.getKey(), total.getValue());
+				}
+			}
+			backingMap.clear();
+			allItems.clear();
+			totalColumn.clear();
+			totalRow.clear();
+			total.clear();
+		} finally {
+			end();
+		}
 	}
 
 	@Override
@@ -490,29 +539,179 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 		R row;
 		C column;
 
-		row = getRowResolver().resolve(value);
-		column = getColResolver().resolve(value);
+		begin();
+		try {
+			row = resolve(getRowResolver(), value);
+			column = resolve(getColResolver(), value);
 
-		// Add the element to the specific total row
-		cell = safeTotalRow(column);
-		cell.getItems().add(value);
-		cell.accumulate();
+			// Add the element to the specific total row
+			cell = safeTotalRow(column);
+			add(Change.Kind.COLUMN_TOTAL, null, column, cell, value);
 
-		// Add the element to the specific total column
-		cell = safeTotalColumn(row);
-		cell.getItems().add(value);
-		cell.accumulate();
+			// Add the element to the specific total column
+			cell = safeTotalColumn(row);
+			add(Change.Kind.ROW_TOTAL, row, null, cell, value);
 
-		// Add the element to the cell
-		cell = safeGet(row, column);
-		cell.getItems().add(value);
-		cell.accumulate();
-		
-		allItems.add(value);
+			// Add the element to the cell
+			cell = safeGet(row, column);
+			add(Change.Kind.CELL, row, column, cell, value);
+
+			allItems.add(value);
+		} finally {
+			end();
+		}
 
 		return cell;
 	}
 
+	private <K> K resolve(Resolver<T, K> resolver, T item) {
+		if (metrics == null) {
+			return resolver.resolve(item);
+		}
+		long start = System.nanoTime();
+		K key = resolver.resolve(item);
+		metrics.record(Distribution.RESOLVE_NANOS, System.nanoTime() - start);
+		return key;
+	}
+
+	private void add(Change.Kind kind, R row, C column, Cell<T, V> cell, T item) {
+		V old = valueBefore(kind, row, column, cell);
+		if (metrics == null) {
+			addItem(cell, item);
+		} else {
+			long start = System.nanoTime();
+			addItem(cell, item);
+			metrics.record(Distribution.ACCUMULATE_NANOS, System.nanoTime() - start);
+			metrics.record(Distribution.ACCUMULATED_ITEMS, cell.getItems().size());
+		}
+		changed(kind, row, column, old, cell);
+	}
+
+	private void discard(Change.Kind kind, R row, C column, Cell<T, V> cell, T item) {
+		V old = valueBefore(kind, row, column, cell);
+		if (metrics == null) {
+			removeItem(cell, item);
+		} else {
+			long start = System.nanoTime();
+			removeItem(cell, item);
+			metrics.record(Distribution.ACCUMULATE_NANOS, System.nanoTime() - start);
+			metrics.record(Distribution.ACCUMULATED_ITEMS, cell.getItems().size());
+		}
+		changed(kind, row, column, old, cell);
+	}
+
+	private void merge(Change.Kind kind, R row, C column, Cell<T, V> cell, Cell<T, V> other) {
+		V old = valueBefore(kind, row, column, cell);
+		mergeCell(cell, other);
+		changed(kind, row, column, old, cell);
+	}
+
+	/**
+	 * Returns the value of a cell before a change, {@code null} if it has no
+	 * items as after a change. It is read only if there are listeners and the
+	 * cell did not change yet in the operation, so a cell whose value is
+	 * accumulated on read is not accumulated by every change, and a value
+	 * updated in place is copied once.
+	 */
+	private V valueBefore(Change.Kind kind, R row, C column, Cell<T, V> cell) {
+		if (changes == null || cell.getItems().isEmpty() || changes.contains(kind, row, column)) {
+			return null;
+		}
+		return Matrices.copy(getAccumulator(), cell.getValue());
+	}
+
+	/**
+	 * Records the change of a cell for the listeners, if there are any.
+	 */
+	private void changed(Change.Kind kind, R row, C column, V old, Cell<T, V> cell) {
+		if (changes != null) {
+			changes.changed(kind, row, column, old, cell.getItems().isEmpty() ? null : cell.getValue());
+		}
+	}
+
+	/**
+	 * Records the removal of all the items of a cell, if it had any.
+	 */
+	private void cleared(Change.Kind kind, R row, C column, Cell<T, V> cell) {
+		if (!cell.getItems().isEmpty()) {
+			changes.changed(kind, row, column, cell.getValue(), null);
+		}
+	}
+
+	/**
+	 * Starts an operation, the changes are given to the listeners when the
+	 * outermost one ends.
+	 */
+	private void begin() {
+		if (changes != null) {
+			changes.begin();
+		}
+	}
+
+	private void end() {
+		if (changes != null) {
+			List<Change<R, C, V>> batch = changes.end();
+			if (batch != null) {
+				for (MatrixListener<R, C, V> listener : listeners) {
+					listener.changed(Collections.unmodifiableList(batch));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a listener of the changes of the cells and totals. The changes of
+	 * each {@code put()}, {@code remove()}, {@code merge()} and
+	 * {@code clear()}, and of a whole {@code putAll()} or {@code removeAll()},
+	 * are given together once the operation ends.
+	 * 
+	 * Only the changes made by the operations of this class are notified, not
+	 * the ones of subclasses overriding them.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addListener(MatrixListener<R, C, V> listener) {
+		if (listeners == null) {
+			listeners = new ArrayList<MatrixListener<R, C, V>>();
+			changes = new ChangeBatch<R, C, V>();
+		}
+		listeners.add(listener);
+	}
+
+	public void removeListener(MatrixListener<R, C, V> listener) {
+		if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+			listeners = null;
+			changes = null;
+		}
+	}
+
+	/**
+	 * Adds an item to a cell and updates its value.
+	 * 
+	 * @param cell
+	 *            the cell where the item falls
+	 * @param item
+	 *            the item to add
+	 */
+	protected void addItem(Cell<T, V> cell, T item) {
+		cell.getItems().add(item);
+		cell.accumulate();
+	}
+
+	/**
+	 * Removes an item from a cell and updates its value.
+	 * 
+	 * @param cell
+	 *            the cell where the item falls
+	 * @param item
+	 *            the item to remove
+	 */
+	protected void removeItem(Cell<T, V> cell, T item) {
+		cell.getItems().remove(item);
+		cell.accumulate();
+	}
+
 	private Cell<T, V> safeGet(R rowKey, C columnKey) {
 		Map<C, Cell<T, V>> row;
 		Cell<T, V> cell;
@@ -522,6 +721,7 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 			backingMap.put(rowKey, row);
 		}
 		cell = row.get(columnKey);
+		lookedUp(cell);
 		if (cell == null) {
 			cell = createCell();
 			row.put(columnKey, cell);
@@ -532,8 +732,9 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 
 	private Cell<T, V> safeTotalColumn(R columnKey) {
 		Cell<T, V> total = totalColumn.get(columnKey);
+		lookedUp(total);
 		if (total == null) {
-			total = createCell();
+			total = createRowTotal();
 			totalColumn.put(columnKey, total);
 		}
 		return total;
@@ -541,22 +742,139 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 
 	private Cell<T, V> safeTotalRow(C columnKey) {
 		Cell<T, V> total = totalRow.get(columnKey);
+		lookedUp(total);
 		if (total == null) {
-			total = createCell();
+			total = createColumnTotal();
 			totalRow.put(columnKey, total);
 		}
 		return total;
 	}
 
+	/**
+	 * Counts the search of a cell or total to update, and its creation if it
+	 * is not found.
+	 * 
+	 * @param cell
+	 *            the cell found, or {@code null}
+	 */
+	private void lookedUp(Cell<T, V> cell) {
+		if (metrics != null) {
+			metrics.count(Counter.LOOKUPS);
+			if (cell == null) {
+				metrics.count(Counter.MISSES);
+				metrics.count(Counter.CELL_CREATIONS);
+			}
+		}
+	}
+
+	/**
+	 * Searches an item to remove in the cells, recording the items compared.
+	 */
+	private boolean find(T item) {
+		if (metrics == null || item == null) {
+			return contains(item);
+		}
+		long compared = 0;
+		for (Map<C, Matrix.Cell<T, V>> row : backingMap.values()) {
+			for (Matrix.Cell<T, V> cell : row.values()) {
+				int index = cell.getItems().indexOf(item);
+				if (index >= 0) {
+					metrics.record(Distribution.REMOVAL_SCAN_LENGTH, compared + index + 1);
+					return true;
+				}
+				compared += cell.getItems().size();
+			}
+		}
+		metrics.record(Distribution.REMOVAL_SCAN_LENGTH, compared);
+		return false;
+	}
+
+	/**
+	 * Removes an item from the list of all the items, recording the items
+	 * compared.
+	 */
+	private void removeFromAll(T item) {
+		if (metrics == null) {
+			allItems.remove(item);
+			return;
+		}
+		int index = allItems.indexOf(item);
+		metrics.record(Distribution.REMOVAL_SCAN_LENGTH, index >= 0 ? index + 1 : allItems.size());
+		if (index >= 0) {
+			// By value, the lists of some matrices can not remove by index
+			allItems.remove(item);
+		}
+	}
+
 	@Override
 	public void putAll(Collection<T> values) {
 		// TODO (frnd) improve performance. 
 		// Some items can fall in the same cell.
-		for (T value : values) {
-			put(value);
+		begin();
+		try {
+			for (T value : values) {
+				put(value);
+			}
+		} finally {
+			end();
 		}
 	}
 
+	@Override
+	public void merge(Matrix<R, C, T, V> other) {
+		if (other == this) {
+			throw new IllegalArgumentException("A matrix can not be merged into itself");
+		}
+		begin();
+		try {
+			for (Map.Entry<R, Map<C, Cell<T, V>>> row : other.rowMap().entrySet()) {
+				for (Map.Entry<C, Cell<T, V>> cell : row.getValue().entrySet()) {
+					merge(Change.Kind.CELL, row.getKey(), cell.getKey(), safeGet(row.getKey(), cell.getKey()),
+							cell.getValue());
+				}
+			}
+			for (R rowKey : other.rowKeySet()) {
+				Cell<T, V> total = other.totalRow(rowKey);
+				if (total != null) {
+					merge(Change.Kind.ROW_TOTAL, rowKey, null, safeTotalColumn(rowKey), total);
+				}
+			}
+			for (C columnKey : other.columnKeySet()) {
+				Cell<T, V> total = other.totalColumn(columnKey);
+				if (total != null) {
+					merge(Change.Kind.COLUMN_TOTAL, null, columnKey, safeTotalRow(columnKey), total);
+				}
+			}
+			mergeItems(other);
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * Adds the items of another matrix to the list of all the items.
+	 * 
+	 * @param other
+	 *            the matrix to merge
+	 */
+	protected void mergeItems(Matrix<R, C, T, V> other) {
+		allItems.addAll(other.getItems());
+	}
+
+	/**
+	 * Adds the items of a cell of another matrix to a cell and updates its
+	 * value.
+	 * 
+	 * @param cell
+	 *            the cell of this matrix
+	 * @param other
+	 *            the cell to merge
+	 */
+	protected void mergeCell(Cell<T, V> cell, Cell<T, V> other) {
+		cell.getItems().addAll(other.getItems());
+		cell.accumulate();
+	}
+
 	@Override
 	public void remove(T value) {
 		// TODO (frnd) failure tolerance. 
@@ -565,34 +883,44 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 		R row;
 		C column;
 
-		if (!contains(value)) {
+		if (!find(value)) {
 			return;
 		}
 
-		row = getRowResolver().resolve(value);
-		column = getColResolver().resolve(value);
+		begin();
+		try {
+			row = resolve(getRowResolver(), value);
+			column = resolve(getColResolver(), value);
 
-		cell = safeTotalRow(column);
-		cell.getItems().remove(value);
-		cell.accumulate();
+			cell = safeTotalRow(column);
+			discard(Change.Kind.COLUMN_TOTAL, null, column, cell, value);
 
-		cell = safeTotalColumn(row);
-		cell.getItems().remove(value);
-		cell.accumulate();
+			cell = safeTotalColumn(row);
+			discard(Change.Kind.ROW_TOTAL, row, null, cell, value);
 
-		cell = get(row, column);
-		cell.getItems().remove(value);
-		cell.accumulate();
-		
-		allItems.remove(value);
+			cell = get(row, column);
+			discard(Change.Kind.CELL, row, column, cell, value);
+
+			removeFromAll(value);
+			if (metrics != null) {
+				metrics.count(Counter.REMOVALS);
+			}
+		} finally {
+			end();
+		}
 	}
 
 	@Override
 	public void removeAll(Collection<T> values) {
 		// TODO (frnd) improve performance. 
 		// Some items can fall in the same cell.
-		for (T value : values) {
-			remove(value);
+		begin();
+		try {
+			for (T value : values) {
+				remove(value);
+			}
+		} finally {
+			end();
 		}
 	}
 
@@ -680,23 +1008,106 @@ public abstract class AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
 	}
 
 	@Override
-	public String toString() {
-		StringBuffer buffer = new StringBuffer();
-		buffer.append(String.format("%10s |", ""));
-		for (C column : columnKeySet()) {
-			buffer.append(String.format("%10s |", column));
-		}
-		buffer.append("\n");
-		for (R row : rowKeySet()) {
-			buffer.append(String.format("%10s |", row));
-			for (C column : columnKeySet()) {
-				if (contains(row, column)) {
-					buffer.append(String.format("%10s |", get(row, column).getValue().toString()));
-				} else {
-					buffer.append(String.format("%10s |", ""));
-				}
+	public Matrix<R, C, T, V> subMatrix(Selection<R> rows, Selection<C> columns) {
+		return new SubMatrix<R, C, T, V>(this, rows, columns);
+	}
+
+	@Override
+	public Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns) {
+		List<Cell<T, V>> cells = new ArrayList<Cell<T, V>>();
+		for (Map<C, Cell<T, V>> row : rows.select(backingMap).values()) {
+			cells.addAll(columns.select(row).values());
+		}
+		return aggregate(cells);
+	}
+
+	/**
+	 * Returns a new cell with the items of the given cells and their value.
+	 * The cells are merged one by one into a new cell.
+	 * 
+	 * @param cells
+	 *            the cells to aggregate
+	 * @return the aggregated cell
+	 */
+	protected Cell<T, V> aggregate(List<Cell<T, V>> cells) {
+		Cell<T, V> result = createCell();
+		for (Cell<T, V> cell : cells) {
+			mergeCell(result, cell);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the accumulator of the cell values, or {@code null} if it is not
+	 * known. It is given to the frozen copies of the matrix.
+	 * 
+	 * @return the accumulator
+	 */
+	protected Accumulator<T, V> getAccumulator() {
+		return null;
+	}
+
+	/**
+	 * Trims the lists of items of the matrix, its cells and its totals to
+	 * their size, releasing the room left over by bulk loads.
+	 * 
+	 * @see Footprint#getSlack()
+	 */
+	public void compact() {
+		trim(allItems);
+		for (Map<C, Cell<T, V>> row : backingMap.values()) {
+			for (Cell<T, V> cell : row.values()) {
+				trim(cell.getItems());
 			}
-			buffer.append("\n");
+		}
+		for (Cell<T, V> cell : totalRow.values()) {
+			trim(cell.getItems());
+		}
+		for (Cell<T, V> cell : totalColumn.values()) {
+			trim(cell.getItems());
+		}
+		trim(total.getItems());
+	}
+
+	private static void trim(List<?> items) {
+		if (items instanceof ArrayList) {
+			((ArrayList<?>) items).trimToSize();
+		}
+	}
+
+	/**
+	 * Records the work of this matrix in the given metrics, or stops recording
+	 * it if {@code null}. Nothing is recorded by default, and then recording
+	 * costs a field check per operation.
+	 * 
+	 * @param metrics
+	 *            the metrics, they may be shared with other matrices
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns an immutable copy of this matrix, safe to be shared among threads.
+	 * 
+	 * @return the frozen matrix
+	 */
+	public FrozenMatrix<R, C, T, V> freeze() {
+		return new FrozenMatrix<R, C, T, V>(this, getAccumulator());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+		try {
+			new MatrixWriter(MatrixWriter.Format.FIXED_WIDTH).write(this, buffer);
+		} catch (IOException e) {
+			// A string builder does not throw it
+			throw new IllegalStateException(e);
 		}
 		return buffer.toString();
 	}
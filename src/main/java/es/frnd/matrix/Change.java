@@ -0,0 +1,86 @@
+package es.frnd.matrix;
+
+/**
+ * Change of the value of a cell or total of a matrix.
+ * 
+ * The old value is a copy when the accumulator updates its values in place,
+ * a {@link Matrix.MutableAccumulator}, but the new value is the one of the
+ * cell, so it keeps changing with the cell after the change is notified.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <R>
+ *            the type of the row keys
+ * @param <C>
+ *            the type of the column keys
+ * @param <V>
+ *            the type of the values
+ */
+public final class Change<R, C, V> {
+
+	/**
+	 * What changed.
+	 */
+	public enum Kind {
+		/** A cell, with row and column keys. */
+		CELL,
+		/** The total of a row, with no column key. */
+		ROW_TOTAL,
+		/** The total of a column, with no row key. */
+		COLUMN_TOTAL
+	}
+
+	private final Kind	kind;
+
+	private final R		rowKey;
+
+	private final C		columnKey;
+
+	private final V		oldValue;
+
+	private V			newValue;
+
+	Change(Kind kind, R rowKey, C columnKey, V oldValue, V newValue) {
+		this.kind = kind;
+		this.rowKey = rowKey;
+		this.columnKey = columnKey;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	void setNewValue(V newValue) {
+		this.newValue = newValue;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public R getRowKey() {
+		return rowKey;
+	}
+
+	public C getColumnKey() {
+		return columnKey;
+	}
+
+	/**
+	 * Returns the value before the change, {@code null} for a new cell.
+	 */
+	public V getOldValue() {
+		return oldValue;
+	}
+
+	/**
+	 * Returns the value after the change, {@code null} for a cell left
+	 * without items.
+	 */
+	public V getNewValue() {
+		return newValue;
+	}
+
+	@Override
+	public String toString() {
+		return kind + " (" + rowKey + ", " + columnKey + "): " + oldValue + " -> " + newValue;
+	}
+}
@@ -0,0 +1,58 @@
+package es.frnd.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes of an operation on a matrix, keeping a single change for each
+ * cell or total, from its first value to its last one.
+ * 
+ * @author Fernando Gonzalez
+ */
+class ChangeBatch<R, C, V> {
+
+	private final Map<List<Object>, Change<R, C, V>>	changes	= new LinkedHashMap<List<Object>, Change<R, C, V>>();
+
+	/** The number of operations started and not finished. */
+	private int											depth;
+
+	void begin() {
+		depth++;
+	}
+
+	/**
+	 * Finishes an operation.
+	 * 
+	 * @return the changes if it was the outermost one, otherwise
+	 *         {@code null}
+	 */
+	List<Change<R, C, V>> end() {
+		if (--depth > 0 || changes.isEmpty()) {
+			return null;
+		}
+		List<Change<R, C, V>> result = new ArrayList<Change<R, C, V>>(changes.values());
+		changes.clear();
+		return result;
+	}
+
+	/**
+	 * Returns whether the cell or total already changed, so only its new
+	 * value is recorded.
+	 */
+	boolean contains(Change.Kind kind, R rowKey, C columnKey) {
+		return changes.containsKey(Arrays.<Object> asList(kind, rowKey, columnKey));
+	}
+
+	void changed(Change.Kind kind, R rowKey, C columnKey, V oldValue, V newValue) {
+		List<Object> key = Arrays.<Object> asList(kind, rowKey, columnKey);
+		Change<R, C, V> change = changes.get(key);
+		if (change == null) {
+			changes.put(key, new Change<R, C, V>(kind, rowKey, columnKey, oldValue, newValue));
+		} else {
+			change.setNewValue(newValue);
+		}
+	}
+}
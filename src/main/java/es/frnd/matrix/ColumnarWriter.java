@@ -0,0 +1,283 @@
+package es.frnd.matrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.frnd.matrix.Matrix.Cell;
+
+/**
+ * Writes the cells of a matrix with numeric values in a binary columnar
+ * layout, for tools that map it into arrays, such as NumPy or Arrow.
+ * 
+ * The layout follows the buffers of Apache Arrow, without the IPC metadata:
+ * the keys are dictionary encoded, the dictionaries are strings as offsets
+ * and UTF-8 data, and the cells are three contiguous vectors of row index,
+ * column index and value, with a validity bitmap for the cells without
+ * value. All the numbers are little endian and every buffer starts at a
+ * multiple of 8 bytes, padded with zeros:
+ * 
+ * <pre>
+ * magic          8 bytes, "MTRXCOL1"
+ * rows           int32, the number of row keys
+ * columns        int32, the number of column keys
+ * cells          int64, the number of cells
+ * row keys       int32[rows + 1] offsets, then their UTF-8 bytes
+ * column keys    int32[columns + 1] offsets, then their UTF-8 bytes
+ * row index      int32[cells]
+ * column index   int32[cells]
+ * validity       bit i of byte i / 8 set if cell i has a value
+ * values         float64[cells], 0 for the cells without value
+ * </pre>
+ * 
+ * The keys are written as their {@code toString()}, in the order of the
+ * matrix. The cells are written in row order, reading the matrix once to
+ * build the dictionaries and once per vector, with no object per cell, so
+ * the matrix must not change meanwhile.
+ * 
+ * @author Fernando Gonzalez
+ */
+public final class ColumnarWriter {
+
+	private static final byte[]		MAGIC		= { 'M', 'T', 'R', 'X', 'C', 'O', 'L', '1' };
+
+	private static final Charset	UTF8		= Charset.forName("UTF-8");
+
+	private static final int		CHUNK		= 64 * 1024;
+
+	private ColumnarWriter() {
+	}
+
+	/**
+	 * Returns the number of bytes written for a matrix.
+	 */
+	public static long size(Matrix<?, ?, ?, ? extends Number> matrix) {
+		return new Layout<Object, Object>(matrix).size();
+	}
+
+	/**
+	 * Writes a matrix to a channel, such as a {@link java.nio.channels.FileChannel},
+	 * through a direct buffer.
+	 * 
+	 * @return the number of bytes written
+	 */
+	public static long write(Matrix<?, ?, ?, ? extends Number> matrix, WritableByteChannel channel)
+			throws IOException {
+		Layout<Object, Object> layout = new Layout<Object, Object>(matrix);
+		ChannelSink sink = new ChannelSink(channel);
+		layout.write(sink);
+		sink.flush();
+		return layout.size();
+	}
+
+	/**
+	 * Writes a matrix at the position of a buffer, such as a direct or a
+	 * mapped one, advancing it.
+	 * 
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer has less room than {@link #size(Matrix)}
+	 */
+	public static void write(Matrix<?, ?, ?, ? extends Number> matrix, ByteBuffer buffer) {
+		Layout<Object, Object> layout = new Layout<Object, Object>(matrix);
+		if (buffer.remaining() < layout.size()) {
+			throw new java.nio.BufferOverflowException();
+		}
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			layout.write(new BufferSink(buffer));
+		} catch (IOException e) {
+			// A buffer does not throw it
+			throw new IllegalStateException(e);
+		} finally {
+			buffer.order(order);
+		}
+	}
+
+	/**
+	 * Where the bytes go.
+	 */
+	private abstract static class Sink {
+
+		/**
+		 * Returns a little endian buffer with room for the given bytes.
+		 */
+		abstract ByteBuffer room(int bytes) throws IOException;
+	}
+
+	private static class BufferSink extends Sink {
+
+		private final ByteBuffer	buffer;
+
+		BufferSink(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		ByteBuffer room(int bytes) {
+			return buffer;
+		}
+	}
+
+	private static class ChannelSink extends Sink {
+
+		private final WritableByteChannel	channel;
+
+		private final ByteBuffer			buffer	= ByteBuffer.allocateDirect(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+		ChannelSink(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		ByteBuffer room(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+			return buffer;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * The dictionaries and sizes of the layout of a matrix.
+	 */
+	private static class Layout<R, C> {
+
+		private final Matrix<R, C, ?, ? extends Number>	matrix;
+
+		private final Map<C, Integer>					columnIndex	= new HashMap<C, Integer>();
+
+		private final List<byte[]>						rowKeys		= new ArrayList<byte[]>();
+
+		private final List<byte[]>						columnKeys	= new ArrayList<byte[]>();
+
+		private long									cells;
+
+		@SuppressWarnings("unchecked")
+		Layout(Matrix<?, ?, ?, ? extends Number> matrix) {
+			this.matrix = (Matrix<R, C, ?, ? extends Number>) matrix;
+			for (C column : this.matrix.columnKeySet()) {
+				columnIndex.put(column, columnKeys.size());
+				columnKeys.add(String.valueOf(column).getBytes(UTF8));
+			}
+			for (Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>> row : rows()) {
+				rowKeys.add(String.valueOf(row.getKey()).getBytes(UTF8));
+				cells += row.getValue().size();
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Iterable<Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>>> rows() {
+			return (Iterable) matrix.rowMap().entrySet();
+		}
+
+		long size() {
+			return 24 + dictionarySize(rowKeys) + dictionarySize(columnKeys) + 2 * pad(4 * cells)
+					+ pad((cells + 7) / 8) + 8 * cells;
+		}
+
+		void write(Sink sink) throws IOException {
+			ByteBuffer buffer = sink.room(24);
+			buffer.put(MAGIC);
+			buffer.putInt(rowKeys.size());
+			buffer.putInt(columnKeys.size());
+			buffer.putLong(cells);
+			dictionary(sink, rowKeys);
+			dictionary(sink, columnKeys);
+
+			int rowIndex = 0;
+			for (Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>> row : rows()) {
+				for (int i = 0; i < row.getValue().size(); i++) {
+					sink.room(4).putInt(rowIndex);
+				}
+				rowIndex++;
+			}
+			padding(sink, 4 * cells);
+
+			for (Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>> row : rows()) {
+				for (C column : row.getValue().keySet()) {
+					Integer index = columnIndex.get(column);
+					sink.room(4).putInt(index != null ? index : -1);
+				}
+			}
+			padding(sink, 4 * cells);
+
+			int bits = 0;
+			int bit = 0;
+			for (Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>> row : rows()) {
+				for (Cell<?, ? extends Number> cell : row.getValue().values()) {
+					if (cell != null && cell.getValue() != null) {
+						bits |= 1 << bit;
+					}
+					if (++bit == 8) {
+						sink.room(1).put((byte) bits);
+						bits = 0;
+						bit = 0;
+					}
+				}
+			}
+			if (bit > 0) {
+				sink.room(1).put((byte) bits);
+			}
+			padding(sink, (cells + 7) / 8);
+
+			for (Map.Entry<R, ? extends Map<C, ? extends Cell<?, ? extends Number>>> row : rows()) {
+				for (Cell<?, ? extends Number> cell : row.getValue().values()) {
+					Number value = cell != null ? cell.getValue() : null;
+					sink.room(8).putDouble(value != null ? value.doubleValue() : 0);
+				}
+			}
+		}
+
+		private static long dictionarySize(List<byte[]> keys) {
+			long data = 0;
+			for (byte[] key : keys) {
+				data += key.length;
+			}
+			return pad(4L * (keys.size() + 1)) + pad(data);
+		}
+
+		private static void dictionary(Sink sink, List<byte[]> keys) throws IOException {
+			int offset = 0;
+			sink.room(4).putInt(0);
+			for (byte[] key : keys) {
+				offset += key.length;
+				sink.room(4).putInt(offset);
+			}
+			padding(sink, 4L * (keys.size() + 1));
+			for (byte[] key : keys) {
+				int written = 0;
+				while (written < key.length) {
+					int length = Math.min(key.length - written, CHUNK);
+					sink.room(length).put(key, written, length);
+					written += length;
+				}
+			}
+			padding(sink, offset);
+		}
+
+		private static long pad(long size) {
+			return (size + 7) & ~7L;
+		}
+
+		private static void padding(Sink sink, long size) throws IOException {
+			for (long i = size; i < pad(size); i++) {
+				sink.room(1).put((byte) 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package es.frnd.matrix;
+
+import es.frnd.metrics.Histogram;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import es.frnd.matrix.Matrix.Cell;
+
+/**
+ * Estimated memory retained by a matrix, and the distribution of its items
+ * and cells.
+ * 
+ * The sizes are estimated for a 64 bit virtual machine with compressed
+ * references: 12 bytes of object header, 4 bytes per reference and objects
+ * aligned to 8 bytes. The maps of the JDK are sized from their number of
+ * entries, other maps as hash maps. Objects of other classes are sized from
+ * their fields, plus the arrays they reference directly when those can be
+ * read. The items themselves are not included, only the lists holding them.
+ * 
+ * The tables of the hash maps and the arrays of the lists are read by
+ * reflection. Where it is denied, as on Java 9 and later without opening
+ * {@code java.util}, the tables are estimated as grown from the default
+ * capacity, the lists as full, and the loads of the maps are unknown.
+ * 
+ * @author Fernando Gonzalez
+ */
+public final class Footprint {
+
+	private static final int	HEADER		= 12;
+
+	private static final int	REFERENCE	= 4;
+
+	private static final int	ARRAY		= 16;
+
+	private int					rows;
+
+	private int					columns;
+
+	private int					cells;
+
+	private long				keyBytes;
+
+	private long				cellBytes;
+
+	private long				itemBytes;
+
+	private long				valueBytes;
+
+	private long				slack;
+
+	private Histogram.Snapshot	itemsPerCell;
+
+	private Histogram.Snapshot	cellsPerRow;
+
+	private double				rowMapLoad;
+
+	private double				columnMapLoad;
+
+	private Footprint() {
+	}
+
+	/**
+	 * Estimates the memory retained by a matrix, in a single pass over its
+	 * rows, cells and totals.
+	 */
+	public static <R, C, T, V> Footprint of(Matrix<R, C, T, V> matrix) {
+		Footprint footprint = new Footprint();
+		Sizes sizes = new Sizes();
+		Histogram itemsPerCell = new Histogram();
+		Histogram cellsPerRow = new Histogram();
+
+		Map<R, Map<C, Cell<T, V>>> rowMap = matrix.rowMap();
+		footprint.keyBytes += sizes.map(rowMap);
+		long columnEntries = 0;
+		long columnSlots = 0;
+		int readTables = 0;
+		for (Map.Entry<R, Map<C, Cell<T, V>>> row : rowMap.entrySet()) {
+			footprint.keyBytes += sizes.of(row.getKey()) + sizes.map(row.getValue());
+			cellsPerRow.record(row.getValue().size());
+			int table = Sizes.table(row.getValue());
+			if (table >= 0) {
+				columnEntries += row.getValue().size();
+				columnSlots += table;
+				readTables++;
+			}
+			for (Cell<T, V> cell : row.getValue().values()) {
+				footprint.add(sizes, cell);
+				itemsPerCell.record(cell.getItems().size());
+				footprint.cells++;
+			}
+		}
+		footprint.rows = rowMap.size();
+
+		// The totals, and the dictionary of the column keys
+		for (R rowKey : matrix.rowKeySet()) {
+			footprint.add(sizes, matrix.totalRow(rowKey));
+		}
+		for (C columnKey : matrix.columnKeySet()) {
+			footprint.keyBytes += sizes.of(columnKey);
+			footprint.add(sizes, matrix.totalColumn(columnKey));
+			footprint.columns++;
+		}
+		// The maps of the totals
+		footprint.keyBytes += sizes.map(footprint.rows, HashMap.class) + sizes.map(footprint.columns, HashMap.class);
+		footprint.itemBytes += sizes.list(matrix.getItems());
+		footprint.slack += sizes.slack(matrix.getItems());
+
+		footprint.itemsPerCell = itemsPerCell.snapshot();
+		footprint.cellsPerRow = cellsPerRow.snapshot();
+		footprint.rowMapLoad = load(rowMap.size(), Sizes.table(rowMap));
+		footprint.columnMapLoad = load(columnEntries, readTables == rowMap.size() ? columnSlots : -1);
+		return footprint;
+	}
+
+	/**
+	 * The entries by slot of a table, {@code NaN} if its length is unknown.
+	 */
+	private static double load(long entries, long slots) {
+		if (slots < 0) {
+			return Double.NaN;
+		}
+		return slots == 0 ? 0 : (double) entries / slots;
+	}
+
+	private void add(Sizes sizes, Cell<?, ?> cell) {
+		if (cell == null) {
+			return;
+		}
+		cellBytes += sizes.of(cell);
+		itemBytes += sizes.list(cell.getItems());
+		slack += sizes.slack(cell.getItems());
+		valueBytes += sizes.of(cell.getValue());
+	}
+
+	/**
+	 * Estimates the size of objects, counting each one once.
+	 */
+	private static class Sizes {
+
+		private final Map<Object, Boolean>	seen	= new IdentityHashMap<Object, Boolean>();
+
+		private final Map<Class<?>, Long>	shallow	= new HashMap<Class<?>, Long>();
+
+		long of(Object object) {
+			if (object == null || seen.put(object, Boolean.TRUE) != null) {
+				return 0;
+			}
+			if (object instanceof String) {
+				return align(HEADER + 3 * 4) + align(ARRAY + 2 * ((String) object).length());
+			}
+			if (object.getClass().isArray()) {
+				return array(object);
+			}
+			long size = shallow(object.getClass());
+			for (Class<?> type = object.getClass(); type != null && !type.getName().startsWith("java."); type = type
+					.getSuperclass()) {
+				for (Field field : type.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && field.getType().isArray()) {
+						size += referenced(field, object);
+					}
+				}
+			}
+			return size;
+		}
+
+		private long referenced(Field field, Object object) {
+			try {
+				field.setAccessible(true);
+				Object array = field.get(object);
+				return array == null || seen.put(array, Boolean.TRUE) != null ? 0 : array(array);
+			} catch (RuntimeException e) {
+				return 0;
+			} catch (IllegalAccessException e) {
+				return 0;
+			}
+		}
+
+		private static long array(Object array) {
+			Class<?> component = array.getClass().getComponentType();
+			return align(ARRAY + (long) Array.getLength(array) * (component.isPrimitive() ? primitive(component)
+					: REFERENCE));
+		}
+
+		private long shallow(Class<?> type) {
+			Long size = shallow.get(type);
+			if (size == null) {
+				long fields = 0;
+				for (Class<?> t = type; t != null; t = t.getSuperclass()) {
+					for (Field field : t.getDeclaredFields()) {
+						if (!Modifier.isStatic(field.getModifiers())) {
+							fields += field.getType().isPrimitive() ? primitive(field.getType()) : REFERENCE;
+						}
+					}
+				}
+				size = align(HEADER + fields);
+				shallow.put(type, size);
+			}
+			return size;
+		}
+
+		private static int primitive(Class<?> type) {
+			if (type == long.class || type == double.class) {
+				return 8;
+			} else if (type == int.class || type == float.class) {
+				return 4;
+			} else if (type == short.class || type == char.class) {
+				return 2;
+			}
+			return 1;
+		}
+
+		long map(Map<?, ?> map) {
+			if (map == null || seen.put(map, Boolean.TRUE) != null) {
+				return 0;
+			}
+			int table = table(map);
+			return map(map.size(), table >= 0 ? table : capacity(map.size()), map.getClass());
+		}
+
+		long map(int size, Class<?> type) {
+			return map(size, capacity(size), type);
+		}
+
+		/**
+		 * The map with its entries, not their keys and values.
+		 * 
+		 * @param slots
+		 *            the length of the table of a hash map
+		 */
+		private long map(int size, int slots, Class<?> type) {
+			if (TreeMap.class.isAssignableFrom(type)) {
+				return align(HEADER + 4 * REFERENCE + 8) + size * align(HEADER + 5 * REFERENCE + 1);
+			}
+			long table = slots > 0 ? align(ARRAY + (long) slots * REFERENCE) : 0;
+			if (LinkedHashMap.class.isAssignableFrom(type)) {
+				return align(HEADER + 8 * REFERENCE + 13) + table + size * align(HEADER + 6 * REFERENCE + 4);
+			}
+			return align(HEADER + 6 * REFERENCE + 16) + table + size * align(HEADER + 3 * REFERENCE + 4);
+		}
+
+		/**
+		 * The length of the table of a hash map, 0 before its first entry, or
+		 * -1 if it is not a hash map or its table can not be read.
+		 */
+		static int table(Map<?, ?> map) {
+			if (map instanceof HashMap) {
+				try {
+					Field field = HashMap.class.getDeclaredField("table");
+					field.setAccessible(true);
+					Object table = field.get(map);
+					return table == null ? 0 : Array.getLength(table);
+				} catch (RuntimeException e) {
+					// Not accessible in this virtual machine
+				} catch (NoSuchFieldException e) {
+					// Not a HashMap of the JDK
+				} catch (IllegalAccessException e) {
+					// Not accessible in this virtual machine
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * The capacity of a hash map with the default load factor, grown from
+		 * the default capacity, when its table can not be read.
+		 */
+		static int capacity(int size) {
+			int capacity = 16;
+			while (capacity * 3 / 4 < size) {
+				capacity *= 2;
+			}
+			return capacity;
+		}
+
+		long list(Collection<?> items) {
+			if (!(items instanceof List) || seen.put(items, Boolean.TRUE) != null) {
+				return 0;
+			}
+			return align(HEADER + 2 * REFERENCE + 4) + align(ARRAY + capacity((List<?>) items) * REFERENCE);
+		}
+
+		long slack(Collection<?> items) {
+			return items instanceof List ? capacity((List<?>) items) - items.size() : 0;
+		}
+
+		/**
+		 * The length of the array of a list, or its size if it can not be
+		 * read.
+		 */
+		private static int capacity(List<?> items) {
+			if (items instanceof ArrayList) {
+				try {
+					Field field = ArrayList.class.getDeclaredField("elementData");
+					field.setAccessible(true);
+					return ((Object[]) field.get(items)).length;
+				} catch (RuntimeException e) {
+					// Not accessible in this virtual machine
+				} catch (NoSuchFieldException e) {
+					// Not an ArrayList of the JDK
+				} catch (IllegalAccessException e) {
+					// Not accessible in this virtual machine
+				}
+			}
+			return items.size();
+		}
+
+		private static long align(long size) {
+			return (size + 7) & ~7L;
+		}
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the number of cells with items.
+	 */
+	public int getCells() {
+		return cells;
+	}
+
+	/**
+	 * Returns the bytes of the row and column keys and of the maps holding
+	 * them.
+	 */
+	public long getKeyBytes() {
+		return keyBytes;
+	}
+
+	/**
+	 * Returns the bytes of the cells and totals, without their items and
+	 * values.
+	 */
+	public long getCellBytes() {
+		return cellBytes;
+	}
+
+	/**
+	 * Returns the bytes of the lists of items, at their capacity.
+	 */
+	public long getItemBytes() {
+		return itemBytes;
+	}
+
+	/**
+	 * Returns the bytes of the values of the cells and totals.
+	 */
+	public long getValueBytes() {
+		return valueBytes;
+	}
+
+	public long getTotalBytes() {
+		return keyBytes + cellBytes + itemBytes + valueBytes;
+	}
+
+	/**
+	 * Returns the number of unused slots of the lists of items, released by
+	 * {@link AbstractMatrix#compact()}.
+	 */
+	public long getSlack() {
+		return slack;
+	}
+
+	/**
+	 * Returns the distribution of the number of items of the cells.
+	 */
+	public Histogram.Snapshot getItemsPerCell() {
+		return itemsPerCell;
+	}
+
+	/**
+	 * Returns the distribution of the number of cells of the rows.
+	 */
+	public Histogram.Snapshot getCellsPerRow() {
+		return cellsPerRow;
+	}
+
+	/**
+	 * Returns the load of the map of the rows, its entries by slot of its
+	 * table, or {@code NaN} if it is not a hash map or its table can not be
+	 * read.
+	 */
+	public double getRowMapLoad() {
+		return rowMapLoad;
+	}
+
+	/**
+	 * Returns the load of the maps of the cells of each row, their entries by
+	 * slot of their tables, or {@code NaN} if they are not hash maps or their
+	 * tables can not be read.
+	 */
+	public double getColumnMapLoad() {
+		return columnMapLoad;
+	}
+
+	@Override
+	public String toString() {
+		return "Footprint [rows=" + rows + ", columns=" + columns + ", cells=" + cells + ", bytes="
+				+ getTotalBytes() + " (keys=" + keyBytes + ", cells=" + cellBytes + ", items=" + itemBytes
+				+ ", values=" + valueBytes + "), slack=" + slack + ", itemsPerCell=" + itemsPerCell
+				+ ", cellsPerRow=" + cellsPerRow + ", rowMapLoad=" + rowMapLoad + ", columnMapLoad="
+				+ columnMapLoad + "]";
+	}
+}
@@ -0,0 +1,537 @@
+package es.frnd.matrix;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable copy of a matrix.
+ *
+ * The row and column keys are sorted by their natural order, when they have
+ * one, and the cells of each row are stored in arrays sorted by column. The
+ * values and totals are copied from the source matrix, so no accumulation is
+ * done on read. Every field is final and nothing is modified after the
+ * constructor, so a frozen matrix can be shared among threads without locking
+ * and replaced by a newer one just by swapping a reference.
+ *
+ * @author Fernando Gonzalez
+ *
+ * @param <R> The row index type
+ * @param <C> The column index type
+ * @param <T> The type of the elements that matrix will contain.
+ * @param <V> The type of the value. Is the result of accumulation this cell constituents.
+ */
+public class FrozenMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+	@SuppressWarnings("rawtypes")
+	private static final Cell			EMPTY	= new FrozenCell<Object, Object>(null, Collections.emptyList());
+
+	private final Object[]				rowKeys;
+
+	private final Object[]				columnKeys;
+
+	private final Map<Object, Integer>	rowIndex;
+
+	private final Map<Object, Integer>	columnIndex;
+
+	/**
+	 * The cells of row {@code i} are in the positions from
+	 * {@code rowOffsets[i]} to {@code rowOffsets[i + 1]} of {@link #cells}.
+	 */
+	private final int[]					rowOffsets;
+
+	private final int[]					cellColumns;
+
+	private final Cell<T, V>[]			cells;
+
+	private final Cell<T, V>[]			rowTotals;
+
+	private final Cell<T, V>[]			columnTotals;
+
+	private final List<T>				items;
+
+	private final Set<R>				rowKeySet;
+
+	private final Set<C>				columnKeySet;
+
+	private final Map<R, Map<C, Cell<T, V>>>	rowMap;
+
+	private final Map<C, Map<R, Cell<T, V>>>	columnMap;
+
+	private final Accumulator<T, V>				accumulator;
+
+	/**
+	 * Creates a copy of the matrix that can not aggregate cells. Values
+	 * updated in place by the accumulator of the source matrix are not copied,
+	 * so they change with the source.
+	 * 
+	 * @param source
+	 *            the matrix to copy
+	 */
+	public FrozenMatrix(Matrix<R, C, T, V> source) {
+		this(source, null);
+	}
+
+	/**
+	 * Creates a copy of the matrix.
+	 * 
+	 * @param source
+	 *            the matrix to copy
+	 * @param accumulator
+	 *            the accumulator of the values of the source matrix, used to
+	 *            aggregate cells and to copy the values it updates in place,
+	 *            or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	public FrozenMatrix(Matrix<R, C, T, V> source, Accumulator<T, V> accumulator) {
+		this.accumulator = accumulator;
+		rowKeys = sort(source.rowKeySet().toArray());
+		columnKeys = sort(source.columnKeySet().toArray());
+		rowIndex = index(rowKeys);
+		columnIndex = index(columnKeys);
+
+		rowOffsets = new int[rowKeys.length + 1];
+		List<Integer> columns = new ArrayList<Integer>();
+		List<Cell<T, V>> frozen = new ArrayList<Cell<T, V>>();
+		rowTotals = cellArray(rowKeys.length);
+		for (int row = 0; row < rowKeys.length; row++) {
+			Map<C, Cell<T, V>> cellsOfRow = source.rowMap().get(rowKeys[row]);
+			if (cellsOfRow != null) {
+				// The column of each cell in the high bits and its position in
+				// the low ones, to sort the cells of the row by column
+				long[] order = new long[cellsOfRow.size()];
+				List<Cell<T, V>> found = new ArrayList<Cell<T, V>>(order.length);
+				for (Map.Entry<C, Cell<T, V>> entry : cellsOfRow.entrySet()) {
+					Integer column = columnIndex.get(entry.getKey());
+					if (column != null && entry.getValue() != null) {
+						order[found.size()] = (long) column << 32 | found.size();
+						found.add(entry.getValue());
+					}
+				}
+				Arrays.sort(order, 0, found.size());
+				for (int i = 0; i < found.size(); i++) {
+					columns.add((int) (order[i] >>> 32));
+					frozen.add(freeze(found.get((int) order[i])));
+				}
+			}
+			rowOffsets[row + 1] = frozen.size();
+			rowTotals[row] = freeze(source.totalRow((R) rowKeys[row]));
+		}
+		cellColumns = new int[columns.size()];
+		for (int i = 0; i < cellColumns.length; i++) {
+			cellColumns[i] = columns.get(i);
+		}
+		cells = frozen.toArray(FrozenMatrix.<T, V> cellArray(frozen.size()));
+
+		columnTotals = cellArray(columnKeys.length);
+		for (int column = 0; column < columnKeys.length; column++) {
+			columnTotals[column] = freeze(source.totalColumn((C) columnKeys[column]));
+		}
+
+		items = Collections.unmodifiableList(Arrays.asList((T[]) source.getItems().toArray()));
+		rowKeySet = Collections.unmodifiableSet(new LinkedHashSet<R>((List<R>) Arrays.asList(rowKeys)));
+		columnKeySet = Collections.unmodifiableSet(new LinkedHashSet<C>((List<C>) Arrays.asList(columnKeys)));
+
+		Map<R, Map<C, Cell<T, V>>> rows = new LinkedHashMap<R, Map<C, Cell<T, V>>>();
+		for (int row = 0; row < rowKeys.length; row++) {
+			rows.put((R) rowKeys[row], new Row(row));
+		}
+		rowMap = Collections.unmodifiableMap(rows);
+		Map<C, Map<R, Cell<T, V>>> columnsMap = new LinkedHashMap<C, Map<R, Cell<T, V>>>();
+		for (int column = 0; column < columnKeys.length; column++) {
+			columnsMap.put((C) columnKeys[column], new Column(column));
+		}
+		columnMap = Collections.unmodifiableMap(columnsMap);
+	}
+
+	/**
+	 * Sorts the keys by their natural order, {@code null} last. Keys that are
+	 * not mutually comparable are left in their order.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Object[] sort(Object[] keys) {
+		try {
+			Arrays.sort(keys, new Comparator<Object>() {
+
+				@Override
+				public int compare(Object key1, Object key2) {
+					if (key1 == null) {
+						return key2 == null ? 0 : 1;
+					} else if (key2 == null) {
+						return -1;
+					}
+					return ((Comparable) key1).compareTo(key2);
+				}
+			});
+		} catch (ClassCastException e) {
+			// Keys without natural order
+		}
+		return keys;
+	}
+
+	private static Map<Object, Integer> index(Object[] keys) {
+		Map<Object, Integer> index = new HashMap<Object, Integer>(keys.length * 4 / 3 + 1);
+		for (int i = 0; i < keys.length; i++) {
+			index.put(keys[i], i);
+		}
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, V> Cell<T, V>[] cellArray(int length) {
+		return (Cell<T, V>[]) new Cell<?, ?>[length];
+	}
+
+	private Cell<T, V> freeze(Cell<T, V> cell) {
+		if (cell == null) {
+			return null;
+		}
+		return new FrozenCell<T, V>(Matrices.copy(accumulator, cell.getValue()), cell.getItems());
+	}
+
+	/**
+	 * Immutable copy of a cell.
+	 */
+	static class FrozenCell<T, V> implements Cell<T, V> {
+
+		private final V			value;
+
+		private final List<T>	items;
+
+		@SuppressWarnings("unchecked")
+		FrozenCell(V value, List<T> items) {
+			this.value = value;
+			this.items = Collections.unmodifiableList(Arrays.asList((T[]) items.toArray()));
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public List<T> getItems() {
+			return items;
+		}
+
+		/**
+		 * The value of a frozen cell is already accumulated, does nothing.
+		 */
+		@Override
+		public void accumulate() {
+		}
+
+		/**
+		 * This operation is not available.
+		 */
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException("A frozen matrix can not be modified");
+		}
+	}
+
+	/**
+	 * Returns the position of the cell in {@link #cells}, or -1.
+	 */
+	private int cellIndex(int row, int column) {
+		int position = Arrays.binarySearch(cellColumns, rowOffsets[row], rowOffsets[row + 1], column);
+		return position >= 0 ? position : -1;
+	}
+
+	private int cellIndexOf(Object rowKey, Object columnKey) {
+		Integer row = rowIndex.get(rowKey);
+		Integer column = columnIndex.get(columnKey);
+		return row != null && column != null ? cellIndex(row, column) : -1;
+	}
+
+	@Override
+	public boolean contains(T item) {
+		return item == null || items.contains(item);
+	}
+
+	@Override
+	public boolean contains(R rowKey, C columnKey) {
+		return cellIndexOf(rowKey, columnKey) >= 0;
+	}
+
+	@Override
+	public boolean containsRow(R rowKey) {
+		return rowIndex.containsKey(rowKey);
+	}
+
+	@Override
+	public boolean containsColumn(C columnKey) {
+		return columnIndex.containsKey(columnKey);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Cell<T, V> get(R row, C column) {
+		int cell = cellIndexOf(row, column);
+		return cell >= 0 ? cells[cell] : EMPTY;
+	}
+
+	@Override
+	public int size() {
+		return items.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return items.isEmpty();
+	}
+
+	@Override
+	public Map<C, Cell<T, V>> row(R rowKey) {
+		Map<C, Cell<T, V>> row = rowMap.get(rowKey);
+		return row != null ? row : Collections.<C, Cell<T, V>> emptyMap();
+	}
+
+	@Override
+	public Cell<T, V> totalRow(R rowKey) {
+		Integer row = rowIndex.get(rowKey);
+		return row != null ? rowTotals[row] : null;
+	}
+
+	@Override
+	public Map<R, Cell<T, V>> column(C columnKey) {
+		Map<R, Cell<T, V>> column = columnMap.get(columnKey);
+		return column != null ? column : Collections.<R, Cell<T, V>> emptyMap();
+	}
+
+	@Override
+	public Cell<T, V> totalColumn(C columnKey) {
+		Integer column = columnIndex.get(columnKey);
+		return column != null ? columnTotals[column] : null;
+	}
+
+	@Override
+	public Map<R, Map<C, Cell<T, V>>> rowMap() {
+		return rowMap;
+	}
+
+	@Override
+	public Map<C, Map<R, Cell<T, V>>> columnMap() {
+		return columnMap;
+	}
+
+	@Override
+	public Set<Cell<T, V>> cellSet() {
+		return Collections.unmodifiableSet(new LinkedHashSet<Cell<T, V>>(Arrays.asList(cells)));
+	}
+
+	@Override
+	public Set<R> rowKeySet() {
+		return rowKeySet;
+	}
+
+	@Override
+	public Set<C> columnKeySet() {
+		return columnKeySet;
+	}
+
+	@Override
+	public Collection<T> getItems() {
+		return items;
+	}
+
+	@Override
+	public Matrix<R, C, T, V> subMatrix(Selection<R> rows, Selection<C> columns) {
+		return Matrices.subMatrix(this, rows, columns);
+	}
+
+	/**
+	 * Aggregates the selected cells with the accumulator given when the matrix
+	 * was frozen.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the accumulator is not known
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns) {
+		if (accumulator == null) {
+			throw new UnsupportedOperationException("The accumulator of the frozen matrix is not known");
+		}
+		List<T> selected = new ArrayList<T>();
+		V value = null;
+		for (Map<C, Cell<T, V>> row : rows.select(rowMap).values()) {
+			for (Cell<T, V> cell : columns.select(row).values()) {
+				selected.addAll(cell.getItems());
+				if (accumulator instanceof MergeableAccumulator) {
+					value = ((MergeableAccumulator<T, V>) accumulator).merge(value, cell.getValue());
+				}
+			}
+		}
+		if (!(accumulator instanceof MergeableAccumulator)) {
+			value = accumulator.accumulate(selected);
+		}
+		return new FrozenCell<T, V>(value, selected);
+	}
+
+	/**
+	 * The cells of a row, sorted by column.
+	 */
+	private class Row extends AbstractMap<C, Cell<T, V>> {
+
+		private final int	row;
+
+		Row(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public Cell<T, V> get(Object columnKey) {
+			Integer column = columnIndex.get(columnKey);
+			int cell = column != null ? cellIndex(row, column) : -1;
+			return cell >= 0 ? cells[cell] : null;
+		}
+
+		@Override
+		public boolean containsKey(Object columnKey) {
+			return get(columnKey) != null;
+		}
+
+		@Override
+		public int size() {
+			return rowOffsets[row + 1] - rowOffsets[row];
+		}
+
+		@Override
+		public Set<Map.Entry<C, Cell<T, V>>> entrySet() {
+			return new AbstractSet<Map.Entry<C, Cell<T, V>>>() {
+
+				@Override
+				public Iterator<Map.Entry<C, Cell<T, V>>> iterator() {
+					return new Iterator<Map.Entry<C, Cell<T, V>>>() {
+
+						int	cell	= rowOffsets[row];
+
+						@Override
+						public boolean hasNext() {
+							return cell < rowOffsets[row + 1];
+						}
+
+						@Override
+						@SuppressWarnings("unchecked")
+						public Map.Entry<C, Cell<T, V>> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							C column = (C) columnKeys[cellColumns[cell]];
+							return new SimpleImmutableEntry<C, Cell<T, V>>(column, cells[cell++]);
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException("A frozen matrix can not be modified");
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return Row.this.size();
+				}
+			};
+		}
+	}
+
+	/**
+	 * The cells of a column, sorted by row.
+	 */
+	private class Column extends AbstractMap<R, Cell<T, V>> {
+
+		private final int	column;
+
+		Column(int column) {
+			this.column = column;
+		}
+
+		@Override
+		public Cell<T, V> get(Object rowKey) {
+			Integer row = rowIndex.get(rowKey);
+			int cell = row != null ? cellIndex(row, column) : -1;
+			return cell >= 0 ? cells[cell] : null;
+		}
+
+		@Override
+		public boolean containsKey(Object rowKey) {
+			return get(rowKey) != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Set<Map.Entry<R, Cell<T, V>>> entrySet() {
+			Set<Map.Entry<R, Cell<T, V>>> entries = new LinkedHashSet<Map.Entry<R, Cell<T, V>>>();
+			for (int row = 0; row < rowKeys.length; row++) {
+				int cell = cellIndex(row, column);
+				if (cell >= 0) {
+					entries.add(new SimpleImmutableEntry<R, Cell<T, V>>((R) rowKeys[row], cells[cell]));
+				}
+			}
+			return Collections.unmodifiableSet(entries);
+		}
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public Cell<T, V> put(T value) {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void putAll(Collection<T> values) {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void merge(Matrix<R, C, T, V> other) {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void remove(T value) {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void removeAll(Collection<T> values) {
+		throw new UnsupportedOperationException("A frozen matrix can not be modified");
+	}
+
+}
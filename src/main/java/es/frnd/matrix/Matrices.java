@@ -0,0 +1,146 @@
+package es.frnd.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Operations over several matrices.
+ *
+ * @author Fernando Gonzalez
+ */
+public final class Matrices {
+
+	private Matrices() {
+	}
+
+	/**
+	 * Returns a copy of a value if the accumulator updates its values in
+	 * place, otherwise the value itself.
+	 * 
+	 * @param accumulator
+	 *            the accumulator of the value, or {@code null}
+	 * @param value
+	 *            the value, or {@code null}
+	 * @see Matrix.MutableAccumulator
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T, V> V copy(Matrix.Accumulator<T, V> accumulator, V value) {
+		if (value != null && accumulator instanceof Matrix.MutableAccumulator) {
+			return ((Matrix.MutableAccumulator<T, V>) accumulator).copy(value);
+		}
+		return value;
+	}
+
+	/**
+	 * Merges the matrices built from different partitions of the items into
+	 * one. The matrices are merged by pairs, then the results by pairs again,
+	 * until only one is left.
+	 *
+	 * @param shards
+	 *            the matrices to merge, they are modified
+	 * @return the matrix with all the items, one of the shards
+	 */
+	public static <R, C, T, V> Matrix<R, C, T, V> merge(List<? extends Matrix<R, C, T, V>> shards) {
+		return merge(shards, null);
+	}
+
+	/**
+	 * Merges the matrices built from different partitions of the items into
+	 * one. The matrices are merged by pairs, then the results by pairs again,
+	 * until only one is left. The merges of each round are run on the
+	 * executor.
+	 *
+	 * @param shards
+	 *            the matrices to merge, they are modified
+	 * @param executor
+	 *            the executor of the merges, or {@code null} to run them on
+	 *            the calling thread
+	 * @return the matrix with all the items, one of the shards
+	 */
+	public static <R, C, T, V> Matrix<R, C, T, V> merge(List<? extends Matrix<R, C, T, V>> shards,
+			Executor executor) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("There are no matrices to merge");
+		}
+		List<Matrix<R, C, T, V>> round = new ArrayList<Matrix<R, C, T, V>>(shards);
+		while (round.size() > 1) {
+			List<FutureTask<Matrix<R, C, T, V>>> merges = new ArrayList<FutureTask<Matrix<R, C, T, V>>>(round.size() / 2);
+			for (int i = 0; i + 1 < round.size(); i += 2) {
+				FutureTask<Matrix<R, C, T, V>> merge = new FutureTask<Matrix<R, C, T, V>>(new Merge<R, C, T, V>(round.get(i),
+						round.get(i + 1)));
+				if (executor != null) {
+					executor.execute(merge);
+				} else {
+					merge.run();
+				}
+				merges.add(merge);
+			}
+			List<Matrix<R, C, T, V>> next = new ArrayList<Matrix<R, C, T, V>>(round.size() / 2 + 1);
+			for (FutureTask<Matrix<R, C, T, V>> merge : merges) {
+				next.add(get(merge));
+			}
+			if (round.size() % 2 == 1) {
+				next.add(round.get(round.size() - 1));
+			}
+			round = next;
+		}
+		return round.get(0);
+	}
+
+	/**
+	 * Returns a read-only view of the cells of a matrix with the selected row
+	 * and column keys, for the implementations of
+	 * {@link Matrix#subMatrix(Selection, Selection)}. The totals of the view
+	 * are aggregated with {@link Matrix#aggregate(Selection, Selection)} of
+	 * the source matrix.
+	 * 
+	 * @param source
+	 *            the matrix
+	 * @param rows
+	 *            the selection of the row keys
+	 * @param columns
+	 *            the selection of the column keys
+	 * @return the view
+	 */
+	public static <R, C, T, V> Matrix<R, C, T, V> subMatrix(Matrix<R, C, T, V> source, Selection<R> rows,
+			Selection<C> columns) {
+		return new SubMatrix<R, C, T, V>(source, rows, columns);
+	}
+
+	private static <M> M get(FutureTask<M> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while merging matrices", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Can not merge matrices", e.getCause());
+		}
+	}
+
+	private static class Merge<R, C, T, V> implements Callable<Matrix<R, C, T, V>> {
+
+		private final Matrix<R, C, T, V>	target;
+
+		private final Matrix<R, C, T, V>	source;
+
+		Merge(Matrix<R, C, T, V> target, Matrix<R, C, T, V> source) {
+			this.target = target;
+			this.source = source;
+		}
+
+		@Override
+		public Matrix<R, C, T, V> call() {
+			target.merge(source);
+			return target;
+		}
+	}
+
+}
@@ -107,6 +107,18 @@ public interface Matrix<R, C, T, V> {
 	 */
 	void putAll(Collection<T> values);
 
+	/**
+	 * Adds all the items of another matrix with the same categorization. The
+	 * cells and totals of the other matrix are merged into the ones of this
+	 * matrix with the same keys, without resolving the items again.
+	 * 
+	 * @param other
+	 *            the matrix to merge, it is not modified
+	 * @throws IllegalArgumentException
+	 *             if the other matrix is this one
+	 */
+	void merge(Matrix<R, C, T, V> other);
+
 	void remove(T value);
 
 	void removeAll(Collection<T> values);
@@ -142,6 +154,33 @@ public interface Matrix<R, C, T, V> {
 
 	Cell<T, V> totalColumn(C columnKey);
 
+	/**
+	 * Returns a read-only view of the cells with the selected row and column
+	 * keys. The cells of the view are the ones of this matrix, and its totals
+	 * are the aggregates of the selected cells of each row and column.
+	 * 
+	 * @param rows
+	 *            the selection of the row keys
+	 * @param columns
+	 *            the selection of the column keys
+	 * @return the view
+	 */
+	Matrix<R, C, T, V> subMatrix(Selection<R> rows, Selection<C> columns);
+
+	/**
+	 * Returns a new cell with the items of the cells with the selected row and
+	 * column keys, and their accumulated value. When the accumulator is a
+	 * {@link MergeableAccumulator} the values of the cells are merged instead
+	 * of accumulating the items again.
+	 * 
+	 * @param rows
+	 *            the selection of the row keys
+	 * @param columns
+	 *            the selection of the column keys
+	 * @return the aggregated cell, empty if no cell is selected
+	 */
+	Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns);
+
 	/**
 	 * Returns a view that associates each row key with the corresponding map
 	 * from column keys to values. Changes to the returned map will update this
@@ -246,6 +285,93 @@ public interface Matrix<R, C, T, V> {
 		V accumulate(List<T> items);
 	}
 
+	/**
+	 * An accumulator whose values can be combined without the items: the value
+	 * of the items of two disjoint groups is the merge of the values of each
+	 * group.
+	 * 
+	 * @param <T>
+	 *            the type of the items
+	 * @param <V>
+	 *            the type of the value
+	 */
+	public interface MergeableAccumulator<T, V> extends Accumulator<T, V> {
+
+		/**
+		 * Combines the values of two groups of items. Any of them may be
+		 * {@code null}, standing for a group without items.
+		 * 
+		 * The first value belongs to the caller and it may be updated in place
+		 * and returned. The second one is neither modified nor returned, so if
+		 * values are mutable a merge into {@code null} returns a copy of it.
+		 */
+		V merge(V value1, V value2);
+	}
+
+	/**
+	 * An accumulator whose value can be updated with a single item, without
+	 * reading the other items of the group.
+	 *
+	 * The value given to {@link #add(Object, Object)} and
+	 * {@link #remove(Object, Object)} belongs to a single cell and it may be
+	 * updated in place and returned. An accumulator doing so must be a
+	 * {@link MutableAccumulator}, so its values are copied where they are
+	 * shared.
+	 *
+	 * @param <T>
+	 *            the type of the items
+	 * @param <V>
+	 *            the type of the value
+	 */
+	public interface IncrementalAccumulator<T, V> extends Accumulator<T, V> {
+
+		/**
+		 * Returns the value of a group of items after adding one.
+		 *
+		 * @param value
+		 *            the value of the group, {@code null} for a group without
+		 *            items
+		 * @param item
+		 *            the item added
+		 */
+		V add(V value, T item);
+
+		/**
+		 * Returns the value of a group of items after removing one, or
+		 * {@code null} if it can not be computed without the remaining items,
+		 * which are accumulated again then.
+		 *
+		 * @param value
+		 *            the value of the group with the item
+		 * @param item
+		 *            the item removed
+		 */
+		V remove(V value, T item);
+	}
+
+	/**
+	 * An accumulator whose values are mutable and updated in place by the cell
+	 * owning them, such as the sketches. A value is copied only where it
+	 * outlives the state of its cell: in a frozen copy of the matrix, as the
+	 * old value of a change and in the versions of a versioned matrix.
+	 * 
+	 * @param <T>
+	 *            the type of the items
+	 * @param <V>
+	 *            the type of the value
+	 */
+	public interface MutableAccumulator<T, V> extends Accumulator<T, V> {
+
+		/**
+		 * Returns a copy of a value, not modified by later updates of the
+		 * value.
+		 * 
+		 * @param value
+		 *            the value, not {@code null}
+		 */
+		V copy(V value);
+	}
+
 	public interface Resolver<T, Axis> {
 
 		Axis resolve(T o1);
@@ -0,0 +1,297 @@
+package es.frnd.matrix;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import es.frnd.matrix.Matrix.Accumulator;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.generic.Capacity;
+import es.frnd.matrix.generic.GenericMatrix;
+import es.frnd.matrix.generic.HashStorage;
+import es.frnd.matrix.generic.HeapItemStore;
+import es.frnd.matrix.generic.ItemStore;
+import es.frnd.matrix.generic.SortedMatrix;
+import es.frnd.matrix.generic.Storage;
+import es.frnd.matrix.versioned.VersionedMatrix;
+
+/**
+ * Creates matrices with the implementation chosen by its options, and loads
+ * them sequentially or in parallel.
+ *
+ * The way cell values are updated is chosen by the interfaces of the
+ * accumulator: an {@link Accumulator} accumulates all the items of a cell
+ * again on each change, an {@link Matrix.IncrementalAccumulator} updates the
+ * value with each item and a {@link Matrix.MergeableAccumulator}, such as
+ * the sketches of {@code es.frnd.matrix.additive}, merges the values of the
+ * shards of a parallel load.
+ *
+ * <pre>
+ * Matrix&lt;Sex, Status, Person, Long&gt; matrix = new MatrixBuilder&lt;Sex, Status, Person, Long&gt;(new SexResolver(),
+ * 		new StatusResolver(), new Count&lt;Person&gt;()).capacity(new Capacity().items(1000000))
+ * 		.parallel(executor, 8).build(persons);
+ * </pre>
+ *
+ * @param <R>
+ *            the type of the row keys
+ * @param <C>
+ *            the type of the column keys
+ * @param <T>
+ *            the type of the items
+ * @param <V>
+ *            the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class MatrixBuilder<R, C, T, V> {
+
+	/**
+	 * How the matrix is read and modified from several threads.
+	 */
+	public enum Concurrency {
+
+		/**
+		 * A {@link GenericMatrix}, not thread safe.
+		 */
+		NONE,
+
+		/**
+		 * A {@link VersionedMatrix}, read without locks while it is modified
+		 * by one thread at a time. It has its own storage.
+		 */
+		VERSIONED
+	}
+
+	private final Resolver<T, R>		rowResolver;
+
+	private final Resolver<T, C>		colResolver;
+
+	private final Accumulator<T, V>		accumulator;
+
+	private Storage<R, C, T, V>			storage;
+
+	private ItemStore<T>				itemStore;
+
+	private boolean						sorted;
+
+	private Comparator<? super R>		rowComparator;
+
+	private Comparator<? super C>		columnComparator;
+
+	private Capacity					capacity;
+
+	private Concurrency					concurrency	= Concurrency.NONE;
+
+	private Executor					executor;
+
+	private int							shards		= 1;
+
+	public MatrixBuilder(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Accumulator<T, V> accumulator) {
+		this.rowResolver = rowResolver;
+		this.colResolver = colResolver;
+		this.accumulator = accumulator;
+	}
+
+	/**
+	 * Keeps the cells in the structures of the given storage, instead of the
+	 * hash maps and lists on the heap. It can not be used by a parallel load.
+	 */
+	public MatrixBuilder<R, C, T, V> storage(Storage<R, C, T, V> storage) {
+		this.storage = storage;
+		return this;
+	}
+
+	/**
+	 * Keeps the items of the cells in the given store, such as a
+	 * {@link es.frnd.matrix.generic.SpillingItemStore} to keep them off the
+	 * heap. It can not be used by a parallel load, the stores are not thread
+	 * safe.
+	 */
+	public MatrixBuilder<R, C, T, V> itemStore(ItemStore<T> itemStore) {
+		this.itemStore = itemStore;
+		return this;
+	}
+
+	/**
+	 * Keeps the keys sorted by their natural order, in a {@link SortedMatrix}.
+	 */
+	public MatrixBuilder<R, C, T, V> sorted() {
+		return sorted(null, null);
+	}
+
+	/**
+	 * Keeps the keys sorted by the given comparators, in a
+	 * {@link SortedMatrix}.
+	 *
+	 * @param rowComparator
+	 *            the order of the row keys, {@code null} for the natural order
+	 * @param columnComparator
+	 *            the order of the column keys, {@code null} for the natural
+	 *            order
+	 */
+	public MatrixBuilder<R, C, T, V> sorted(Comparator<? super R> rowComparator,
+			Comparator<? super C> columnComparator) {
+		this.sorted = true;
+		this.rowComparator = rowComparator;
+		this.columnComparator = columnComparator;
+		return this;
+	}
+
+	/**
+	 * Presizes the structures of the matrix for the expected sizes. The tree
+	 * maps of a sorted matrix are not presized.
+	 */
+	public MatrixBuilder<R, C, T, V> capacity(Capacity capacity) {
+		this.capacity = capacity;
+		return this;
+	}
+
+	public MatrixBuilder<R, C, T, V> concurrency(Concurrency concurrency) {
+		if (concurrency == null) {
+			throw new IllegalArgumentException("The concurrency is required");
+		}
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * Loads the items on the calling thread, the default.
+	 */
+	public MatrixBuilder<R, C, T, V> sequential() {
+		this.executor = null;
+		this.shards = 1;
+		return this;
+	}
+
+	/**
+	 * Loads the items splitting them in shards, each one loaded in its own
+	 * matrix on the executor, then merges the shards by pairs with
+	 * {@link Matrices#merge(List, Executor)}. Each shard has its own default
+	 * storage, so a parallel load can not be combined with a storage or an
+	 * item store, which would be shared by the shards.
+	 *
+	 * @param executor
+	 *            the executor of the loads and merges, such as a
+	 *            {@code ForkJoinPool}
+	 * @param shards
+	 *            the number of shards
+	 */
+	public MatrixBuilder<R, C, T, V> parallel(Executor executor, int shards) {
+		if (executor == null || shards < 1) {
+			throw new IllegalArgumentException("Wrong executor or shards: " + executor + ", " + shards);
+		}
+		this.executor = executor;
+		this.shards = shards;
+		return this;
+	}
+
+	/**
+	 * Returns a new empty matrix.
+	 *
+	 * @throws IllegalStateException
+	 *             if the options can not be combined
+	 */
+	public Matrix<R, C, T, V> build() {
+		check();
+		return create(capacity);
+	}
+
+	/**
+	 * Returns a new matrix with the given items.
+	 *
+	 * @throws IllegalStateException
+	 *             if the options can not be combined
+	 */
+	public Matrix<R, C, T, V> build(Collection<T> items) {
+		check();
+		int count = Math.min(shards, items.size());
+		if (executor == null || count < 2) {
+			Matrix<R, C, T, V> matrix = create(capacity);
+			matrix.putAll(items);
+			return matrix;
+		}
+		List<T> list = new ArrayList<T>(items);
+		Capacity shardCapacity = null;
+		if (capacity != null) {
+			shardCapacity = new Capacity().rows(capacity.getRows()).columns(capacity.getColumns())
+					.items(capacity.getItems() / count);
+		}
+		List<FutureTask<Matrix<R, C, T, V>>> loads = new ArrayList<FutureTask<Matrix<R, C, T, V>>>(count);
+		for (int i = 0; i < count; i++) {
+			List<T> shard = list.subList((int) ((long) list.size() * i / count),
+					(int) ((long) list.size() * (i + 1) / count));
+			FutureTask<Matrix<R, C, T, V>> load = new FutureTask<Matrix<R, C, T, V>>(new Load<R, C, T, V>(
+					create(shardCapacity), shard));
+			executor.execute(load);
+			loads.add(load);
+		}
+		List<Matrix<R, C, T, V>> loaded = new ArrayList<Matrix<R, C, T, V>>(count);
+		for (FutureTask<Matrix<R, C, T, V>> load : loads) {
+			loaded.add(get(load));
+		}
+		return Matrices.merge(loaded, executor);
+	}
+
+	private void check() {
+		if (concurrency == Concurrency.VERSIONED
+				&& (storage != null || itemStore != null || sorted || capacity != null)) {
+			throw new IllegalStateException("A versioned matrix has its own storage");
+		}
+		if (storage != null && (itemStore != null || sorted)) {
+			throw new IllegalStateException("A storage can not be combined with an item store or sorted keys");
+		}
+		if (executor != null && shards > 1 && (storage != null || itemStore != null)) {
+			throw new IllegalStateException("A parallel load can not share a storage or an item store");
+		}
+	}
+
+	private Matrix<R, C, T, V> create(Capacity capacity) {
+		if (concurrency == Concurrency.VERSIONED) {
+			return new VersionedMatrix<R, C, T, V>(rowResolver, colResolver, accumulator);
+		}
+		ItemStore<T> items = itemStore != null ? itemStore : new HeapItemStore<T>();
+		if (sorted) {
+			return new SortedMatrix<R, C, T, V>(rowResolver, colResolver, accumulator, rowComparator,
+					columnComparator, items);
+		}
+		Storage<R, C, T, V> cells = storage != null ? storage : new HashStorage<R, C, T, V>(items);
+		return new GenericMatrix<R, C, T, V>(rowResolver, colResolver, accumulator, cells,
+				capacity != null ? capacity : new Capacity());
+	}
+
+	private static <M> M get(FutureTask<M> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading matrices", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Can not load matrices", e.getCause());
+		}
+	}
+
+	private static class Load<R, C, T, V> implements Callable<Matrix<R, C, T, V>> {
+
+		private final Matrix<R, C, T, V>	matrix;
+
+		private final List<T>				items;
+
+		Load(Matrix<R, C, T, V> matrix, List<T> items) {
+			this.matrix = matrix;
+			this.items = items;
+		}
+
+		@Override
+		public Matrix<R, C, T, V> call() {
+			matrix.putAll(items);
+			return matrix;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package es.frnd.matrix;
+
+import java.util.List;
+
+/**
+ * Listener of the changes of the cells and totals of a matrix.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @see AbstractMatrix#addListener(MatrixListener)
+ */
+public interface MatrixListener<R, C, V> {
+
+	/**
+	 * Called after each operation changing the matrix, such as a
+	 * {@code put()} or a whole {@code putAll()}, with one change for each cell
+	 * or total changed, from its value before the operation to its value
+	 * after it.
+	 * 
+	 * @param changes
+	 *            the changes, in the order the cells and totals were first
+	 *            changed
+	 */
+	void changed(List<Change<R, C, V>> changes);
+}
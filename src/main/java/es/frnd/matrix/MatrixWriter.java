@@ -0,0 +1,248 @@
+package es.frnd.matrix;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import es.frnd.matrix.Matrix.Cell;
+
+/**
+ * Writes the values of a matrix as text, one line per row, with a header line
+ * of the column keys.
+ * 
+ * The columns are taken once, in the order of {@link Matrix#columnKeySet()},
+ * and each row is written from its map of cells, so writing costs a lookup
+ * per cell. Integer values are written digit by digit and the rest of the
+ * text goes through a single buffer, so nothing is allocated per cell but
+ * the text of values other than numbers. Cells without value are left empty.
+ * 
+ * @author Fernando Gonzalez
+ */
+public class MatrixWriter {
+
+	/**
+	 * The layout of the text.
+	 */
+	public enum Format {
+		/** Comma separated values, quoted when needed as in RFC 4180. */
+		CSV,
+		/** Tab separated values, tabs and line breaks in them become spaces. */
+		TSV,
+		/** Values right aligned to a width, each one followed by " |". */
+		FIXED_WIDTH
+	}
+
+	/** The label of the totals column and row. */
+	public static final String	TOTAL	= "Total";
+
+	private final Format		format;
+
+	private final boolean		totals;
+
+	private final int			width;
+
+	/**
+	 * A writer without totals and, for fixed width, values of 10 characters.
+	 */
+	public MatrixWriter(Format format) {
+		this(format, false, 10);
+	}
+
+	/**
+	 * @param format
+	 *            the layout of the text
+	 * @param totals
+	 *            whether to write a column with the total of each row and a
+	 *            row with the total of each column
+	 * @param width
+	 *            the least width of the values with {@link Format#FIXED_WIDTH}
+	 */
+	public MatrixWriter(Format format, boolean totals, int width) {
+		if (width < 0) {
+			throw new IllegalArgumentException("The width can not be negative: " + width);
+		}
+		this.format = format;
+		this.totals = totals;
+		this.width = width;
+	}
+
+	/**
+	 * Writes a matrix to a stream, in the given encoding. The stream is
+	 * flushed, not closed.
+	 */
+	public <R, C> void write(Matrix<R, C, ?, ?> matrix, OutputStream out, Charset charset) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+		write(matrix, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes a matrix, such as to a {@link Writer} or a {@link StringBuilder}.
+	 * Writers are not buffered, nor flushed.
+	 */
+	public <R, C> void write(Matrix<R, C, ?, ?> matrix, Appendable out) throws IOException {
+		new Output(out).write(matrix);
+	}
+
+	/**
+	 * The state of a single write. Each line is built in a buffer and written
+	 * at once.
+	 */
+	private class Output {
+
+		private final Appendable	out;
+
+		private final Writer		writer;
+
+		private final StringBuilder	line	= new StringBuilder();
+
+		private final StringBuilder	text	= new StringBuilder();
+
+		private final char[]		digits	= new char[20];
+
+		private char[]				chars	= new char[0];
+
+		private boolean				first	= true;
+
+		Output(Appendable out) {
+			this.out = out;
+			this.writer = out instanceof Writer ? (Writer) out : null;
+		}
+
+		<R, C, T, V> void write(Matrix<R, C, T, V> matrix) throws IOException {
+			List<C> columns = new ArrayList<C>(matrix.columnKeySet());
+
+			key("");
+			for (C column : columns) {
+				key(column);
+			}
+			if (totals) {
+				key(TOTAL);
+			}
+			endLine();
+
+			for (Map.Entry<R, Map<C, Cell<T, V>>> row : matrix.rowMap().entrySet()) {
+				key(row.getKey());
+				Map<C, Cell<T, V>> cells = row.getValue();
+				for (C column : columns) {
+					value(cells.get(column));
+				}
+				if (totals) {
+					value(matrix.totalRow(row.getKey()));
+				}
+				endLine();
+			}
+
+			if (totals) {
+				key(TOTAL);
+				for (C column : columns) {
+					value(matrix.totalColumn(column));
+				}
+				value(null);
+				endLine();
+			}
+		}
+
+		private void endLine() throws IOException {
+			line.append('\n');
+			if (writer != null) {
+				// Writers would copy the buffer to a string
+				if (chars.length < line.length()) {
+					chars = new char[line.length() * 2];
+				}
+				line.getChars(0, line.length(), chars, 0);
+				writer.write(chars, 0, line.length());
+			} else {
+				out.append(line);
+			}
+			line.setLength(0);
+			first = true;
+		}
+
+		private void key(Object key) {
+			text.setLength(0);
+			text.append(key);
+			field();
+		}
+
+		private void value(Cell<?, ?> cell) {
+			Object value = cell != null ? cell.getValue() : null;
+			text.setLength(0);
+			if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+				long number = ((Number) value).longValue();
+				int position = digits.length;
+				long rest = number;
+				do {
+					digits[--position] = (char) ('0' + Math.abs(rest % 10));
+					rest /= 10;
+				} while (rest != 0);
+				if (number < 0) {
+					text.append('-');
+				}
+				text.append(digits, position, digits.length - position);
+			} else if (value instanceof Double) {
+				text.append(((Double) value).doubleValue());
+			} else if (value != null) {
+				text.append(value);
+			}
+			field();
+		}
+
+		/**
+		 * Adds the text in the buffer as a field of the line.
+		 */
+		private void field() {
+			switch (format) {
+			case CSV:
+				if (!first) {
+					line.append(',');
+				}
+				if (needsQuotes()) {
+					line.append('"');
+					for (int i = 0; i < text.length(); i++) {
+						char c = text.charAt(i);
+						if (c == '"') {
+							line.append('"');
+						}
+						line.append(c);
+					}
+					line.append('"');
+				} else {
+					line.append(text);
+				}
+				break;
+			case TSV:
+				if (!first) {
+					line.append('\t');
+				}
+				for (int i = 0; i < text.length(); i++) {
+					char c = text.charAt(i);
+					line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+				}
+				break;
+			default:
+				for (int i = text.length(); i < width; i++) {
+					line.append(' ');
+				}
+				line.append(text).append(" |");
+			}
+			first = false;
+		}
+
+		private boolean needsQuotes() {
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package es.frnd.matrix;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A selection of the row or column keys of a matrix.
+ *
+ * @author Fernando Gonzalez
+ *
+ * @param <K>
+ *            the type of the keys
+ */
+public abstract class Selection<K> {
+
+	/**
+	 * Returns a view of the entries of the map whose keys are selected.
+	 *
+	 * @param map
+	 *            a map of the matrix indexed by keys of this selection
+	 * @return the view of the selected entries
+	 */
+	public abstract <X> Map<K, X> select(Map<K, X> map);
+
+	/**
+	 * Selects all the keys.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K> Selection<K> all() {
+		return (Selection<K>) ALL;
+	}
+
+	/**
+	 * Selects the given keys. The selected entries are looked up one by one
+	 * and returned in the order of the keys, so the cost depends on the number
+	 * of keys and not on the size of the map.
+	 *
+	 * @param keys
+	 *            the keys to select
+	 */
+	public static <K> Selection<K> keys(Collection<? extends K> keys) {
+		return new Keys<K>(new LinkedHashSet<K>(keys));
+	}
+
+	/**
+	 * Selects the keys between two keys, both included. Nothing is selected
+	 * when the lowest key is after the highest one. The keys of a navigable
+	 * map sorted by the same comparator are looked up in the map, the keys of
+	 * other maps are compared one by one.
+	 *
+	 * @param from
+	 *            the lowest key
+	 * @param to
+	 *            the highest key
+	 * @param comparator
+	 *            the order of the keys, {@code null} for the natural order
+	 *            with {@code null} keys last
+	 */
+	public static <K> Selection<K> range(K from, K to, Comparator<? super K> comparator) {
+		if (comparator == null) {
+			return new Range<K>(from, to, Selection.<K> naturalOrder());
+		}
+		return new Range<K>(from, to, comparator);
+	}
+
+	/**
+	 * Selects the keys selected by both selections.
+	 */
+	static <K> Selection<K> both(final Selection<K> first, final Selection<K> second) {
+		if (first == ALL) {
+			return second;
+		} else if (second == ALL) {
+			return first;
+		}
+		return new Selection<K>() {
+
+			@Override
+			public <X> Map<K, X> select(Map<K, X> map) {
+				return second.select(first.select(map));
+			}
+		};
+	}
+
+	/**
+	 * Natural order of the keys, {@code null} goes last.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static <K> Comparator<K> naturalOrder() {
+		return (Comparator<K>) NATURAL_ORDER;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final Comparator	NATURAL_ORDER	= new Comparator<Comparable>() {
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public int compare(Comparable key1, Comparable key2) {
+			if (key1 == null) {
+				return key2 == null ? 0 : 1;
+			} else if (key2 == null) {
+				return -1;
+			}
+			return key1.compareTo(key2);
+		}
+	};
+
+	@SuppressWarnings("rawtypes")
+	private static final Selection	ALL				= new Selection<Object>() {
+
+		@Override
+		public <X> Map<Object, X> select(Map<Object, X> map) {
+			return map;
+		}
+	};
+
+	private static class Keys<K> extends Selection<K> {
+
+		private final Set<K>	keys;
+
+		Keys(Set<K> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public <X> Map<K, X> select(Map<K, X> map) {
+			return new Filtered<K, X>(map) {
+
+				@Override
+				boolean accepts(Object key) {
+					return keys.contains(key);
+				}
+
+				@Override
+				Iterator<K> candidates() {
+					return keys.iterator();
+				}
+			};
+		}
+	}
+
+	private static class Range<K> extends Selection<K> {
+
+		private final K						from;
+
+		private final K						to;
+
+		private final Comparator<? super K>	comparator;
+
+		Range(K from, K to, Comparator<? super K> comparator) {
+			this.from = from;
+			this.to = to;
+			this.comparator = comparator;
+		}
+
+		@Override
+		public <X> Map<K, X> select(Map<K, X> map) {
+			if (comparator.compare(from, to) > 0) {
+				return Collections.emptyMap();
+			}
+			if (map instanceof NavigableMap && comparator.equals(((NavigableMap<K, X>) map).comparator())) {
+				return ((NavigableMap<K, X>) map).subMap(from, true, to, true);
+			}
+			return new Filtered<K, X>(map) {
+
+				@Override
+				@SuppressWarnings("unchecked")
+				boolean accepts(Object key) {
+					return comparator.compare(from, (K) key) <= 0 && comparator.compare((K) key, to) <= 0;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Read-only view of the entries of a map with accepted keys.
+	 */
+	abstract static class Filtered<K, X> extends AbstractMap<K, X> {
+
+		final Map<K, X>	map;
+
+		Filtered(Map<K, X> map) {
+			this.map = map;
+		}
+
+		abstract boolean accepts(Object key);
+
+		/**
+		 * Returns the only keys that may be accepted, or {@code null} to go
+		 * through all the keys of the map.
+		 */
+		Iterator<K> candidates() {
+			return null;
+		}
+
+		@Override
+		public X get(Object key) {
+			return accepts(key) ? map.get(key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return accepts(key) && map.containsKey(key);
+		}
+
+		@Override
+		public Set<Map.Entry<K, X>> entrySet() {
+			return new AbstractSet<Map.Entry<K, X>>() {
+
+				@Override
+				public Iterator<Map.Entry<K, X>> iterator() {
+					return new Iterator<Map.Entry<K, X>>() {
+
+						Iterator<K>					keys		= candidates();
+
+						Iterator<Map.Entry<K, X>>	iterator	= keys == null ? map.entrySet().iterator() : null;
+
+						Map.Entry<K, X>				next		= advance();
+
+						private Map.Entry<K, X> advance() {
+							if (keys != null) {
+								while (keys.hasNext()) {
+									K key = keys.next();
+									if (map.containsKey(key)) {
+										return new SimpleImmutableEntry<K, X>(key, map.get(key));
+									}
+								}
+								return null;
+							}
+							while (iterator.hasNext()) {
+								Map.Entry<K, X> entry = iterator.next();
+								if (accepts(entry.getKey())) {
+									return entry;
+								}
+							}
+							return null;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return next != null;
+						}
+
+						@Override
+						public Map.Entry<K, X> next() {
+							if (next == null) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<K, X> result = next;
+							next = advance();
+							return result;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int size = 0;
+					for (Iterator<?> iterator = iterator(); iterator.hasNext(); iterator.next()) {
+						size++;
+					}
+					return size;
+				}
+			};
+		}
+	}
+
+}
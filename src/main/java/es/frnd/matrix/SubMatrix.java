@@ -0,0 +1,465 @@
+package es.frnd.matrix;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of the cells of a matrix with some row and column keys.
+ *
+ * The cells are the ones of the source matrix, so they reflect its changes.
+ * The totals are aggregated by the source matrix from the selected cells each
+ * time they are requested.
+ *
+ * @author Fernando Gonzalez
+ *
+ * @param <R>
+ *            the type of the row keys
+ * @param <C>
+ *            the type of the column keys
+ * @param <T>
+ *            the type of the items
+ * @param <V>
+ *            the type of the cell values
+ */
+class SubMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+	private final Views<R, C, T, V>	views;
+
+	SubMatrix(Matrix<R, C, T, V> source, Selection<R> rows, Selection<C> columns) {
+		this(new Views<R, C, T, V>(source, rows, columns));
+	}
+
+	private SubMatrix(Views<R, C, T, V> views) {
+		super(views.rows, views.items, views.columnTotals, views.rowTotals, views.total);
+		this.views = views;
+	}
+
+	/**
+	 * The views of the source matrix backing the sub-matrix.
+	 */
+	private static class Views<R, C, T, V> {
+
+		final Matrix<R, C, T, V>	source;
+
+		final Selection<R>			rowSelection;
+
+		final Selection<C>			columnSelection;
+
+		final Rows					rows			= new Rows();
+
+		final Items					items			= new Items();
+
+		final ColumnTotals			columnTotals	= new ColumnTotals();
+
+		final RowTotals				rowTotals		= new RowTotals();
+
+		final Total					total			= new Total();
+
+		Views(Matrix<R, C, T, V> source, Selection<R> rowSelection, Selection<C> columnSelection) {
+			this.source = source;
+			this.rowSelection = rowSelection;
+			this.columnSelection = columnSelection;
+		}
+
+		Map<R, Map<C, Cell<T, V>>> sourceRows() {
+			return rowSelection.select(source.rowMap());
+		}
+
+		Map<C, Cell<T, V>> select(Map<C, Cell<T, V>> row) {
+			return row != null ? columnSelection.select(row) : null;
+		}
+
+		/**
+		 * Returns the aggregate of the selected cells, or {@code null} if
+		 * there are none.
+		 */
+		Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns) {
+			Cell<T, V> cell = source.aggregate(rows, columns);
+			return cell.getItems().isEmpty() ? null : cell;
+		}
+
+		/**
+		 * Iterates the selected cells, row by row.
+		 */
+		Iterator<Cell<T, V>> cells() {
+			final Iterator<Map<C, Cell<T, V>>> rowIterator = sourceRows().values().iterator();
+			return new Iterator<Cell<T, V>>() {
+
+				Iterator<Cell<T, V>>	cellIterator	= Collections.<Cell<T, V>> emptyList().iterator();
+
+				@Override
+				public boolean hasNext() {
+					while (!cellIterator.hasNext() && rowIterator.hasNext()) {
+						cellIterator = select(rowIterator.next()).values().iterator();
+					}
+					return cellIterator.hasNext();
+				}
+
+				@Override
+				public Cell<T, V> next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return cellIterator.next();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		/**
+		 * Selected rows with some selected cell.
+		 */
+		class Rows extends AbstractMap<R, Map<C, Cell<T, V>>> {
+
+			@Override
+			public Map<C, Cell<T, V>> get(Object rowKey) {
+				Map<C, Cell<T, V>> row = select(sourceRows().get(rowKey));
+				return row != null && !row.isEmpty() ? Collections.unmodifiableMap(row) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object rowKey) {
+				return get(rowKey) != null;
+			}
+
+			@Override
+			public Set<Map.Entry<R, Map<C, Cell<T, V>>>> entrySet() {
+				return new AbstractSet<Map.Entry<R, Map<C, Cell<T, V>>>>() {
+
+					@Override
+					public Iterator<Map.Entry<R, Map<C, Cell<T, V>>>> iterator() {
+						final Iterator<Map.Entry<R, Map<C, Cell<T, V>>>> iterator = sourceRows().entrySet().iterator();
+						return new Iterator<Map.Entry<R, Map<C, Cell<T, V>>>>() {
+
+							Map.Entry<R, Map<C, Cell<T, V>>>	next	= advance();
+
+							private Map.Entry<R, Map<C, Cell<T, V>>> advance() {
+								while (iterator.hasNext()) {
+									Map.Entry<R, Map<C, Cell<T, V>>> entry = iterator.next();
+									Map<C, Cell<T, V>> row = select(entry.getValue());
+									if (!row.isEmpty()) {
+										return new SimpleImmutableEntry<R, Map<C, Cell<T, V>>>(entry.getKey(),
+												Collections.unmodifiableMap(row));
+									}
+								}
+								return null;
+							}
+
+							@Override
+							public boolean hasNext() {
+								return next != null;
+							}
+
+							@Override
+							public Map.Entry<R, Map<C, Cell<T, V>>> next() {
+								if (next == null) {
+									throw new NoSuchElementException();
+								}
+								Map.Entry<R, Map<C, Cell<T, V>>> result = next;
+								next = advance();
+								return result;
+							}
+
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						int size = 0;
+						for (Map<C, Cell<T, V>> row : sourceRows().values()) {
+							if (!select(row).isEmpty()) {
+								size++;
+							}
+						}
+						return size;
+					}
+				};
+			}
+		}
+
+		/**
+		 * Totals of the selected columns, one per column key.
+		 */
+		class ColumnTotals extends AbstractMap<C, Cell<T, V>> {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Cell<T, V> get(Object columnKey) {
+				if (!containsKey(columnKey)) {
+					return null;
+				}
+				return aggregate(rowSelection, Selection.both(columnSelection,
+						Selection.keys(Collections.singleton((C) columnKey))));
+			}
+
+			@Override
+			public boolean containsKey(Object columnKey) {
+				for (Map<C, Cell<T, V>> row : sourceRows().values()) {
+					if (select(row).containsKey(columnKey)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			/**
+			 * Returns the selected column keys, in the order of the source
+			 * matrix.
+			 */
+			@Override
+			public Set<C> keySet() {
+				Set<C> keys = new LinkedHashSet<C>();
+				for (C columnKey : source.columnKeySet()) {
+					if (containsKey(columnKey)) {
+						keys.add(columnKey);
+					}
+				}
+				return Collections.unmodifiableSet(keys);
+			}
+
+			@Override
+			public Set<Map.Entry<C, Cell<T, V>>> entrySet() {
+				Set<Map.Entry<C, Cell<T, V>>> entries = new LinkedHashSet<Map.Entry<C, Cell<T, V>>>();
+				for (C columnKey : keySet()) {
+					entries.add(new SimpleImmutableEntry<C, Cell<T, V>>(columnKey, get(columnKey)));
+				}
+				return Collections.unmodifiableSet(entries);
+			}
+		}
+
+		/**
+		 * Totals of the selected rows, one per row key.
+		 */
+		class RowTotals extends AbstractMap<R, Cell<T, V>> {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public Cell<T, V> get(Object rowKey) {
+				if (!containsKey(rowKey)) {
+					return null;
+				}
+				return aggregate(Selection.both(rowSelection, Selection.keys(Collections.singleton((R) rowKey))),
+						columnSelection);
+			}
+
+			@Override
+			public boolean containsKey(Object rowKey) {
+				return rows.containsKey(rowKey);
+			}
+
+			@Override
+			public Set<Map.Entry<R, Cell<T, V>>> entrySet() {
+				Set<Map.Entry<R, Cell<T, V>>> entries = new LinkedHashSet<Map.Entry<R, Cell<T, V>>>();
+				for (R rowKey : rows.keySet()) {
+					entries.add(new SimpleImmutableEntry<R, Cell<T, V>>(rowKey, get(rowKey)));
+				}
+				return Collections.unmodifiableSet(entries);
+			}
+		}
+
+		/**
+		 * Total of the selected cells, aggregated when requested.
+		 */
+		class Total implements Cell<T, V> {
+
+			@Override
+			public V getValue() {
+				return source.aggregate(rowSelection, columnSelection).getValue();
+			}
+
+			@Override
+			public List<T> getItems() {
+				return items;
+			}
+
+			/**
+			 * This operation is not available.
+			 */
+			@Override
+			public void accumulate() {
+				throw new UnsupportedOperationException();
+			}
+
+			/**
+			 * This operation is not available.
+			 */
+			@Override
+			public void clear() {
+				throw new UnsupportedOperationException();
+			}
+		}
+
+		/**
+		 * The items of the selected cells, seen as a single list.
+		 */
+		class Items extends AbstractList<T> {
+
+			@Override
+			public T get(int index) {
+				if (index >= 0) {
+					for (Iterator<Cell<T, V>> iterator = cells(); iterator.hasNext();) {
+						List<T> items = iterator.next().getItems();
+						if (index < items.size()) {
+							return items.get(index);
+						}
+						index -= items.size();
+					}
+				}
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				for (Iterator<Cell<T, V>> iterator = cells(); iterator.hasNext();) {
+					size += iterator.next().getItems().size();
+				}
+				return size;
+			}
+
+			@Override
+			public Iterator<T> iterator() {
+				final Iterator<Cell<T, V>> cells = cells();
+				return new Iterator<T>() {
+
+					Iterator<T>	itemIterator	= Collections.<T> emptyList().iterator();
+
+					@Override
+					public boolean hasNext() {
+						while (!itemIterator.hasNext() && cells.hasNext()) {
+							itemIterator = cells.next().getItems().iterator();
+						}
+						return itemIterator.hasNext();
+					}
+
+					@Override
+					public T next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return itemIterator.next();
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		}
+	}
+
+	/**
+	 * Returns the column keys with some selected cell, in the order of the
+	 * source matrix.
+	 */
+	@Override
+	public Set<C> columnKeySet() {
+		return views.columnTotals.keySet();
+	}
+
+	/**
+	 * Aggregates the cells of the selection within this sub-matrix on the
+	 * source matrix.
+	 */
+	@Override
+	public Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns) {
+		return views.source.aggregate(Selection.both(views.rowSelection, rows),
+				Selection.both(views.columnSelection, columns));
+	}
+
+	/**
+	 * The selection of a sub-matrix is taken on its source matrix.
+	 */
+	@Override
+	public Matrix<R, C, T, V> subMatrix(Selection<R> rows, Selection<C> columns) {
+		return new SubMatrix<R, C, T, V>(views.source, Selection.both(views.rowSelection, rows), Selection.both(
+				views.columnSelection, columns));
+	}
+
+	@Override
+	protected Resolver<T, R> getRowResolver() {
+		throw new UnsupportedOperationException("A sub-matrix does not resolve items");
+	}
+
+	@Override
+	protected Resolver<T, C> getColResolver() {
+		throw new UnsupportedOperationException("A sub-matrix does not resolve items");
+	}
+
+	@Override
+	protected Map<C, Cell<T, V>> createBackingMap() {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	@Override
+	protected Cell<T, V> createCell() {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public Cell<T, V> put(T value) {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void putAll(Collection<T> values) {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void merge(Matrix<R, C, T, V> other) {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void remove(T value) {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void removeAll(Collection<T> values) {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+	/**
+	 * This operation is not available.
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("A sub-matrix is read-only");
+	}
+
+}
@@ -0,0 +1,148 @@
+package es.frnd.matrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table of the sums of the numeric values of a matrix over every rectangle
+ * starting at its first row and column, so the sum of any rectangular range
+ * of cells is computed from four of them in constant time.
+ *
+ * The rows and columns are taken in the order of the key sets of the matrix;
+ * for ranges to be meaningful the matrix should keep them sorted, like
+ * {@link es.frnd.matrix.generic.SortedMatrix} or {@link FrozenMatrix}. The
+ * table is a snapshot, it does not change with the matrix, and it takes a
+ * {@code double} for every row and column pair, empty cells included.
+ *
+ * The sum of the values of some cells is the value of their items only for
+ * additive accumulators, such as counts and sums.
+ *
+ * @author Fernando Gonzalez
+ *
+ * @param <R>
+ *            the type of the row keys
+ * @param <C>
+ *            the type of the column keys
+ */
+public class SummedAreaTable<R, C> {
+
+	private final List<R>				rowKeys;
+
+	private final List<C>				columnKeys;
+
+	private final Map<Object, Integer>	rowIndex;
+
+	private final Map<Object, Integer>	columnIndex;
+
+	/**
+	 * The sum of the cells above and to the left of row {@code i} and column
+	 * {@code j}, at position {@code i * (columns + 1) + j}.
+	 */
+	private final double[]				sums;
+
+	/**
+	 * Builds the table, in a single pass over the rows and columns of the
+	 * matrix.
+	 *
+	 * @param matrix
+	 *            a matrix with numeric values, {@code null} values count as 0
+	 */
+	public SummedAreaTable(Matrix<R, C, ?, ? extends Number> matrix) {
+		rowKeys = Collections.unmodifiableList(new ArrayList<R>(matrix.rowKeySet()));
+		columnKeys = Collections.unmodifiableList(new ArrayList<C>(matrix.columnKeySet()));
+		rowIndex = index(rowKeys);
+		columnIndex = index(columnKeys);
+
+		int width = columnKeys.size() + 1;
+		sums = new double[(rowKeys.size() + 1) * width];
+		for (int row = 0; row < rowKeys.size(); row++) {
+			Map<C, ? extends Matrix.Cell<?, ? extends Number>> cells = matrix.row(rowKeys.get(row));
+			double rowSum = 0;
+			for (int column = 0; column < columnKeys.size(); column++) {
+				Matrix.Cell<?, ? extends Number> cell = cells.get(columnKeys.get(column));
+				Number value = cell != null ? cell.getValue() : null;
+				rowSum += value != null ? value.doubleValue() : 0;
+				sums[(row + 1) * width + column + 1] = sums[row * width + column + 1] + rowSum;
+			}
+		}
+	}
+
+	private static Map<Object, Integer> index(List<?> keys) {
+		Map<Object, Integer> index = new HashMap<Object, Integer>(keys.size() * 4 / 3 + 1);
+		for (int i = 0; i < keys.size(); i++) {
+			index.put(keys.get(i), i);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the sum of the values of the cells between the given keys, all
+	 * of them included.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if any key is not in the matrix
+	 */
+	public double sum(R fromRow, R toRow, C fromColumn, C toColumn) {
+		return sum(position(rowIndex, fromRow), position(rowIndex, toRow), position(columnIndex, fromColumn),
+				position(columnIndex, toColumn));
+	}
+
+	/**
+	 * Returns the sum of the values of the cells between the given positions,
+	 * all of them included. An empty range sums 0.
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if any position is out of the table
+	 */
+	public double sum(int fromRow, int toRow, int fromColumn, int toColumn) {
+		check(fromRow, rowKeys.size());
+		check(toRow, rowKeys.size());
+		check(fromColumn, columnKeys.size());
+		check(toColumn, columnKeys.size());
+		if (fromRow > toRow || fromColumn > toColumn) {
+			return 0;
+		}
+		int width = columnKeys.size() + 1;
+		return sums[(toRow + 1) * width + toColumn + 1] - sums[fromRow * width + toColumn + 1]
+				- sums[(toRow + 1) * width + fromColumn] + sums[fromRow * width + fromColumn];
+	}
+
+	/**
+	 * Returns the sum of the values of all the cells.
+	 */
+	public double total() {
+		return sums[sums.length - 1];
+	}
+
+	/**
+	 * Returns the row keys, in the order of the table.
+	 */
+	public List<R> rowKeys() {
+		return rowKeys;
+	}
+
+	/**
+	 * Returns the column keys, in the order of the table.
+	 */
+	public List<C> columnKeys() {
+		return columnKeys;
+	}
+
+	private static int position(Map<Object, Integer> index, Object key) {
+		Integer position = index.get(key);
+		if (position == null) {
+			throw new IllegalArgumentException("Unknown key: " + key);
+		}
+		return position;
+	}
+
+	private static void check(int position, int size) {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + size);
+		}
+	}
+
+}
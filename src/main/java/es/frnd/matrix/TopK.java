@@ -0,0 +1,230 @@
+package es.frnd.matrix;
+
+import es.frnd.matrix.Matrix.Cell;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Queries of the cells, rows or columns of a matrix with the greatest values.
+ *
+ * The candidates are kept in a heap bounded to {@code k} elements, so a query
+ * costs a single pass over the cells and {@code O(n log k)} comparisons, with
+ * no sort of all of them. Cells without value are left out. The results are
+ * sorted from the greatest value down.
+ *
+ * @author Fernando Gonzalez
+ */
+public final class TopK {
+
+	private TopK() {
+	}
+
+	/**
+	 * A cell with its row and column keys.
+	 */
+	public static class Ranked<R, C, T, V> {
+
+		private final R				rowKey;
+
+		private final C				columnKey;
+
+		private final Cell<T, V>	cell;
+
+		Ranked(R rowKey, C columnKey, Cell<T, V> cell) {
+			this.rowKey = rowKey;
+			this.columnKey = columnKey;
+			this.cell = cell;
+		}
+
+		public R getRowKey() {
+			return rowKey;
+		}
+
+		public C getColumnKey() {
+			return columnKey;
+		}
+
+		public Cell<T, V> getCell() {
+			return cell;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + rowKey + ", " + columnKey + ")=" + cell.getValue();
+		}
+	}
+
+	/**
+	 * Returns the {@code k} cells with the greatest values.
+	 *
+	 * @param matrix
+	 *            the matrix
+	 * @param k
+	 *            the number of cells
+	 * @param comparator
+	 *            the order of the values
+	 * @return the cells, greatest first
+	 */
+	public static <R, C, T, V> List<Ranked<R, C, T, V>> cells(Matrix<R, C, T, V> matrix, int k,
+			final Comparator<? super V> comparator) {
+		Heap<Ranked<R, C, T, V>> heap = new Heap<Ranked<R, C, T, V>>(k, new Comparator<Ranked<R, C, T, V>>() {
+
+			@Override
+			public int compare(Ranked<R, C, T, V> ranked1, Ranked<R, C, T, V> ranked2) {
+				return comparator.compare(ranked1.cell.getValue(), ranked2.cell.getValue());
+			}
+		});
+		for (Map.Entry<R, Map<C, Cell<T, V>>> row : matrix.rowMap().entrySet()) {
+			for (Map.Entry<C, Cell<T, V>> cell : row.getValue().entrySet()) {
+				if (cell.getValue() != null && cell.getValue().getValue() != null) {
+					heap.offer(new Ranked<R, C, T, V>(row.getKey(), cell.getKey(), cell.getValue()));
+				}
+			}
+		}
+		return heap.toList();
+	}
+
+	/**
+	 * Returns the {@code k} rows with the greatest totals.
+	 *
+	 * @param matrix
+	 *            the matrix
+	 * @param k
+	 *            the number of rows
+	 * @param comparator
+	 *            the order of the values
+	 * @return the row keys and their totals, greatest first
+	 */
+	public static <R, C, T, V> List<Map.Entry<R, Cell<T, V>>> rows(Matrix<R, C, T, V> matrix, int k,
+			Comparator<? super V> comparator) {
+		Heap<Map.Entry<R, Cell<T, V>>> heap = new Heap<Map.Entry<R, Cell<T, V>>>(k, TopK.<R, T, V> byValue(comparator));
+		for (R rowKey : matrix.rowKeySet()) {
+			offer(heap, rowKey, matrix.totalRow(rowKey));
+		}
+		return heap.toList();
+	}
+
+	/**
+	 * Returns the {@code k} columns with the greatest totals.
+	 *
+	 * @param matrix
+	 *            the matrix
+	 * @param k
+	 *            the number of columns
+	 * @param comparator
+	 *            the order of the values
+	 * @return the column keys and their totals, greatest first
+	 */
+	public static <R, C, T, V> List<Map.Entry<C, Cell<T, V>>> columns(Matrix<R, C, T, V> matrix, int k,
+			Comparator<? super V> comparator) {
+		Heap<Map.Entry<C, Cell<T, V>>> heap = new Heap<Map.Entry<C, Cell<T, V>>>(k, TopK.<C, T, V> byValue(comparator));
+		for (C columnKey : matrix.columnKeySet()) {
+			offer(heap, columnKey, matrix.totalColumn(columnKey));
+		}
+		return heap.toList();
+	}
+
+	/**
+	 * Returns the {@code k} cells with the greatest values of each row.
+	 *
+	 * @param matrix
+	 *            the matrix
+	 * @param k
+	 *            the number of cells of each row
+	 * @param comparator
+	 *            the order of the values
+	 * @return the column keys and cells of each row, greatest first
+	 */
+	public static <R, C, T, V> Map<R, List<Map.Entry<C, Cell<T, V>>>> columnsPerRow(Matrix<R, C, T, V> matrix,
+			int k, Comparator<? super V> comparator) {
+		Map<R, List<Map.Entry<C, Cell<T, V>>>> result = new LinkedHashMap<R, List<Map.Entry<C, Cell<T, V>>>>();
+		for (Map.Entry<R, Map<C, Cell<T, V>>> row : matrix.rowMap().entrySet()) {
+			result.put(row.getKey(), top(row.getValue(), k, comparator));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the {@code k} cells of the map with the greatest values, such as
+	 * the ones of a row or a column of a matrix.
+	 *
+	 * @param cells
+	 *            the cells by key
+	 * @param k
+	 *            the number of cells
+	 * @param comparator
+	 *            the order of the values
+	 * @return the keys and cells, greatest first
+	 */
+	public static <K, T, V> List<Map.Entry<K, Cell<T, V>>> top(Map<K, Cell<T, V>> cells, int k,
+			Comparator<? super V> comparator) {
+		Heap<Map.Entry<K, Cell<T, V>>> heap = new Heap<Map.Entry<K, Cell<T, V>>>(k, TopK.<K, T, V> byValue(comparator));
+		for (Map.Entry<K, Cell<T, V>> cell : cells.entrySet()) {
+			offer(heap, cell.getKey(), cell.getValue());
+		}
+		return heap.toList();
+	}
+
+	private static <K, T, V> void offer(Heap<Map.Entry<K, Cell<T, V>>> heap, K key, Cell<T, V> cell) {
+		if (cell != null && cell.getValue() != null) {
+			heap.offer(new AbstractMap.SimpleImmutableEntry<K, Cell<T, V>>(key, cell));
+		}
+	}
+
+	private static <K, T, V> Comparator<Map.Entry<K, Cell<T, V>>> byValue(final Comparator<? super V> comparator) {
+		return new Comparator<Map.Entry<K, Cell<T, V>>>() {
+
+			@Override
+			public int compare(Map.Entry<K, Cell<T, V>> entry1, Map.Entry<K, Cell<T, V>> entry2) {
+				return comparator.compare(entry1.getValue().getValue(), entry2.getValue().getValue());
+			}
+		};
+	}
+
+	/**
+	 * Min-heap keeping the greatest {@code k} elements offered.
+	 */
+	private static class Heap<E> {
+
+		private final int				k;
+
+		private final Comparator<E>		comparator;
+
+		private final PriorityQueue<E>	queue;
+
+		Heap(int k, Comparator<E> comparator) {
+			if (k < 0) {
+				throw new IllegalArgumentException("The number of elements can not be negative: " + k);
+			}
+			this.k = k;
+			this.comparator = comparator;
+			this.queue = new PriorityQueue<E>(Math.max(1, Math.min(k, 1024)), comparator);
+		}
+
+		void offer(E element) {
+			if (queue.size() < k) {
+				queue.add(element);
+			} else if (k > 0 && comparator.compare(element, queue.peek()) > 0) {
+				queue.poll();
+				queue.add(element);
+			}
+		}
+
+		/**
+		 * Returns the elements, greatest first.
+		 */
+		List<E> toList() {
+			List<E> result = new ArrayList<E>(queue);
+			Collections.sort(result, Collections.reverseOrder(comparator));
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+
+import java.util.List;
+
+/**
+ * Count of the items, or of the items with a property. The count of a group
+ * without items is 0.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class Count<T> implements Matrix.MergeableAccumulator<T, Long>, Matrix.IncrementalAccumulator<T, Long> {
+
+	private final PropertyResolver<T, ?>	propertyResolver;
+
+	/**
+	 * Counts all the items.
+	 */
+	public Count() {
+		this(null);
+	}
+
+	/**
+	 * Counts the items whose property is not {@code null}.
+	 */
+	public Count(PropertyResolver<T, ?> propertyResolver) {
+		this.propertyResolver = propertyResolver;
+	}
+
+	private boolean counts(T item) {
+		return propertyResolver == null || propertyResolver.getValue(item) != null;
+	}
+
+	@Override
+	public Long accumulate(List<T> items) {
+		if (propertyResolver == null) {
+			return (long) items.size();
+		}
+		long count = 0;
+		for (T item : items) {
+			if (counts(item)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Long add(Long value, T item) {
+		long count = value == null ? 0 : value;
+		return counts(item) ? count + 1 : count;
+	}
+
+	@Override
+	public Long remove(Long value, T item) {
+		return counts(item) ? value - 1 : value;
+	}
+
+	@Override
+	public Long merge(Long value1, Long value2) {
+		if (value1 == null) {
+			return value2;
+		}
+		return value2 == null ? value1 : value1 + value2;
+	}
+}
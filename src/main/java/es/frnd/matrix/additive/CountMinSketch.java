@@ -0,0 +1,199 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate frequency of each value of a property of the items, with the
+ * count-min sketch.
+ * 
+ * The value of a group is a {@link Sketch} of {@code depth} rows of
+ * {@code width} counters, whatever the number of items. Every value counts
+ * in one counter of each row, and its frequency is the least of them, so it
+ * is never underestimated and it is overestimated by at most
+ * {@code e / width} of the items with probability {@code 1 - e^-depth}. The
+ * counters are updated in constant time with each item added or removed, and
+ * the sketches of disjoint groups are merged by adding them.
+ * 
+ * Items whose property is {@code null} are not counted.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class CountMinSketch<T> implements Matrix.MergeableAccumulator<T, CountMinSketch.Sketch>,
+		Matrix.IncrementalAccumulator<T, CountMinSketch.Sketch>, Matrix.MutableAccumulator<T, CountMinSketch.Sketch> {
+
+	public static final int					DEFAULT_DEPTH	= 4;
+
+	public static final int					DEFAULT_WIDTH	= 1024;
+
+	private final PropertyResolver<T, ?>	propertyResolver;
+
+	private final int						depth;
+
+	private final int						width;
+
+	public CountMinSketch(PropertyResolver<T, ?> propertyResolver) {
+		this(propertyResolver, DEFAULT_DEPTH, DEFAULT_WIDTH);
+	}
+
+	/**
+	 * @param propertyResolver
+	 *            the property whose values are counted
+	 * @param depth
+	 *            the number of rows of counters
+	 * @param width
+	 *            the number of counters of each row
+	 */
+	public CountMinSketch(PropertyResolver<T, ?> propertyResolver, int depth, int width) {
+		if (depth < 1 || width < 1) {
+			throw new IllegalArgumentException("Wrong size of the sketches: " + depth + "x" + width);
+		}
+		this.propertyResolver = propertyResolver;
+		this.depth = depth;
+		this.width = width;
+	}
+
+	/**
+	 * The counters of a group of values.
+	 */
+	public static final class Sketch {
+
+		private final int		depth;
+
+		private final int		width;
+
+		/** The counter of row {@code i} and column {@code j} at {@code i * width + j}. */
+		private final long[]	counters;
+
+		private long			count;
+
+		Sketch(int depth, int width) {
+			this.depth = depth;
+			this.width = width;
+			this.counters = new long[depth * width];
+		}
+
+		private Sketch(Sketch other) {
+			this.depth = other.depth;
+			this.width = other.width;
+			this.counters = other.counters.clone();
+			this.count = other.count;
+		}
+
+		void add(Object value, long times) {
+			long hash = Hashing.hash(value);
+			int hash1 = (int) hash;
+			int hash2 = (int) (hash >>> 32);
+			for (int row = 0; row < depth; row++) {
+				// Row hashes derived from two, after Kirsch and Mitzenmacher
+				int column = ((hash1 + row * hash2) & Integer.MAX_VALUE) % width;
+				counters[row * width + column] += times;
+			}
+			count += times;
+		}
+
+		void merge(Sketch other) {
+			if (other.depth != depth || other.width != width) {
+				throw new IllegalArgumentException("Sketches of different size: " + depth + "x" + width + ", "
+						+ other.depth + "x" + other.width);
+			}
+			for (int i = 0; i < counters.length; i++) {
+				counters[i] += other.counters[i];
+			}
+			count += other.count;
+		}
+
+		/**
+		 * Returns the estimated number of times a value was added, never less
+		 * than the real one.
+		 */
+		public long frequency(Object value) {
+			long hash = Hashing.hash(value);
+			int hash1 = (int) hash;
+			int hash2 = (int) (hash >>> 32);
+			long frequency = Long.MAX_VALUE;
+			for (int row = 0; row < depth; row++) {
+				int column = ((hash1 + row * hash2) & Integer.MAX_VALUE) % width;
+				frequency = Math.min(frequency, counters[row * width + column]);
+			}
+			return frequency;
+		}
+
+		/**
+		 * Returns the number of values added.
+		 */
+		public long count() {
+			return count;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Sketch && Arrays.equals(counters, ((Sketch) obj).counters);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(counters);
+		}
+
+		@Override
+		public String toString() {
+			return "[count=" + count + ", " + depth + "x" + width + "]";
+		}
+	}
+
+	@Override
+	public Sketch accumulate(List<T> items) {
+		Sketch sketch = new Sketch(depth, width);
+		for (T item : items) {
+			add(sketch, item);
+		}
+		return sketch;
+	}
+
+	@Override
+	public Sketch add(Sketch value, T item) {
+		if (value == null) {
+			value = new Sketch(depth, width);
+		}
+		Object property = propertyResolver.getValue(item);
+		if (property != null) {
+			value.add(property, 1);
+		}
+		return value;
+	}
+
+	@Override
+	public Sketch remove(Sketch value, T item) {
+		Object property = propertyResolver.getValue(item);
+		if (property != null) {
+			value.add(property, -1);
+		}
+		return value;
+	}
+
+	/**
+	 * Merges the second sketch into the first one, or into a copy of it if
+	 * the first one is {@code null}.
+	 */
+	@Override
+	public Sketch merge(Sketch value1, Sketch value2) {
+		if (value1 == null) {
+			return value2 == null ? null : new Sketch(value2);
+		}
+		if (value2 != null) {
+			value1.merge(value2);
+		}
+		return value1;
+	}
+
+	@Override
+	public Sketch copy(Sketch value) {
+		return new Sketch(value);
+	}
+}
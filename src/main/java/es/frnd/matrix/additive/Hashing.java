@@ -0,0 +1,26 @@
+package es.frnd.matrix.additive;
+
+/**
+ * Hash functions of the sketches.
+ * 
+ * @author Fernando Gonzalez
+ */
+final class Hashing {
+
+	private Hashing() {
+	}
+
+	/**
+	 * Returns a 64 bit hash of an object, spreading the bits of its hash code
+	 * with the finalizer of MurmurHash3.
+	 */
+	static long hash(Object value) {
+		long hash = value.hashCode();
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93e2e3e7d95L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,196 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate count of the distinct values of a property of the items, with
+ * the HyperLogLog algorithm.
+ * 
+ * The value of a group is a {@link Sketch} of {@code 2^precision} bytes,
+ * whatever the number of items, updated in constant time with each item. The
+ * sketches of disjoint groups are merged into the one of their union, so the
+ * totals and merged matrices never read the items. The relative error of the
+ * estimate is about {@code 1.04 / sqrt(2^precision)}. Items can not be
+ * removed from a sketch, so the group is accumulated again on removal.
+ * 
+ * Items whose property is {@code null} are not counted.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class HyperLogLog<T> implements Matrix.MergeableAccumulator<T, HyperLogLog.Sketch>,
+		Matrix.IncrementalAccumulator<T, HyperLogLog.Sketch>, Matrix.MutableAccumulator<T, HyperLogLog.Sketch> {
+
+	/**
+	 * The precision of the sketches by default, 2^12 registers and an error of
+	 * about 1.6%.
+	 */
+	public static final int					DEFAULT_PRECISION	= 12;
+
+	private final PropertyResolver<T, ?>	propertyResolver;
+
+	private final int						precision;
+
+	public HyperLogLog(PropertyResolver<T, ?> propertyResolver) {
+		this(propertyResolver, DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param propertyResolver
+	 *            the property whose distinct values are counted
+	 * @param precision
+	 *            the logarithm of the number of registers, from 4 to 18
+	 */
+	public HyperLogLog(PropertyResolver<T, ?> propertyResolver, int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("The precision must be between 4 and 18: " + precision);
+		}
+		this.propertyResolver = propertyResolver;
+		this.precision = precision;
+	}
+
+	/**
+	 * The registers of a group of values.
+	 */
+	public static final class Sketch {
+
+		private final int		precision;
+
+		private final byte[]	registers;
+
+		Sketch(int precision) {
+			this.precision = precision;
+			this.registers = new byte[1 << precision];
+		}
+
+		private Sketch(Sketch other) {
+			this.precision = other.precision;
+			this.registers = other.registers.clone();
+		}
+
+		void add(Object value) {
+			long hash = Hashing.hash(value);
+			int index = (int) (hash >>> (64 - precision));
+			// The last bit set bounds the rank to 64 - precision + 1
+			byte rank = (byte) (Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1);
+			if (rank > registers[index]) {
+				registers[index] = rank;
+			}
+		}
+
+		void merge(Sketch other) {
+			if (other.precision != precision) {
+				throw new IllegalArgumentException("Sketches of different precision: " + precision + ", "
+						+ other.precision);
+			}
+			for (int i = 0; i < registers.length; i++) {
+				if (other.registers[i] > registers[i]) {
+					registers[i] = other.registers[i];
+				}
+			}
+		}
+
+		/**
+		 * Returns the estimated number of distinct values.
+		 */
+		public long estimate() {
+			int m = registers.length;
+			double sum = 0;
+			int zeros = 0;
+			for (byte register : registers) {
+				sum += 1.0 / (1L << register);
+				if (register == 0) {
+					zeros++;
+				}
+			}
+			double estimate = alpha(m) * m * m / sum;
+			if (estimate <= 2.5 * m && zeros > 0) {
+				// Linear counting is more accurate for small cardinalities
+				estimate = m * Math.log((double) m / zeros);
+			}
+			return Math.round(estimate);
+		}
+
+		private static double alpha(int m) {
+			switch (m) {
+			case 16:
+				return 0.673;
+			case 32:
+				return 0.697;
+			case 64:
+				return 0.709;
+			default:
+				return 0.7213 / (1 + 1.079 / m);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Sketch && Arrays.equals(registers, ((Sketch) obj).registers);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(registers);
+		}
+
+		@Override
+		public String toString() {
+			return "~" + estimate();
+		}
+	}
+
+	@Override
+	public Sketch accumulate(List<T> items) {
+		Sketch sketch = new Sketch(precision);
+		for (T item : items) {
+			add(sketch, item);
+		}
+		return sketch;
+	}
+
+	@Override
+	public Sketch add(Sketch value, T item) {
+		if (value == null) {
+			value = new Sketch(precision);
+		}
+		Object property = propertyResolver.getValue(item);
+		if (property != null) {
+			value.add(property);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns {@code null}, a sketch can not forget a value.
+	 */
+	@Override
+	public Sketch remove(Sketch value, T item) {
+		return null;
+	}
+
+	/**
+	 * Merges the second sketch into the first one, or into a copy of it if
+	 * the first one is {@code null}.
+	 */
+	@Override
+	public Sketch merge(Sketch value1, Sketch value2) {
+		if (value1 == null) {
+			return value2 == null ? null : new Sketch(value2);
+		}
+		if (value2 != null) {
+			value1.merge(value2);
+		}
+		return value1;
+	}
+
+	@Override
+	public Sketch copy(Sketch value) {
+		return new Sketch(value);
+	}
+}
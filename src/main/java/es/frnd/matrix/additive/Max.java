@@ -0,0 +1,43 @@
+package es.frnd.matrix.additive;
+
+/**
+ * The greatest value of a numeric property of the items, {@code null} for a
+ * group without items.
+ * 
+ * Removing a value less than the greatest one keeps it. Removing the greatest
+ * one gives no value, and the group is accumulated again.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class Max<T> extends NumericAccumulator<T, Double> {
+
+	public Max(PropertyResolver<T, ? extends Number> propertyResolver) {
+		super(propertyResolver);
+	}
+
+	@Override
+	protected Double empty() {
+		return null;
+	}
+
+	@Override
+	protected Double include(Double value, double number) {
+		return value == null || number > value ? number : value;
+	}
+
+	@Override
+	protected Double exclude(Double value, double number) {
+		return number < value ? value : null;
+	}
+
+	@Override
+	public Double merge(Double value1, Double value2) {
+		if (value1 == null) {
+			return value2;
+		}
+		return value2 == null ? value1 : Math.max(value1, value2);
+	}
+}
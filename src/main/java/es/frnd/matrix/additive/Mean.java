@@ -0,0 +1,108 @@
+package es.frnd.matrix.additive;
+
+/**
+ * Mean of a numeric property of the items.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class Mean<T> extends NumericAccumulator<T, Mean.Value> {
+
+	private static final Value	EMPTY	= new Value(0, 0);
+
+	public Mean(PropertyResolver<T, ? extends Number> propertyResolver) {
+		super(propertyResolver);
+	}
+
+	/**
+	 * The count and sum of a group of numbers, whose number value is their
+	 * mean, {@code NaN} for a group without numbers.
+	 */
+	public static final class Value extends Number {
+
+		private static final long	serialVersionUID	= 1L;
+
+		private final long			count;
+
+		private final double		sum;
+
+		Value(long count, double sum) {
+			this.count = count;
+			this.sum = sum;
+		}
+
+		public long count() {
+			return count;
+		}
+
+		public double sum() {
+			return sum;
+		}
+
+		public double mean() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+
+		@Override
+		public double doubleValue() {
+			return mean();
+		}
+
+		@Override
+		public float floatValue() {
+			return (float) mean();
+		}
+
+		@Override
+		public long longValue() {
+			return (long) mean();
+		}
+
+		@Override
+		public int intValue() {
+			return (int) mean();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Value && count == ((Value) obj).count
+					&& Double.compare(sum, ((Value) obj).sum) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(sum);
+			return 31 * (int) (count ^ count >>> 32) + (int) (bits ^ bits >>> 32);
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(mean());
+		}
+	}
+
+	@Override
+	protected Value empty() {
+		return EMPTY;
+	}
+
+	@Override
+	protected Value include(Value value, double number) {
+		return value == null ? new Value(1, number) : new Value(value.count + 1, value.sum + number);
+	}
+
+	@Override
+	protected Value exclude(Value value, double number) {
+		return value.count == 1 ? EMPTY : new Value(value.count - 1, value.sum - number);
+	}
+
+	@Override
+	public Value merge(Value value1, Value value2) {
+		if (value1 == null) {
+			return value2;
+		}
+		return value2 == null ? value1 : new Value(value1.count + value2.count, value1.sum + value2.sum);
+	}
+}
@@ -0,0 +1,76 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+
+import java.util.List;
+
+/**
+ * Accumulator of a numeric property of the items, keeping a running state
+ * updated in constant time with each item.
+ * 
+ * Items whose property is {@code null} are left out. The states are
+ * immutable, every update returns a new one.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ * @param <V>
+ *            the type of the value
+ */
+public abstract class NumericAccumulator<T, V> implements Matrix.MergeableAccumulator<T, V>,
+		Matrix.IncrementalAccumulator<T, V> {
+
+	private final PropertyResolver<T, ? extends Number>	propertyResolver;
+
+	public NumericAccumulator(PropertyResolver<T, ? extends Number> propertyResolver) {
+		this.propertyResolver = propertyResolver;
+	}
+
+	/**
+	 * Returns the value of a group without items.
+	 */
+	protected abstract V empty();
+
+	/**
+	 * Returns the value of a group after adding a number.
+	 * 
+	 * @param value
+	 *            the value of the group, {@code null} for a group without
+	 *            items
+	 */
+	protected abstract V include(V value, double number);
+
+	/**
+	 * Returns the value of a group after removing a number, or {@code null}
+	 * if it can not be computed without the other numbers.
+	 */
+	protected abstract V exclude(V value, double number);
+
+	@Override
+	public V accumulate(List<T> items) {
+		V value = empty();
+		for (T item : items) {
+			value = add(value, item);
+		}
+		return value;
+	}
+
+	@Override
+	public V add(V value, T item) {
+		Number number = propertyResolver.getValue(item);
+		if (number == null) {
+			return value != null ? value : empty();
+		}
+		return include(value, number.doubleValue());
+	}
+
+	@Override
+	public V remove(V value, T item) {
+		Number number = propertyResolver.getValue(item);
+		if (number == null) {
+			return value;
+		}
+		return exclude(value, number.doubleValue());
+	}
+}
@@ -0,0 +1,287 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Approximate quantiles of a numeric property of the items, such as the
+ * median or the 99th percentile, with the KLL sketch.
+ * 
+ * The value of a group is a {@link Sketch} keeping some of the values in
+ * levels of growing weight. When a level is full, its values are sorted and
+ * every other one is promoted to the next level with twice the weight, so
+ * the sketch keeps about {@code 3k} values whatever the number of items and
+ * the rank of a quantile is off by about {@code 1.7 / k} of the items. The
+ * sketches of disjoint groups are merged into the one of their union. Items
+ * can not be removed from a sketch, so the group is accumulated again on
+ * removal.
+ * 
+ * Items whose property is {@code null} are not counted.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class QuantileSketch<T> implements Matrix.MergeableAccumulator<T, QuantileSketch.Sketch>,
+		Matrix.IncrementalAccumulator<T, QuantileSketch.Sketch>, Matrix.MutableAccumulator<T, QuantileSketch.Sketch> {
+
+	/**
+	 * The size of the sketches by default, for a rank error of about 0.85%.
+	 */
+	public static final int							DEFAULT_K	= 200;
+
+	private final PropertyResolver<T, ? extends Number>	propertyResolver;
+
+	private final int									k;
+
+	public QuantileSketch(PropertyResolver<T, ? extends Number> propertyResolver) {
+		this(propertyResolver, DEFAULT_K);
+	}
+
+	/**
+	 * @param propertyResolver
+	 *            the property whose quantiles are estimated
+	 * @param k
+	 *            the size of the top level of the sketches, at least 8
+	 */
+	public QuantileSketch(PropertyResolver<T, ? extends Number> propertyResolver, int k) {
+		if (k < 8) {
+			throw new IllegalArgumentException("The size of the sketches must be at least 8: " + k);
+		}
+		this.propertyResolver = propertyResolver;
+		this.k = k;
+	}
+
+	/**
+	 * The values kept of a group, by level.
+	 */
+	public static final class Sketch {
+
+		private final int				k;
+
+		/** The values of each level, a value of level h weighs 2^h. */
+		private final List<double[]>	levels	= new ArrayList<double[]>();
+
+		private int[]					sizes	= new int[0];
+
+		private long					count;
+
+		/** Alternates the half of the values promoted, to avoid a bias. */
+		private boolean					odd;
+
+		Sketch(int k) {
+			this.k = k;
+		}
+
+		private Sketch(Sketch other) {
+			this.k = other.k;
+			for (int level = 0; level < other.levels.size(); level++) {
+				levels.add(other.levels.get(level).clone());
+			}
+			this.sizes = other.sizes.clone();
+			this.count = other.count;
+			this.odd = other.odd;
+		}
+
+		void add(double value) {
+			append(0, value);
+			count++;
+			compress();
+		}
+
+		void merge(Sketch other) {
+			// Read before appending, the other sketch may be this one
+			int[] otherSizes = Arrays.copyOf(other.sizes, other.levels.size());
+			long otherCount = other.count;
+			for (int level = 0; level < otherSizes.length; level++) {
+				for (int i = 0; i < otherSizes[level]; i++) {
+					append(level, other.levels.get(level)[i]);
+				}
+			}
+			count += otherCount;
+			while (compress()) {
+				// Until every level fits
+			}
+		}
+
+		private void append(int level, double value) {
+			if (level == levels.size()) {
+				levels.add(new double[capacity(level + 1, level) + 1]);
+				sizes = Arrays.copyOf(sizes, level + 1);
+			}
+			double[] values = levels.get(level);
+			if (sizes[level] == values.length) {
+				values = Arrays.copyOf(values, values.length * 2);
+				levels.set(level, values);
+			}
+			values[sizes[level]++] = value;
+		}
+
+		/**
+		 * The capacity of a level, decreasing by 2/3 with each level below the
+		 * top one.
+		 */
+		private int capacity(int height, int level) {
+			return Math.max(2, (int) Math.ceil(k * Math.pow(2.0 / 3, height - 1 - level)));
+		}
+
+		/**
+		 * Compacts the lowest level over its capacity, if the sketch keeps
+		 * more values than the capacity of all the levels.
+		 * 
+		 * @return whether a level was compacted
+		 */
+		private boolean compress() {
+			int height = levels.size();
+			int size = 0;
+			int capacity = 0;
+			for (int level = 0; level < height; level++) {
+				size += sizes[level];
+				capacity += capacity(height, level);
+			}
+			if (size < capacity) {
+				return false;
+			}
+			for (int level = 0; level < height; level++) {
+				if (sizes[level] >= capacity(height, level)) {
+					compact(level);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void compact(int level) {
+			double[] values = levels.get(level);
+			int size = sizes[level];
+			Arrays.sort(values, 0, size);
+			// An odd value out stays in the level
+			int promoted = size - size % 2;
+			odd = !odd;
+			for (int i = odd ? 1 : 0; i < promoted; i += 2) {
+				append(level + 1, values[i]);
+			}
+			values = levels.get(level);
+			values[0] = values[size - 1];
+			sizes[level] = size % 2;
+		}
+
+		/**
+		 * Returns the number of values added.
+		 */
+		public long count() {
+			return count;
+		}
+
+		/**
+		 * Returns the estimated value with the given fraction of the values
+		 * below it, or {@code NaN} if the sketch is empty.
+		 * 
+		 * @param fraction
+		 *            from 0 to 1, such as 0.5 for the median
+		 */
+		public double quantile(double fraction) {
+			if (fraction < 0 || fraction > 1) {
+				throw new IllegalArgumentException("The fraction must be between 0 and 1: " + fraction);
+			}
+			if (count == 0) {
+				return Double.NaN;
+			}
+			int size = 0;
+			for (int level = 0; level < levels.size(); level++) {
+				size += sizes[level];
+			}
+			// Sorts the positions of the values, along with their weights
+			long[] weights = new long[size];
+			double[] values = new double[size];
+			Integer[] order = new Integer[size];
+			long total = 0;
+			int position = 0;
+			for (int level = 0; level < levels.size(); level++) {
+				for (int i = 0; i < sizes[level]; i++) {
+					values[position] = levels.get(level)[i];
+					weights[position] = 1L << level;
+					order[position] = position;
+					total += 1L << level;
+					position++;
+				}
+			}
+			final double[] keys = values;
+			Arrays.sort(order, new Comparator<Integer>() {
+
+				@Override
+				public int compare(Integer i, Integer j) {
+					return Double.compare(keys[i], keys[j]);
+				}
+			});
+			double rank = fraction * total;
+			long cumulative = 0;
+			for (Integer i : order) {
+				cumulative += weights[i];
+				if (cumulative >= rank) {
+					return values[i];
+				}
+			}
+			return values[order[size - 1]];
+		}
+
+		@Override
+		public String toString() {
+			return count == 0 ? "[]" : "[count=" + count + ", median=" + quantile(0.5) + "]";
+		}
+	}
+
+	@Override
+	public Sketch accumulate(List<T> items) {
+		Sketch sketch = new Sketch(k);
+		for (T item : items) {
+			add(sketch, item);
+		}
+		return sketch;
+	}
+
+	@Override
+	public Sketch add(Sketch value, T item) {
+		if (value == null) {
+			value = new Sketch(k);
+		}
+		Number property = propertyResolver.getValue(item);
+		if (property != null) {
+			value.add(property.doubleValue());
+		}
+		return value;
+	}
+
+	/**
+	 * Returns {@code null}, a sketch can not forget a value.
+	 */
+	@Override
+	public Sketch remove(Sketch value, T item) {
+		return null;
+	}
+
+	/**
+	 * Merges the second sketch into the first one, or into a copy of it if
+	 * the first one is {@code null}.
+	 */
+	@Override
+	public Sketch merge(Sketch value1, Sketch value2) {
+		if (value1 == null) {
+			return value2 == null ? null : new Sketch(value2);
+		}
+		if (value2 != null) {
+			value1.merge(value2);
+		}
+		return value1;
+	}
+
+	@Override
+	public Sketch copy(Sketch value) {
+		return new Sketch(value);
+	}
+}
@@ -0,0 +1,45 @@
+package es.frnd.matrix.additive;
+
+/**
+ * Sum of a numeric property of the items. The sum of a group without items is
+ * 0.
+ * 
+ * The sum is updated with each item added or removed, so after many removals
+ * it may differ from the sum of the remaining items by a rounding error.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class Sum<T> extends NumericAccumulator<T, Double> {
+
+	private static final Double	ZERO	= 0.0;
+
+	public Sum(PropertyResolver<T, ? extends Number> propertyResolver) {
+		super(propertyResolver);
+	}
+
+	@Override
+	protected Double empty() {
+		return ZERO;
+	}
+
+	@Override
+	protected Double include(Double value, double number) {
+		return value == null ? number : value + number;
+	}
+
+	@Override
+	protected Double exclude(Double value, double number) {
+		return value - number;
+	}
+
+	@Override
+	public Double merge(Double value1, Double value2) {
+		if (value1 == null) {
+			return value2;
+		}
+		return value2 == null ? value1 : value1 + value2;
+	}
+}
@@ -0,0 +1,153 @@
+package es.frnd.matrix.additive;
+
+/**
+ * Variance of a numeric property of the items, with their count and mean.
+ * 
+ * The state is updated with the algorithm of Welford, and merged with the one
+ * of Chan et al., which avoid the loss of precision of a sum of squares.
+ * 
+ * @author Fernando Gonzalez
+ * 
+ * @param <T>
+ *            the type of the items
+ */
+public class Variance<T> extends NumericAccumulator<T, Variance.Value> {
+
+	private static final Value	EMPTY	= new Value(0, 0, 0);
+
+	public Variance(PropertyResolver<T, ? extends Number> propertyResolver) {
+		super(propertyResolver);
+	}
+
+	/**
+	 * The count, mean and sum of squared deviations of a group of numbers,
+	 * whose number value is their population variance, {@code NaN} for a
+	 * group without numbers.
+	 */
+	public static final class Value extends Number {
+
+		private static final long	serialVersionUID	= 1L;
+
+		private final long			count;
+
+		private final double		mean;
+
+		/** The sum of the squared deviations from the mean. */
+		private final double		squares;
+
+		Value(long count, double mean, double squares) {
+			this.count = count;
+			this.mean = mean;
+			this.squares = squares;
+		}
+
+		public long count() {
+			return count;
+		}
+
+		public double mean() {
+			return count == 0 ? Double.NaN : mean;
+		}
+
+		/**
+		 * Returns the population variance.
+		 */
+		public double variance() {
+			return count == 0 ? Double.NaN : squares / count;
+		}
+
+		/**
+		 * Returns the sample variance, {@code NaN} for less than two numbers.
+		 */
+		public double sampleVariance() {
+			return count < 2 ? Double.NaN : squares / (count - 1);
+		}
+
+		/**
+		 * Returns the population standard deviation.
+		 */
+		public double standardDeviation() {
+			return Math.sqrt(variance());
+		}
+
+		@Override
+		public double doubleValue() {
+			return variance();
+		}
+
+		@Override
+		public float floatValue() {
+			return (float) variance();
+		}
+
+		@Override
+		public long longValue() {
+			return (long) variance();
+		}
+
+		@Override
+		public int intValue() {
+			return (int) variance();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Value && count == ((Value) obj).count
+					&& Double.compare(mean, ((Value) obj).mean) == 0
+					&& Double.compare(squares, ((Value) obj).squares) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(mean) * 31 + Double.doubleToLongBits(squares);
+			return 31 * (int) (count ^ count >>> 32) + (int) (bits ^ bits >>> 32);
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(variance());
+		}
+	}
+
+	@Override
+	protected Value empty() {
+		return EMPTY;
+	}
+
+	@Override
+	protected Value include(Value value, double number) {
+		if (value == null || value.count == 0) {
+			return new Value(1, number, 0);
+		}
+		long count = value.count + 1;
+		double delta = number - value.mean;
+		double mean = value.mean + delta / count;
+		return new Value(count, mean, value.squares + delta * (number - mean));
+	}
+
+	@Override
+	protected Value exclude(Value value, double number) {
+		if (value.count == 1) {
+			return EMPTY;
+		}
+		long count = value.count - 1;
+		double mean = (value.mean * value.count - number) / count;
+		// Rounding must not leave a negative variance
+		return new Value(count, mean, Math.max(0, value.squares - (number - value.mean) * (number - mean)));
+	}
+
+	@Override
+	public Value merge(Value value1, Value value2) {
+		if (value1 == null || value1.count == 0) {
+			return value2;
+		}
+		if (value2 == null || value2.count == 0) {
+			return value1;
+		}
+		long count = value1.count + value2.count;
+		double delta = value2.mean - value1.mean;
+		double mean = value1.mean + delta * value2.count / count;
+		double squares = value1.squares + value2.squares + delta * delta * value1.count * value2.count / count;
+		return new Value(count, mean, squares);
+	}
+}
@@ -0,0 +1,382 @@
+package es.frnd.matrix.cube;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Accumulator;
+import es.frnd.matrix.Matrix.IncrementalAccumulator;
+import es.frnd.matrix.Matrix.MergeableAccumulator;
+import es.frnd.matrix.Matrix.Resolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Categorization of items on any number of dimensions.
+ *
+ * Every item is resolved once on each dimension, and added in the same pass to
+ * the cell of its coordinates, to the cells of the marginals and to the total.
+ * A marginal is the categorization on a subset of the dimensions, the others
+ * summed out, and only the marginals given on creation are maintained. Only
+ * the cells with items are stored.
+ *
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class Cube<T, V> {
+
+    private final List<Resolver<T, ?>> resolvers;
+    private final Accumulator<T, V> accumulator;
+    private final Map<Key, Cell<T, V>> cells = new HashMap<Key, Cell<T, V>>();
+    private final List<Marginal<T, V>> marginals;
+    private final Cell<T, V> total;
+    private int size;
+
+    /**
+     * @param resolvers   the resolvers of each dimension
+     * @param accumulator the accumulator of the cell values
+     * @param marginals   the dimensions of each marginal to maintain
+     */
+    public Cube(List<? extends Resolver<T, ?>> resolvers, Accumulator<T, V> accumulator, int[]... marginals) {
+        if (resolvers.isEmpty()) {
+            throw new IllegalArgumentException("A cube needs at least one dimension");
+        }
+        this.resolvers = new ArrayList<Resolver<T, ?>>(resolvers);
+        this.accumulator = accumulator;
+        this.marginals = new ArrayList<Marginal<T, V>>(marginals.length);
+        for (int[] dimensions : marginals) {
+            this.marginals.add(new Marginal<T, V>(check(dimensions)));
+        }
+        this.total = new Cell<T, V>(accumulator);
+    }
+
+    /**
+     * Returns a sorted copy of the dimensions, checking them.
+     */
+    private int[] check(int[] dimensions) {
+        int[] sorted = dimensions.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] < 0 || sorted[i] >= resolvers.size() || i > 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("Wrong dimensions for a cube of " + resolvers.size() + ": "
+                        + Arrays.toString(dimensions));
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * The coordinates of a cell.
+     */
+    public static final class Key {
+
+        private final Object[] coordinates;
+        private final int hash;
+
+        private Key(Object[] coordinates) {
+            this.coordinates = coordinates;
+            this.hash = Arrays.hashCode(coordinates);
+        }
+
+        /**
+         * Returns the key with the given coordinates, one per dimension.
+         */
+        public static Key of(Object... coordinates) {
+            return new Key(coordinates.clone());
+        }
+
+        /**
+         * Returns the coordinate on a dimension.
+         */
+        public Object get(int dimension) {
+            return coordinates[dimension];
+        }
+
+        /**
+         * Returns the number of dimensions.
+         */
+        public int size() {
+            return coordinates.length;
+        }
+
+        Key project(int[] dimensions) {
+            Object[] projection = new Object[dimensions.length];
+            for (int i = 0; i < dimensions.length; i++) {
+                projection[i] = coordinates[dimensions[i]];
+            }
+            return new Key(projection);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && hash == ((Key) obj).hash && Arrays.equals(coordinates, ((Key) obj).coordinates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(coordinates);
+        }
+    }
+
+    /**
+     * Cell of a cube.
+     */
+    static class Cell<T, V> implements Matrix.Cell<T, V> {
+
+        private final Accumulator<T, V> accumulator;
+        private final List<T> items = new ArrayList<T>();
+        private V value;
+
+        Cell(Accumulator<T, V> accumulator) {
+            this.accumulator = accumulator;
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(T item) {
+            items.add(item);
+            if (accumulator instanceof IncrementalAccumulator) {
+                value = ((IncrementalAccumulator<T, V>) accumulator).add(value, item);
+            } else if (accumulator instanceof MergeableAccumulator) {
+                MergeableAccumulator<T, V> mergeable = (MergeableAccumulator<T, V>) accumulator;
+                value = mergeable.merge(value, accumulator.accumulate(Collections.singletonList(item)));
+            } else {
+                accumulate();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean remove(T item) {
+            if (!items.remove(item)) {
+                return false;
+            }
+            V updated = null;
+            if (accumulator instanceof IncrementalAccumulator && !items.isEmpty()) {
+                updated = ((IncrementalAccumulator<T, V>) accumulator).remove(value, item);
+            }
+            if (updated != null) {
+                value = updated;
+            } else {
+                accumulate();
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        void merge(Matrix.Cell<T, V> other) {
+            items.addAll(other.getItems());
+            if (accumulator instanceof MergeableAccumulator) {
+                value = ((MergeableAccumulator<T, V>) accumulator).merge(value, other.getValue());
+            } else {
+                accumulate();
+            }
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public List<T> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        public void accumulate() {
+            value = items.isEmpty() ? null : accumulator.accumulate(items);
+        }
+
+        public void clear() {
+            items.clear();
+            value = null;
+        }
+    }
+
+    /**
+     * The cells of a subset of the dimensions.
+     */
+    static class Marginal<T, V> {
+
+        final int[] dimensions;
+        final Map<Key, Cell<T, V>> cells = new HashMap<Key, Cell<T, V>>();
+
+        Marginal(int[] dimensions) {
+            this.dimensions = dimensions;
+        }
+    }
+
+    /**
+     * Adds an item to the cube.
+     *
+     * @return the cell where the item falls
+     */
+    public Matrix.Cell<T, V> put(T item) {
+        Key key = keyOf(item);
+        for (Marginal<T, V> marginal : marginals) {
+            cell(marginal.cells, key.project(marginal.dimensions)).add(item);
+        }
+        total.add(item);
+        Cell<T, V> cell = cell(cells, key);
+        cell.add(item);
+        size++;
+        return cell;
+    }
+
+    public void putAll(Collection<T> items) {
+        for (T item : items) {
+            put(item);
+        }
+    }
+
+    /**
+     * Removes an item from the cube. Cells left without items are dropped.
+     */
+    public void remove(T item) {
+        Key key = keyOf(item);
+        if (!remove(cells, key, item)) {
+            return;
+        }
+        for (Marginal<T, V> marginal : marginals) {
+            remove(marginal.cells, key.project(marginal.dimensions), item);
+        }
+        total.remove(item);
+        size--;
+    }
+
+    public void removeAll(Collection<T> items) {
+        for (T item : items) {
+            remove(item);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        for (Marginal<T, V> marginal : marginals) {
+            marginal.cells.clear();
+        }
+        total.clear();
+        size = 0;
+    }
+
+    private Key keyOf(T item) {
+        Object[] coordinates = new Object[resolvers.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = resolvers.get(i).resolve(item);
+        }
+        return new Key(coordinates);
+    }
+
+    private Cell<T, V> cell(Map<Key, Cell<T, V>> cells, Key key) {
+        Cell<T, V> cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell<T, V>(accumulator);
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    private boolean remove(Map<Key, Cell<T, V>> cells, Key key, T item) {
+        Cell<T, V> cell = cells.get(key);
+        if (cell == null || !cell.remove(item)) {
+            return false;
+        }
+        if (cell.getItems().isEmpty()) {
+            cells.remove(key);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of dimensions.
+     */
+    public int dimensions() {
+        return resolvers.size();
+    }
+
+    /**
+     * Returns the number of items.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the cell with the given coordinates, or {@code null} if it has
+     * no items.
+     */
+    public Matrix.Cell<T, V> get(Object... coordinates) {
+        if (coordinates.length != resolvers.size()) {
+            throw new IllegalArgumentException("Expected " + resolvers.size() + " coordinates: "
+                    + Arrays.toString(coordinates));
+        }
+        return cells.get(new Key(coordinates));
+    }
+
+    /**
+     * Returns the cells with items, by coordinates.
+     */
+    public Map<Key, Matrix.Cell<T, V>> cells() {
+        return Collections.<Key, Matrix.Cell<T, V>>unmodifiableMap(cells);
+    }
+
+    /**
+     * Returns the cells of a maintained marginal, by their coordinates on the
+     * dimensions of the marginal, in increasing order of dimension.
+     *
+     * @param dimensions the dimensions of the marginal
+     * @throws IllegalArgumentException if the marginal is not maintained
+     */
+    public Map<Key, Matrix.Cell<T, V>> marginal(int... dimensions) {
+        return Collections.<Key, Matrix.Cell<T, V>>unmodifiableMap(marginalOf(dimensions).cells);
+    }
+
+    /**
+     * Returns the total of all the items.
+     */
+    public Matrix.Cell<T, V> getTotal() {
+        return total;
+    }
+
+    Marginal<T, V> marginalOf(int... dimensions) {
+        int[] sorted = check(dimensions);
+        for (Marginal<T, V> marginal : marginals) {
+            if (Arrays.equals(marginal.dimensions, sorted)) {
+                return marginal;
+            }
+        }
+        throw new IllegalArgumentException("The marginal " + Arrays.toString(dimensions) + " is not maintained");
+    }
+
+    Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * Returns a read-only matrix of two dimensions of the cube, taken from the
+     * maintained marginals of both dimensions together and of each one alone,
+     * without reading the items. The keys are the ones of the cube when the
+     * matrix is created, its cells are the ones of the cube.
+     *
+     * @param rowDimension    the dimension of the rows
+     * @param columnDimension the dimension of the columns
+     * @throws IllegalArgumentException if any of the marginals is not maintained
+     */
+    public <R, C> Matrix<R, C, T, V> pivot(int rowDimension, int columnDimension) {
+        return new Pivot<R, C, T, V>(this, rowDimension, columnDimension);
+    }
+
+    @Override
+    public String toString() {
+        return "Cube [dimensions=" + resolvers.size() + ", size=" + size + ", cells=" + cells.size() + "]";
+    }
+}
@@ -0,0 +1,165 @@
+package es.frnd.matrix.cube;
+
+import es.frnd.matrix.AbstractMatrix;
+import es.frnd.matrix.Matrix;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only matrix of two dimensions of a cube.
+ *
+ * @param <R> the type of the keys of the row dimension
+ * @param <C> the type of the keys of the column dimension
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+class Pivot<R, C, T, V> extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Accumulator<T, V> accumulator;
+
+    Pivot(Cube<T, V> cube, int rowDimension, int columnDimension) {
+        this(new Projection<R, C, T, V>(cube, rowDimension, columnDimension), cube.getAccumulator());
+    }
+
+    private Pivot(Projection<R, C, T, V> projection, Accumulator<T, V> accumulator) {
+        super(projection.rows, projection.items, projection.columnTotals, projection.rowTotals, projection.total);
+        this.accumulator = accumulator;
+    }
+
+    /**
+     * Reads the marginals of the cube filling the maps of the matrix.
+     */
+    private static class Projection<R, C, T, V> {
+
+        private final Map<R, Map<C, Matrix.Cell<T, V>>> rows = new LinkedHashMap<R, Map<C, Matrix.Cell<T, V>>>();
+        private final Map<C, Matrix.Cell<T, V>> columnTotals = new LinkedHashMap<C, Matrix.Cell<T, V>>();
+        private final Map<R, Matrix.Cell<T, V>> rowTotals = new LinkedHashMap<R, Matrix.Cell<T, V>>();
+        private final List<T> items;
+        private final Matrix.Cell<T, V> total;
+
+        @SuppressWarnings("unchecked")
+        Projection(Cube<T, V> cube, int rowDimension, int columnDimension) {
+            if (rowDimension == columnDimension) {
+                throw new IllegalArgumentException("Row and column dimensions must be distinct: " + rowDimension);
+            }
+            // Marginal keys have their coordinates in increasing order of dimension
+            int row = rowDimension < columnDimension ? 0 : 1;
+            for (Map.Entry<Cube.Key, Cube.Cell<T, V>> cell : cube.marginalOf(rowDimension, columnDimension).cells
+                    .entrySet()) {
+                R rowKey = (R) cell.getKey().get(row);
+                Map<C, Matrix.Cell<T, V>> cells = rows.get(rowKey);
+                if (cells == null) {
+                    cells = new LinkedHashMap<C, Matrix.Cell<T, V>>();
+                    rows.put(rowKey, cells);
+                }
+                cells.put((C) cell.getKey().get(1 - row), cell.getValue());
+            }
+            for (Map.Entry<Cube.Key, Cube.Cell<T, V>> cell : cube.marginalOf(rowDimension).cells.entrySet()) {
+                rowTotals.put((R) cell.getKey().get(0), cell.getValue());
+            }
+            for (Map.Entry<Cube.Key, Cube.Cell<T, V>> cell : cube.marginalOf(columnDimension).cells.entrySet()) {
+                columnTotals.put((C) cell.getKey().get(0), cell.getValue());
+            }
+            total = cube.getTotal();
+            items = total.getItems();
+        }
+    }
+
+    @Override
+    protected Cube.Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+        Cube.Cell<T, V> result = new Cube.Cell<T, V>(accumulator);
+        for (Matrix.Cell<T, V> cell : cells) {
+            result.merge(cell);
+        }
+        return result;
+    }
+
+    @Override
+    protected Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Resolver<T, R> getRowResolver() {
+        throw new UnsupportedOperationException("A pivot of a cube does not resolve items");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Resolver<T, C> getColResolver() {
+        throw new UnsupportedOperationException("A pivot of a cube does not resolve items");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Matrix.Cell<T, V> createCell() {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public Matrix.Cell<T, V> put(T value) {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void putAll(Collection<T> values) {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void merge(Matrix<R, C, T, V> other) {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void remove(T value) {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void removeAll(Collection<T> values) {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("A pivot of a cube is read-only");
+    }
+}
@@ -0,0 +1,95 @@
+package es.frnd.matrix.generic;
+
+/**
+ * The sizes expected of a matrix, to presize its structures when it is
+ * created instead of growing them while it is loaded. Any size left at 0 is
+ * not known.
+ *
+ * <pre>
+ * new GenericMatrix&lt;R, C, T, V&gt;(rowResolver, colResolver, accumulator, new HashStorage&lt;R, C, T, V&gt;(),
+ *         new Capacity().rows(50).columns(200).items(50000000));
+ * </pre>
+ *
+ * @author Fernando Gonzalez
+ */
+public class Capacity {
+
+    private int rows;
+    private int columns;
+    private int items;
+
+    /**
+     * Sets the number of row keys expected.
+     */
+    public Capacity rows(int rows) {
+        this.rows = check(rows);
+        return this;
+    }
+
+    /**
+     * Sets the number of column keys expected.
+     */
+    public Capacity columns(int columns) {
+        this.columns = check(columns);
+        return this;
+    }
+
+    /**
+     * Sets the number of items expected.
+     */
+    public Capacity items(int items) {
+        this.items = check(items);
+        return this;
+    }
+
+    private static int check(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        return size;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the number of items expected in the total of each row if they
+     * were evenly spread, or 0 if it is not known.
+     */
+    public int getItemsPerRow() {
+        return rows == 0 || items == 0 ? 0 : Math.max(1, items / rows);
+    }
+
+    /**
+     * Returns the number of items expected in the total of each column if
+     * they were evenly spread, or 0 if it is not known.
+     */
+    public int getItemsPerColumn() {
+        return columns == 0 || items == 0 ? 0 : Math.max(1, items / columns);
+    }
+
+    /**
+     * Returns the number of items expected in each cell if they were evenly
+     * spread, or 0 if it is not known.
+     */
+    public int getItemsPerCell() {
+        if (rows == 0 || columns == 0 || items == 0) {
+            return 0;
+        }
+        return (int) Math.max(1, items / ((long) rows * columns));
+    }
+
+    @Override
+    public String toString() {
+        return "Capacity [rows=" + rows + ", columns=" + columns + ", items=" + items + "]";
+    }
+}
@@ -4,7 +4,6 @@ import es.frnd.matrix.AbstractMatrix;
 import es.frnd.matrix.Matrix;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,30 +22,157 @@ public class GenericMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implem
     private final Resolver<T, R> rowResolver;
     private final Resolver<T, C> colResolver;
     private final Accumulator<T, V> accumulator;
+    private final Storage<R, C, T, V> storage;
+    private final Map<C, Matrix.Cell<T, V>> columnTotals;
+    private final int expectedColumns;
+    private final int expectedItemsPerCell;
+    private final int expectedItemsPerRow;
+    private final int expectedItemsPerColumn;
 
     public GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
                          Accumulator<T, V> accumulator) {
-        super(new HashMap<R, Map<C, Matrix.Cell<T, V>>>(), new ArrayList<T>(), new HashMap<C, Matrix.Cell<T, V>>(),
-                new HashMap<R, Matrix.Cell<T, V>>(), new Cell<T, V>(accumulator));
+        this(rowResolver, colResolver, accumulator, new HashStorage<R, C, T, V>());
+    }
+
+    /**
+     * Creates a matrix keeping the items of the cells in the given store.
+     *
+     * @param itemStore the store of the items
+     */
+    public GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                         Accumulator<T, V> accumulator, ItemStore<T> itemStore) {
+        this(rowResolver, colResolver, accumulator, new HashStorage<R, C, T, V>(itemStore));
+    }
+
+    /**
+     * Creates a matrix keeping its cells in the structures of the given
+     * storage.
+     *
+     * @param storage the storage of the cells
+     */
+    public GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                         Accumulator<T, V> accumulator, Storage<R, C, T, V> storage) {
+        this(rowResolver, colResolver, accumulator, storage, new Capacity());
+    }
+
+    /**
+     * Creates a matrix keeping its cells in the structures of the given
+     * storage, presized for the expected sizes.
+     *
+     * @param storage  the storage of the cells
+     * @param capacity the sizes expected
+     */
+    public GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                         Accumulator<T, V> accumulator, Storage<R, C, T, V> storage, Capacity capacity) {
+        this(rowResolver, colResolver, accumulator, storage.newRows(capacity.getRows()),
+                storage.newColumnTotals(capacity.getColumns()), storage.newRowTotals(capacity.getRows()), storage,
+                capacity);
+    }
+
+    /**
+     * Creates a matrix on the given maps, which must be empty.
+     *
+     * @param rows         the map of the rows
+     * @param columnTotals the map of the totals of each column
+     * @param rowTotals    the map of the totals of each row
+     */
+    protected GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                            Accumulator<T, V> accumulator, Map<R, Map<C, Matrix.Cell<T, V>>> rows,
+                            Map<C, Matrix.Cell<T, V>> columnTotals, Map<R, Matrix.Cell<T, V>> rowTotals) {
+        this(rowResolver, colResolver, accumulator, rows, columnTotals, rowTotals, new HashStorage<R, C, T, V>(),
+                new Capacity());
+    }
+
+    /**
+     * Creates a matrix on the given maps, which must be empty, taking the
+     * cells, the lists of items and the maps of new rows from the storage,
+     * presized for the expected sizes.
+     *
+     * @param rows         the map of the rows
+     * @param columnTotals the map of the totals of each column
+     * @param rowTotals    the map of the totals of each row
+     * @param storage      the storage of the cells
+     * @param capacity     the sizes expected
+     */
+    protected GenericMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                            Accumulator<T, V> accumulator, Map<R, Map<C, Matrix.Cell<T, V>>> rows,
+                            Map<C, Matrix.Cell<T, V>> columnTotals, Map<R, Matrix.Cell<T, V>> rowTotals,
+                            Storage<R, C, T, V> storage, Capacity capacity) {
+        super(rows, storage.newItems(capacity.getItems()), columnTotals, rowTotals,
+                storage.newCell(accumulator, 0));
         this.rowResolver = rowResolver;
         this.colResolver = colResolver;
         this.accumulator = accumulator;
+        this.storage = storage;
+        this.columnTotals = columnTotals;
+        this.expectedColumns = capacity.getColumns();
+        this.expectedItemsPerCell = capacity.getItemsPerCell();
+        this.expectedItemsPerRow = capacity.getItemsPerRow();
+        this.expectedItemsPerColumn = capacity.getItemsPerColumn();
     }
 
-    static class Cell<T, V> implements Matrix.Cell<T, V> {
+    /**
+     * Cell whose value is updated with each item added or removed, or merged
+     * with the value of another cell, when the accumulator allows it. When it
+     * does not, after a removal the value is accumulated again on the next
+     * read, so several removals from a cell accumulate it once.
+     */
+    public static class Cell<T, V> implements Matrix.Cell<T, V> {
 
         private final Accumulator<T, V> accumulator;
         private V value;
         private List<T> items;
+        private boolean stale;
 
         public Cell(Accumulator<T, V> accumulator) {
+            this(accumulator, new ArrayList<T>());
+        }
+
+        /**
+         * Creates a cell keeping its items in the given list, which must be
+         * empty.
+         */
+        public Cell(Accumulator<T, V> accumulator, List<T> items) {
             this.accumulator = accumulator;
-            items = new ArrayList<T>();
+            this.items = items;
         }
 
+        /*
+         * Adds an item. The value is updated with the item if the accumulator
+         * allows it, otherwise the value is accumulated again.
+         */
+        @SuppressWarnings("unchecked")
         public void add(T item) {
             items.add(item);
-            accumulate();
+            if (stale) {
+                return;
+            }
+            if (accumulator instanceof IncrementalAccumulator) {
+                value = ((IncrementalAccumulator<T, V>) accumulator).add(value, item);
+            } else {
+                accumulate();
+            }
+        }
+
+        /*
+         * Removes an item. The value is updated without the item if the
+         * accumulator allows it, otherwise it is accumulated again when read.
+         */
+        @SuppressWarnings("unchecked")
+        void remove(T item) {
+            if (!items.remove(item) || stale) {
+                return;
+            }
+            V updated = null;
+            if (accumulator instanceof IncrementalAccumulator) {
+                updated = ((IncrementalAccumulator<T, V>) accumulator).remove(value, item);
+            }
+            if (updated != null) {
+                value = updated;
+            } else {
+                value = null;
+                stale = true;
+            }
         }
 
         /*
@@ -59,12 +185,33 @@ public class GenericMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implem
 
         public void accumulate() {
             value = accumulator.accumulate(items);
+            stale = false;
+        }
+
+        /*
+         * Adds the items of other cell. The values are merged if the
+         * accumulator allows it, otherwise the value is accumulated again.
+         */
+        @SuppressWarnings("unchecked")
+        void merge(Matrix.Cell<T, V> other) {
+            items.addAll(other.getItems());
+            if (stale) {
+                return;
+            }
+            if (accumulator instanceof MergeableAccumulator) {
+                value = ((MergeableAccumulator<T, V>) accumulator).merge(value, other.getValue());
+            } else {
+                accumulate();
+            }
         }
 
         /**
          * @return the value
          */
         public V getValue() {
+            if (stale) {
+                accumulate();
+            }
             return value;
         }
 
@@ -79,9 +226,66 @@ public class GenericMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implem
         public void clear() {
             items.clear();
             value = null;
+            stale = false;
+        }
+    }
+
+    /**
+     * Adds the items of all the cells to a new cell, merging their values if
+     * the accumulator allows it or accumulating the items once otherwise.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Matrix.Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+        Matrix.Cell<T, V> created = createCell();
+        if (!(created instanceof Cell)) {
+            return super.aggregate(cells);
+        }
+        Cell<T, V> result = (Cell<T, V>) created;
+        for (Matrix.Cell<T, V> cell : cells) {
+            result.items.addAll(cell.getItems());
+            if (accumulator instanceof MergeableAccumulator) {
+                result.value = ((MergeableAccumulator<T, V>) accumulator).merge(result.value, cell.getValue());
+            }
+        }
+        if (!(accumulator instanceof MergeableAccumulator)) {
+            result.accumulate();
+        }
+        return result;
+    }
+
+    @Override
+    protected void addItem(Matrix.Cell<T, V> cell, T item) {
+        if (cell instanceof Cell) {
+            ((Cell<T, V>) cell).add(item);
+        } else {
+            super.addItem(cell, item);
+        }
+    }
+
+    @Override
+    protected void removeItem(Matrix.Cell<T, V> cell, T item) {
+        if (cell instanceof Cell) {
+            ((Cell<T, V>) cell).remove(item);
+        } else {
+            super.removeItem(cell, item);
+        }
+    }
+
+    @Override
+    protected void mergeCell(Matrix.Cell<T, V> cell, Matrix.Cell<T, V> other) {
+        if (cell instanceof Cell) {
+            ((Cell<T, V>) cell).merge(other);
+        } else {
+            super.mergeCell(cell, other);
         }
     }
 
+    @Override
+    protected Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
     @Override
     protected Resolver<T, R> getRowResolver() {
         return rowResolver;
@@ -92,13 +296,46 @@ public class GenericMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implem
         return colResolver;
     }
 
+    /**
+     * Returns the storage of the cells.
+     */
+    public Storage<R, C, T, V> getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns a new cell, expecting the items of a cell if they were evenly
+     * spread.
+     */
+    @Override
+    protected Matrix.Cell<T, V> createCell() {
+        return storage.newCell(accumulator, expectedItemsPerCell);
+    }
+
+    /**
+     * Returns a new total of a row, expecting the items of a row if they were
+     * evenly spread.
+     */
+    @Override
+    protected Matrix.Cell<T, V> createRowTotal() {
+        return storage.newCell(accumulator, expectedItemsPerRow);
+    }
+
+    /**
+     * Returns a new total of a column, expecting the items of a column if they
+     * were evenly spread.
+     */
     @Override
-    protected Cell<T, V> createCell() {
-        return new Cell<T, V>(accumulator);
+    protected Matrix.Cell<T, V> createColumnTotal() {
+        return storage.newCell(accumulator, expectedItemsPerColumn);
     }
 
+    /**
+     * Returns a new map for the cells of a row, expecting as many columns as
+     * the matrix already has, or as expected if more.
+     */
     @Override
     protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
-        return new HashMap<C, Matrix.Cell<T, V>>();
+        return storage.newRow(Math.max(expectedColumns, columnTotals.size()));
     }
 }
@@ -0,0 +1,76 @@
+package es.frnd.matrix.generic;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Accumulator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the cells in hash maps and their items in the lists of an item store,
+ * on the heap by default.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class HashStorage<R, C, T, V> implements Storage<R, C, T, V> {
+
+    private final ItemStore<T> itemStore;
+
+    public HashStorage() {
+        this(new HeapItemStore<T>());
+    }
+
+    /**
+     * @param itemStore the store of the items
+     */
+    public HashStorage(ItemStore<T> itemStore) {
+        this.itemStore = itemStore;
+    }
+
+    /**
+     * Returns the store of the items.
+     */
+    public ItemStore<T> getItemStore() {
+        return itemStore;
+    }
+
+    public Map<R, Map<C, Matrix.Cell<T, V>>> newRows(int expectedRows) {
+        return new HashMap<R, Map<C, Matrix.Cell<T, V>>>(capacity(expectedRows));
+    }
+
+    public Map<C, Matrix.Cell<T, V>> newRow(int expectedColumns) {
+        return new HashMap<C, Matrix.Cell<T, V>>(capacity(expectedColumns));
+    }
+
+    public Map<C, Matrix.Cell<T, V>> newColumnTotals(int expectedColumns) {
+        return new HashMap<C, Matrix.Cell<T, V>>(capacity(expectedColumns));
+    }
+
+    public Map<R, Matrix.Cell<T, V>> newRowTotals(int expectedRows) {
+        return new HashMap<R, Matrix.Cell<T, V>>(capacity(expectedRows));
+    }
+
+    public Matrix.Cell<T, V> newCell(Accumulator<T, V> accumulator, int expectedItems) {
+        return new GenericMatrix.Cell<T, V>(accumulator, itemStore.newItems(expectedItems));
+    }
+
+    public List<T> newItems(int expectedItems) {
+        return itemStore.newItems(expectedItems);
+    }
+
+    /**
+     * Returns the capacity of a hash map holding the expected entries without
+     * growing, or the default one if they are not known.
+     */
+    protected static int capacity(int expected) {
+        if (expected <= 0) {
+            return 16;
+        }
+        return (int) Math.min(expected / 0.75 + 1, 1 << 30);
+    }
+}
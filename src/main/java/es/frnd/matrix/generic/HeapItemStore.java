@@ -0,0 +1,17 @@
+package es.frnd.matrix.generic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the items in array lists on the heap.
+ *
+ * @param <T> the type of the items
+ * @author Fernando Gonzalez
+ */
+public class HeapItemStore<T> implements ItemStore<T> {
+
+    public List<T> newItems(int expectedSize) {
+        return expectedSize > 0 ? new ArrayList<T>(expectedSize) : new ArrayList<T>();
+    }
+}
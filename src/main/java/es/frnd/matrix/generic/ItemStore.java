@@ -0,0 +1,22 @@
+package es.frnd.matrix.generic;
+
+import java.util.List;
+
+/**
+ * Where a {@link GenericMatrix} keeps the items of its cells, its totals and
+ * the list of all its items.
+ *
+ * @param <T> the type of the items
+ * @author Fernando Gonzalez
+ */
+public interface ItemStore<T> {
+
+    /**
+     * Returns a new empty list for the items of a cell. The list must support
+     * adding and removing items.
+     *
+     * @param expectedSize the number of items expected in the list, or 0 if
+     *                     it is not known
+     */
+    List<T> newItems(int expectedSize);
+}
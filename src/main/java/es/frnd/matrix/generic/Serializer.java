@@ -0,0 +1,24 @@
+package es.frnd.matrix.generic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads items as bytes.
+ *
+ * @param <T> the type of the items
+ * @author Fernando Gonzalez
+ */
+public interface Serializer<T> {
+
+    /**
+     * Writes an item.
+     */
+    void write(T item, DataOutput out) throws IOException;
+
+    /**
+     * Reads an item written by {@link #write(Object, DataOutput)}.
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,130 @@
+package es.frnd.matrix.generic;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Selection;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generic matrix whose row and column keys are kept sorted as items are
+ * added, so the key sets are iterated in order without sorting them on each
+ * read, and ranges of keys are taken as views.
+ *
+ * Keys are sorted by their natural order or by the given comparators. The
+ * natural order puts {@code null} keys last.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class SortedMatrix<R, C, T, V> extends GenericMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Comparator<? super R> rowComparator;
+    private final Comparator<? super C> columnComparator;
+    private final NavigableMap<C, Matrix.Cell<T, V>> columnTotals;
+
+    /**
+     * Creates a matrix sorted by the natural order of the keys.
+     */
+    public SortedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Accumulator<T, V> accumulator) {
+        this(rowResolver, colResolver, accumulator, null, null);
+    }
+
+    /**
+     * Creates a matrix sorted by the given comparators.
+     *
+     * @param rowComparator    the order of the row keys, {@code null} for the
+     *                         natural order
+     * @param columnComparator the order of the column keys, {@code null} for
+     *                         the natural order
+     */
+    public SortedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Accumulator<T, V> accumulator,
+                        Comparator<? super R> rowComparator, Comparator<? super C> columnComparator) {
+        this(rowResolver, colResolver, accumulator, rowComparator, columnComparator, new HeapItemStore<T>());
+    }
+
+    /**
+     * Creates a matrix sorted by the given comparators, keeping the items of
+     * the cells in the given store.
+     *
+     * @param rowComparator    the order of the row keys, {@code null} for the
+     *                         natural order
+     * @param columnComparator the order of the column keys, {@code null} for
+     *                         the natural order
+     * @param itemStore        the store of the items
+     */
+    public SortedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Accumulator<T, V> accumulator,
+                        Comparator<? super R> rowComparator, Comparator<? super C> columnComparator,
+                        ItemStore<T> itemStore) {
+        this(rowResolver, colResolver, accumulator, orderOf(rowComparator), orderOf(columnComparator),
+                new TreeMap<C, Matrix.Cell<T, V>>(orderOf(columnComparator)), itemStore);
+    }
+
+    private SortedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Accumulator<T, V> accumulator,
+                         Comparator<? super R> rowComparator, Comparator<? super C> columnComparator,
+                         NavigableMap<C, Matrix.Cell<T, V>> columnTotals, ItemStore<T> itemStore) {
+        super(rowResolver, colResolver, accumulator, new TreeMap<R, Map<C, Matrix.Cell<T, V>>>(rowComparator),
+                columnTotals, new TreeMap<R, Matrix.Cell<T, V>>(rowComparator), new HashStorage<R, C, T, V>(itemStore),
+                new Capacity());
+        this.rowComparator = rowComparator;
+        this.columnComparator = columnComparator;
+        this.columnTotals = columnTotals;
+    }
+
+    private static <K> Comparator<? super K> orderOf(Comparator<? super K> comparator) {
+        if (comparator == null) {
+            return Selection.<K>naturalOrder();
+        }
+        return comparator;
+    }
+
+    /**
+     * Returns the order of the row keys.
+     */
+    public Comparator<? super R> rowComparator() {
+        return rowComparator;
+    }
+
+    /**
+     * Returns the order of the column keys.
+     */
+    public Comparator<? super C> columnComparator() {
+        return columnComparator;
+    }
+
+    /**
+     * Returns the sorted column keys. Every column with items has a total, so
+     * they are the keys of the totals.
+     */
+    @Override
+    public Set<C> columnKeySet() {
+        return Collections.unmodifiableSet(columnTotals.keySet());
+    }
+
+    /**
+     * Returns a read-only view of the cells between the given keys, all of them
+     * included. The keys are looked up in the sorted maps, nothing is sorted.
+     *
+     * @param fromRow    the lowest row key
+     * @param toRow      the highest row key
+     * @param fromColumn the lowest column key
+     * @param toColumn   the highest column key
+     * @return the view
+     */
+    public Matrix<R, C, T, V> subMatrix(R fromRow, R toRow, C fromColumn, C toColumn) {
+        return subMatrix(Selection.range(fromRow, toRow, rowComparator),
+                Selection.range(fromColumn, toColumn, columnComparator));
+    }
+
+    @Override
+    protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+        return new TreeMap<C, Matrix.Cell<T, V>>(columnComparator);
+    }
+}
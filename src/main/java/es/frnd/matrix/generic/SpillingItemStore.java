@@ -0,0 +1,384 @@
+package es.frnd.matrix.generic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the items in memory-mapped files, for matrices with more items than
+ * fit on the heap.
+ *
+ * The items of each list are serialized in blocks of a fixed number of items,
+ * appended to segment files of a fixed size. On the heap a list keeps only the
+ * address of each block and its last items, until they fill a block. The items
+ * are read back one block at a time when the list is read, as new objects, so
+ * they must implement {@code equals()} for the removal of items to work.
+ *
+ * The files are never rewritten: a removal writes again the block of the item
+ * and a clear forgets the blocks, leaving their bytes unused until the store
+ * is closed. The files are deleted only by {@link #close()}, so a store must
+ * be closed when its matrix is no longer used. Like the matrices, the store
+ * is not thread safe.
+ *
+ * @param <T> the type of the items
+ * @author Fernando Gonzalez
+ */
+public class SpillingItemStore<T> implements ItemStore<T>, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    public static final int DEFAULT_BLOCK_ITEMS = 64;
+
+    private final Serializer<T> serializer;
+    private final File directory;
+    private final int segmentSize;
+    private final int blockItems;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final Output bytes = new Output();
+    private final DataOutputStream output = new DataOutputStream(bytes);
+    private boolean closed;
+
+    // The last block read, shared by all the lists
+    private Items cachedList;
+    private int cachedBlock;
+    private Object[] cachedItems;
+
+    /**
+     * Creates a store with segment files in the temporary directory.
+     */
+    public SpillingItemStore(Serializer<T> serializer) {
+        this(serializer, null, DEFAULT_SEGMENT_SIZE, DEFAULT_BLOCK_ITEMS);
+    }
+
+    /**
+     * @param serializer  the serializer of the items
+     * @param directory   the directory of the segment files, {@code null} for
+     *                    the temporary directory
+     * @param segmentSize the size of each segment file, bigger if a block does
+     *                    not fit
+     * @param blockItems  the number of items of each block, the most kept on
+     *                    the heap by each list
+     */
+    public SpillingItemStore(Serializer<T> serializer, File directory, int segmentSize, int blockItems) {
+        if (segmentSize <= 0 || blockItems <= 0) {
+            throw new IllegalArgumentException("Wrong segment size or block items: " + segmentSize + ", "
+                    + blockItems);
+        }
+        this.serializer = serializer;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.blockItems = blockItems;
+    }
+
+    /**
+     * Returns a new empty list. The expected size is not used, the list keeps
+     * at most a block of items on the heap anyway.
+     */
+    public List<T> newItems(int expectedSize) {
+        checkOpen();
+        return new Items();
+    }
+
+    /**
+     * Returns the number of segment files.
+     */
+    public int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of bytes written to the segment files, including the
+     * ones no longer used.
+     */
+    public long getSpilledBytes() {
+        long result = 0;
+        for (Segment segment : segments) {
+            result += segment.used;
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the segment files. The lists of the store can not be used
+     * afterwards, reading their spilled items fails.
+     *
+     * The memory mapped from a file is only released when its buffer is
+     * garbage collected, so the files are deleted while still mapped: their
+     * disk space is freed once the buffers are collected, and on systems
+     * that do not delete mapped files, such as Windows, they are left in the
+     * directory.
+     */
+    public void close() throws IOException {
+        closed = true;
+        cachedList = null;
+        cachedItems = null;
+        IOException failure = null;
+        for (Segment segment : segments) {
+            try {
+                segment.file.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            segment.path.delete();
+        }
+        segments.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The item store is closed");
+        }
+    }
+
+    /**
+     * A segment file, mapped whole.
+     */
+    private static class Segment {
+
+        private final File path;
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+        private int used;
+
+        Segment(File path, int size) throws IOException {
+            this.path = path;
+            this.file = new RandomAccessFile(path, "rw");
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * The bytes of a block being written.
+     */
+    private static class Output extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * The bytes of a block being read.
+     */
+    private static class Input extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+    }
+
+    /**
+     * Writes a block of items, returning its address: the index of the
+     * segment in the high bits and the offset in the low ones.
+     */
+    private long append(List<T> items) {
+        checkOpen();
+        bytes.reset();
+        try {
+            for (T item : items) {
+                serializer.write(item, output);
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not write an item", e);
+        }
+        int length = bytes.size();
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.buffer.capacity() - segment.used < length) {
+            segment = newSegment(Math.max(segmentSize, length));
+        }
+        ByteBuffer target = segment.buffer.duplicate();
+        target.position(segment.used);
+        target.put(bytes.array(), 0, length);
+        long address = (long) (segments.size() - 1) << 32 | segment.used;
+        segment.used += length;
+        return address;
+    }
+
+    private Segment newSegment(int size) {
+        File path = null;
+        try {
+            path = File.createTempFile("items", ".seg", directory);
+            Segment segment = new Segment(path, size);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            if (path != null) {
+                path.delete();
+            }
+            throw new IllegalStateException("Can not create a segment file", e);
+        }
+    }
+
+    /**
+     * Reads a block of a list, or takes it from the cache.
+     */
+    private Object[] read(Items list, int block) {
+        checkOpen();
+        if (cachedList == list && cachedBlock == block) {
+            return cachedItems;
+        }
+        long address = list.addresses[block];
+        ByteBuffer source = segments.get((int) (address >>> 32)).buffer.duplicate();
+        source.position((int) address);
+        DataInputStream input = new DataInputStream(new Input(source));
+        Object[] items = new Object[list.count(block)];
+        try {
+            for (int i = 0; i < items.length; i++) {
+                items[i] = serializer.read(input);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not read an item", e);
+        }
+        cachedList = list;
+        cachedBlock = block;
+        cachedItems = items;
+        return items;
+    }
+
+    private void forget(Items list) {
+        if (cachedList == list) {
+            cachedList = null;
+            cachedItems = null;
+        }
+    }
+
+    /**
+     * A list whose items are written in blocks, but the last ones.
+     */
+    private class Items extends AbstractList<T> {
+
+        private long[] addresses = new long[4];
+        // The index of the first item of each block
+        private int[] starts = new int[4];
+        private int blocks;
+        private int spilled;
+        private final List<T> pending = new ArrayList<T>();
+
+        int count(int block) {
+            return (block + 1 < blocks ? starts[block + 1] : spilled) - starts[block];
+        }
+
+        private int blockOf(int index) {
+            int block = Arrays.binarySearch(starts, 0, blocks, index);
+            return block >= 0 ? block : -block - 2;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            if (index >= spilled) {
+                return pending.get(index - spilled);
+            }
+            int block = blockOf(index);
+            return (T) read(this, block)[index - starts[block]];
+        }
+
+        @Override
+        public int size() {
+            return spilled + pending.size();
+        }
+
+        @Override
+        public boolean add(T item) {
+            checkOpen();
+            pending.add(item);
+            if (pending.size() == blockItems) {
+                spill();
+            }
+            modCount++;
+            return true;
+        }
+
+        private void spill() {
+            if (blocks == addresses.length) {
+                addresses = Arrays.copyOf(addresses, blocks * 2);
+                starts = Arrays.copyOf(starts, blocks * 2);
+            }
+            addresses[blocks] = append(pending);
+            starts[blocks] = spilled;
+            blocks++;
+            spilled += pending.size();
+            pending.clear();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T remove(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            modCount++;
+            if (index >= spilled) {
+                return pending.remove(index - spilled);
+            }
+            int block = blockOf(index);
+            Object[] items = read(this, block);
+            forget(this);
+            int offset = index - starts[block];
+            List<T> rest = new ArrayList<T>(items.length - 1);
+            for (int i = 0; i < items.length; i++) {
+                if (i != offset) {
+                    rest.add((T) items[i]);
+                }
+            }
+            if (rest.isEmpty()) {
+                blocks--;
+                System.arraycopy(addresses, block + 1, addresses, block, blocks - block);
+                System.arraycopy(starts, block + 1, starts, block, blocks - block);
+            } else {
+                addresses[block] = append(rest);
+                block++;
+            }
+            for (int i = block; i < blocks; i++) {
+                starts[i]--;
+            }
+            spilled--;
+            return (T) items[offset];
+        }
+
+        @Override
+        public void clear() {
+            forget(this);
+            blocks = 0;
+            spilled = 0;
+            pending.clear();
+            modCount++;
+        }
+    }
+}
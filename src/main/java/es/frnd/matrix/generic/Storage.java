@@ -0,0 +1,61 @@
+package es.frnd.matrix.generic;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Accumulator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the structures where a {@link GenericMatrix} keeps its cells: the
+ * map of the rows, the map of the cells of each row, the maps of the totals
+ * of each row and of each column, which is also the index of the column
+ * keys, the cells and the lists of items.
+ *
+ * Every method is given the number of elements expected, or 0 if it is not
+ * known, to presize the structure. The maps are used as any map by the
+ * matrix, so they may be of any implementation, concurrent or not.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ * @see HashStorage
+ */
+public interface Storage<R, C, T, V> {
+
+    /**
+     * Returns a new empty map from the row keys to the cells of each row.
+     */
+    Map<R, Map<C, Matrix.Cell<T, V>>> newRows(int expectedRows);
+
+    /**
+     * Returns a new empty map from the column keys to the cells of a row.
+     */
+    Map<C, Matrix.Cell<T, V>> newRow(int expectedColumns);
+
+    /**
+     * Returns a new empty map from the column keys to their totals.
+     */
+    Map<C, Matrix.Cell<T, V>> newColumnTotals(int expectedColumns);
+
+    /**
+     * Returns a new empty map from the row keys to their totals.
+     */
+    Map<R, Matrix.Cell<T, V>> newRowTotals(int expectedRows);
+
+    /**
+     * Returns a new empty cell, for the cells and the totals. A
+     * {@link GenericMatrix.Cell} updates its value with each item when the
+     * accumulator allows it, any other cell is accumulated again.
+     *
+     * @param accumulator the accumulator of the value of the cell
+     */
+    Matrix.Cell<T, V> newCell(Accumulator<T, V> accumulator, int expectedItems);
+
+    /**
+     * Returns a new empty list for all the items of the matrix.
+     */
+    List<T> newItems(int expectedItems);
+}
@@ -0,0 +1,534 @@
+package es.frnd.matrix.hierarchy;
+
+import es.frnd.matrix.AbstractMatrix;
+import es.frnd.matrix.Matrix;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matrix whose row and column keys belong to hierarchies, such as city, region
+ * and country, keeping the cells and totals of every pair of levels.
+ *
+ * Every item is resolved once, and its row and column keys are walked up the
+ * hierarchies to the keys of each level. The value of the item is then merged
+ * into the cell of every pair of levels, into the totals of every level and
+ * into the total, so the coarser levels are rolled up from the accumulator
+ * states and never read the items. Merging another matrix rolls up the state
+ * of each of its cells the same way.
+ *
+ * The matrix itself is the finest level, the coarser ones are read-only views
+ * returned by {@link #level(int, int)}. Removing an item updates the cells
+ * where it falls if the accumulator is an {@link IncrementalAccumulator},
+ * otherwise they are accumulated again, at every level.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class HierarchicalMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Resolver<T, R> rowResolver;
+    private final Resolver<T, C> colResolver;
+    private final Hierarchy<R> rowHierarchy;
+    private final Hierarchy<C> columnHierarchy;
+    private final MergeableAccumulator<T, V> accumulator;
+    private final Levels<R, C, T, V> levels;
+    private final List<List<Matrix<R, C, T, V>>> views;
+
+    /**
+     * @param rowResolver     the resolver of the row keys
+     * @param rowHierarchy    the hierarchy of the row keys
+     * @param rowLevels       the number of levels of the rows, the finest one
+     *                        included
+     * @param colResolver     the resolver of the column keys
+     * @param columnHierarchy the hierarchy of the column keys, it may be
+     *                        {@code null} for a single level
+     * @param columnLevels    the number of levels of the columns, the finest
+     *                        one included
+     * @param accumulator     the accumulator of the cell values
+     */
+    public HierarchicalMatrix(Resolver<T, R> rowResolver, Hierarchy<R> rowHierarchy, int rowLevels,
+            Resolver<T, C> colResolver, Hierarchy<C> columnHierarchy, int columnLevels,
+            MergeableAccumulator<T, V> accumulator) {
+        this(new Levels<R, C, T, V>(check(rowHierarchy, rowLevels), check(columnHierarchy, columnLevels),
+                accumulator), rowResolver, rowHierarchy, colResolver, columnHierarchy, accumulator);
+    }
+
+    private HierarchicalMatrix(Levels<R, C, T, V> levels, Resolver<T, R> rowResolver, Hierarchy<R> rowHierarchy,
+            Resolver<T, C> colResolver, Hierarchy<C> columnHierarchy, MergeableAccumulator<T, V> accumulator) {
+        super(levels.cells.get(0).get(0), levels.items, levels.columnTotals.get(0), levels.rowTotals.get(0),
+                levels.total);
+        this.rowResolver = rowResolver;
+        this.colResolver = colResolver;
+        this.rowHierarchy = rowHierarchy;
+        this.columnHierarchy = columnHierarchy;
+        this.accumulator = accumulator;
+        this.levels = levels;
+        this.views = new ArrayList<List<Matrix<R, C, T, V>>>(levels.rowTotals.size());
+        for (int i = 0; i < levels.rowTotals.size(); i++) {
+            List<Matrix<R, C, T, V>> row = new ArrayList<Matrix<R, C, T, V>>(levels.columnTotals.size());
+            for (int j = 0; j < levels.columnTotals.size(); j++) {
+                row.add(i == 0 && j == 0 ? this : new Level(i, j));
+            }
+            views.add(row);
+        }
+    }
+
+    private static int check(Hierarchy<?> hierarchy, int levels) {
+        if (levels < 1 || levels > 1 && hierarchy == null) {
+            throw new IllegalArgumentException("Wrong number of levels: " + levels);
+        }
+        return levels;
+    }
+
+    /**
+     * The cells and totals of every pair of levels.
+     */
+    private static class Levels<R, C, T, V> {
+
+        /** The rows of the cells, by row level and column level. */
+        private final List<List<Map<R, Map<C, Matrix.Cell<T, V>>>>> cells;
+        /** The totals of the rows, by row level. */
+        private final List<Map<R, Matrix.Cell<T, V>>> rowTotals;
+        /** The totals of the columns, by column level. */
+        private final List<Map<C, Matrix.Cell<T, V>>> columnTotals;
+        private final List<T> items = new ArrayList<T>();
+        private final Cell<T, V> total;
+
+        Levels(int rowLevels, int columnLevels, MergeableAccumulator<T, V> accumulator) {
+            cells = new ArrayList<List<Map<R, Map<C, Matrix.Cell<T, V>>>>>(rowLevels);
+            rowTotals = new ArrayList<Map<R, Matrix.Cell<T, V>>>(rowLevels);
+            columnTotals = new ArrayList<Map<C, Matrix.Cell<T, V>>>(columnLevels);
+            for (int i = 0; i < rowLevels; i++) {
+                List<Map<R, Map<C, Matrix.Cell<T, V>>>> row = new ArrayList<Map<R, Map<C, Matrix.Cell<T, V>>>>(
+                        columnLevels);
+                for (int j = 0; j < columnLevels; j++) {
+                    row.add(new LinkedHashMap<R, Map<C, Matrix.Cell<T, V>>>());
+                }
+                cells.add(row);
+                rowTotals.add(new LinkedHashMap<R, Matrix.Cell<T, V>>());
+            }
+            for (int j = 0; j < columnLevels; j++) {
+                columnTotals.add(new LinkedHashMap<C, Matrix.Cell<T, V>>());
+            }
+            total = new Cell<T, V>(accumulator);
+        }
+    }
+
+    /**
+     * Cell of a hierarchical matrix.
+     */
+    private static class Cell<T, V> implements Matrix.Cell<T, V> {
+
+        private final MergeableAccumulator<T, V> accumulator;
+        private final List<T> items = new ArrayList<T>();
+        private V value;
+
+        Cell(MergeableAccumulator<T, V> accumulator) {
+            this.accumulator = accumulator;
+        }
+
+        /**
+         * Adds an item, updating the value with it.
+         */
+        void add(T item, IncrementalAccumulator<T, V> incremental) {
+            items.add(item);
+            value = incremental.add(value, item);
+        }
+
+        /**
+         * Adds a group of items, given the value of the group.
+         */
+        void merge(Collection<T> items, V value) {
+            this.items.addAll(items);
+            this.value = accumulator.merge(this.value, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean remove(T item) {
+            if (!items.remove(item)) {
+                return false;
+            }
+            V updated = null;
+            if (accumulator instanceof IncrementalAccumulator) {
+                updated = ((IncrementalAccumulator<T, V>) accumulator).remove(value, item);
+            }
+            if (updated != null) {
+                value = updated;
+            } else {
+                accumulate();
+            }
+            return true;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public List<T> getItems() {
+            return Collections.unmodifiableList(items);
+        }
+
+        public void accumulate() {
+            value = items.isEmpty() ? null : accumulator.accumulate(items);
+        }
+
+        public void clear() {
+            items.clear();
+            value = null;
+        }
+    }
+
+    /**
+     * Returns the number of levels of the rows.
+     */
+    public int rowLevels() {
+        return levels.rowTotals.size();
+    }
+
+    /**
+     * Returns the number of levels of the columns.
+     */
+    public int columnLevels() {
+        return levels.columnTotals.size();
+    }
+
+    /**
+     * Returns the matrix of a pair of levels. Level 0 is the finest one, the
+     * one of the resolved keys, and {@code level(0, 0)} is this matrix; the
+     * other ones are read-only and change with it.
+     *
+     * @param rowLevel    the level of the rows
+     * @param columnLevel the level of the columns
+     * @throws IndexOutOfBoundsException if any level is out of the hierarchies
+     */
+    public Matrix<R, C, T, V> level(int rowLevel, int columnLevel) {
+        return views.get(rowLevel).get(columnLevel);
+    }
+
+    /**
+     * Returns the key of every level, from the finest one up. Keys at the top
+     * of the hierarchy stand for themselves at the upper levels.
+     */
+    private static <K> List<K> ancestors(Hierarchy<K> hierarchy, int levels, K key) {
+        List<K> ancestors = new ArrayList<K>(levels);
+        ancestors.add(key);
+        for (int i = 1; i < levels; i++) {
+            K parent = hierarchy.parent(key);
+            if (parent != null) {
+                key = parent;
+            }
+            ancestors.add(key);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Returns the cells and totals of every level where the items of a cell
+     * of the finest level fall, creating them, that cell first.
+     */
+    private List<Cell<T, V>> rollUp(R rowKey, C columnKey) {
+        List<R> rowKeys = ancestors(rowHierarchy, rowLevels(), rowKey);
+        List<C> columnKeys = ancestors(columnHierarchy, columnLevels(), columnKey);
+        List<Cell<T, V>> cells = new ArrayList<Cell<T, V>>((rowKeys.size() + 1) * (columnKeys.size() + 1));
+        for (int i = 0; i < rowKeys.size(); i++) {
+            for (int j = 0; j < columnKeys.size(); j++) {
+                cells.add(cell(levels.cells.get(i).get(j), rowKeys.get(i), columnKeys.get(j)));
+            }
+            cells.add(cell(levels.rowTotals.get(i), rowKeys.get(i)));
+        }
+        for (int j = 0; j < columnKeys.size(); j++) {
+            cells.add(cell(levels.columnTotals.get(j), columnKeys.get(j)));
+        }
+        cells.add(levels.total);
+        return cells;
+    }
+
+    /**
+     * Merges a group of items falling in the same cell of the finest level
+     * into the cells and totals of every level.
+     *
+     * @return the cell of the finest level
+     */
+    private Cell<T, V> rollUp(R rowKey, C columnKey, Collection<T> items, V value) {
+        List<Cell<T, V>> cells = rollUp(rowKey, columnKey);
+        for (Cell<T, V> cell : cells) {
+            cell.merge(items, value);
+        }
+        levels.items.addAll(items);
+        return cells.get(0);
+    }
+
+    private Cell<T, V> cell(Map<R, Map<C, Matrix.Cell<T, V>>> rows, R rowKey, C columnKey) {
+        Map<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+        if (row == null) {
+            row = createBackingMap();
+            rows.put(rowKey, row);
+        }
+        return cell(row, columnKey);
+    }
+
+    private <K> Cell<T, V> cell(Map<K, Matrix.Cell<T, V>> cells, K key) {
+        Cell<T, V> cell = (Cell<T, V>) cells.get(key);
+        if (cell == null) {
+            cell = createCell();
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    /**
+     * Adds an item to the cells and totals of every level, updating their
+     * values with it if the accumulator allows it, otherwise merging the value
+     * of the item.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Matrix.Cell<T, V> put(T item) {
+        R rowKey = rowResolver.resolve(item);
+        C columnKey = colResolver.resolve(item);
+        if (!(accumulator instanceof IncrementalAccumulator)) {
+            return rollUp(rowKey, columnKey, Collections.singletonList(item),
+                    accumulator.accumulate(Collections.singletonList(item)));
+        }
+        List<Cell<T, V>> cells = rollUp(rowKey, columnKey);
+        for (Cell<T, V> cell : cells) {
+            cell.add(item, (IncrementalAccumulator<T, V>) accumulator);
+        }
+        levels.items.add(item);
+        return cells.get(0);
+    }
+
+    /**
+     * Merges the cells of another matrix, rolling up the value of each one
+     * without reading its items.
+     */
+    @Override
+    public void merge(Matrix<R, C, T, V> other) {
+        if (other == this) {
+            throw new IllegalArgumentException("A matrix can not be merged into itself");
+        }
+        for (Map.Entry<R, Map<C, Matrix.Cell<T, V>>> row : other.rowMap().entrySet()) {
+            for (Map.Entry<C, Matrix.Cell<T, V>> cell : row.getValue().entrySet()) {
+                if (cell.getValue() != null && !cell.getValue().getItems().isEmpty()) {
+                    rollUp(row.getKey(), cell.getKey(), cell.getValue().getItems(), cell.getValue().getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an item. Cells left without items are dropped.
+     */
+    @Override
+    public void remove(T item) {
+        if (!levels.items.remove(item)) {
+            return;
+        }
+        List<R> rowKeys = ancestors(rowHierarchy, rowLevels(), rowResolver.resolve(item));
+        List<C> columnKeys = ancestors(columnHierarchy, columnLevels(), colResolver.resolve(item));
+        for (int i = 0; i < rowKeys.size(); i++) {
+            remove(levels.rowTotals.get(i), rowKeys.get(i), item);
+            for (int j = 0; j < columnKeys.size(); j++) {
+                Map<C, Matrix.Cell<T, V>> row = levels.cells.get(i).get(j).get(rowKeys.get(i));
+                if (row != null) {
+                    remove(row, columnKeys.get(j), item);
+                    if (row.isEmpty()) {
+                        levels.cells.get(i).get(j).remove(rowKeys.get(i));
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < columnKeys.size(); j++) {
+            remove(levels.columnTotals.get(j), columnKeys.get(j), item);
+        }
+        levels.total.remove(item);
+    }
+
+    private <K> void remove(Map<K, Matrix.Cell<T, V>> cells, K key, T item) {
+        Cell<T, V> cell = (Cell<T, V>) cells.get(key);
+        if (cell != null && cell.remove(item) && cell.getItems().isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (List<Map<R, Map<C, Matrix.Cell<T, V>>>> row : levels.cells) {
+            for (Map<R, Map<C, Matrix.Cell<T, V>>> cells : row) {
+                cells.clear();
+            }
+        }
+        for (Map<R, Matrix.Cell<T, V>> totals : levels.rowTotals) {
+            totals.clear();
+        }
+        for (Map<C, Matrix.Cell<T, V>> totals : levels.columnTotals) {
+            totals.clear();
+        }
+        levels.items.clear();
+        levels.total.clear();
+    }
+
+    @Override
+    public Set<C> columnKeySet() {
+        return Collections.unmodifiableSet(levels.columnTotals.get(0).keySet());
+    }
+
+    @Override
+    protected Resolver<T, R> getRowResolver() {
+        return rowResolver;
+    }
+
+    @Override
+    protected Resolver<T, C> getColResolver() {
+        return colResolver;
+    }
+
+    @Override
+    protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+        return new HashMap<C, Matrix.Cell<T, V>>();
+    }
+
+    @Override
+    protected Cell<T, V> createCell() {
+        return new Cell<T, V>(accumulator);
+    }
+
+    @Override
+    protected Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+        Cell<T, V> result = createCell();
+        for (Matrix.Cell<T, V> cell : cells) {
+            result.merge(cell.getItems(), cell.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    protected Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * Read-only matrix of a pair of levels, other than the finest one.
+     */
+    private class Level extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+        private final int columnLevel;
+
+        Level(int rowLevel, int columnLevel) {
+            super(levels.cells.get(rowLevel).get(columnLevel), levels.items, levels.columnTotals.get(columnLevel),
+                    levels.rowTotals.get(rowLevel), levels.total);
+            this.columnLevel = columnLevel;
+        }
+
+        @Override
+        public Set<C> columnKeySet() {
+            return Collections.unmodifiableSet(levels.columnTotals.get(columnLevel).keySet());
+        }
+
+        @Override
+        protected Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+            return HierarchicalMatrix.this.aggregate(cells);
+        }
+
+        @Override
+        protected Accumulator<T, V> getAccumulator() {
+            return accumulator;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        protected Resolver<T, R> getRowResolver() {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix does not resolve items");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        protected Resolver<T, C> getColResolver() {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix does not resolve items");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        protected Matrix.Cell<T, V> createCell() {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public Matrix.Cell<T, V> put(T value) {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public void putAll(Collection<T> values) {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public void merge(Matrix<R, C, T, V> other) {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public void remove(T value) {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public void removeAll(Collection<T> values) {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("A level of a hierarchical matrix is read-only");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HierarchicalMatrix [rowLevels=" + rowLevels() + ", columnLevels=" + columnLevels() + ", size="
+                + levels.items.size() + "]";
+    }
+}
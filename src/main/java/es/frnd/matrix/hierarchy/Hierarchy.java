@@ -0,0 +1,20 @@
+package es.frnd.matrix.hierarchy;
+
+/**
+ * Hierarchy of the keys of an axis, such as city, region and country.
+ *
+ * @param <K> the type of the keys
+ * @author Fernando Gonzalez
+ */
+public interface Hierarchy<K> {
+
+    /**
+     * Returns the key one level up, or {@code null} if the key is at the top
+     * of the hierarchy. Keys at the top stand for themselves at the upper
+     * levels.
+     *
+     * @param key the key
+     * @return the parent key
+     */
+    K parent(K key);
+}
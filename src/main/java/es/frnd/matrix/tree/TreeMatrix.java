@@ -0,0 +1,359 @@
+package es.frnd.matrix.tree;
+
+import es.frnd.matrix.AbstractMatrix;
+import es.frnd.matrix.Matrix;
+import es.frnd.tree.Node;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only matrix projecting two levels of a {@link es.frnd.tree.Tree}.
+ *
+ * The rows are the keys of the nodes at one level of the tree and the columns
+ * the keys of the nodes at another level. The items of a cell are the elements
+ * of the nodes with that pair of keys, taken from the tree as views: no
+ * resolver is called and no item is copied. Cell values are accumulated the
+ * first time they are requested.
+ *
+ * @param <R>
+ *            the type of the keys of the row level
+ * @param <C>
+ *            the type of the keys of the column level
+ * @param <T>
+ *            the type of the elements of the tree
+ * @param <V>
+ *            the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class TreeMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Accumulator<T, V> accumulator;
+
+    /**
+     * Creates the projection of the tree.
+     *
+     * @param tree        the tree, or any node of it
+     * @param rowLevel    the level of the nodes giving the row keys, 1 is the
+     *                    level of the children of {@code tree}
+     * @param columnLevel the level of the nodes giving the column keys
+     * @param accumulator the accumulator of the cell values
+     */
+    public TreeMatrix(Node<T> tree, int rowLevel, int columnLevel, Accumulator<T, V> accumulator) {
+        this(new Projection<R, C, T, V>(tree, rowLevel, columnLevel, accumulator));
+    }
+
+    private TreeMatrix(Projection<R, C, T, V> projection) {
+        super(projection.rows, projection.items, projection.columnTotals, projection.rowTotals, projection.total);
+        this.accumulator = projection.accumulator;
+    }
+
+    /**
+     * Walks the tree filling the maps of the matrix.
+     */
+    private static class Projection<R, C, T, V> {
+
+        private final Map<R, Map<C, Matrix.Cell<T, V>>> rows = new LinkedHashMap<R, Map<C, Matrix.Cell<T, V>>>();
+        private final Map<C, Matrix.Cell<T, V>> columnTotals = new LinkedHashMap<C, Matrix.Cell<T, V>>();
+        private final Map<R, Matrix.Cell<T, V>> rowTotals = new LinkedHashMap<R, Matrix.Cell<T, V>>();
+        private final List<T> items;
+        private final Cell<T, V> total;
+        private final Accumulator<T, V> accumulator;
+
+        @SuppressWarnings("unchecked")
+        Projection(Node<T> tree, int rowLevel, int columnLevel, Accumulator<T, V> accumulator) {
+            if (rowLevel < 1 || columnLevel < 1 || rowLevel == columnLevel) {
+                throw new IllegalArgumentException("Row and column levels must be distinct and greater than 0: "
+                        + rowLevel + ", " + columnLevel);
+            }
+            this.accumulator = accumulator;
+            this.items = tree.getElements();
+            this.total = new Cell<T, V>(accumulator);
+            this.total.add(items);
+
+            List<Node<T>> ancestors = new ArrayList<Node<T>>();
+            collect(tree, Math.min(rowLevel, columnLevel), ancestors);
+            List<Node<T>> descendants = new ArrayList<Node<T>>();
+            for (Node<T> ancestor : ancestors) {
+                descendants.clear();
+                collect(ancestor, Math.abs(rowLevel - columnLevel), descendants);
+                if (descendants.isEmpty()) {
+                    continue;
+                }
+                // The total of the ancestor key takes its elements as one range
+                if (rowLevel < columnLevel) {
+                    cell(rowTotals, (R) ancestor.getData()).add(ancestor.getElements());
+                } else {
+                    cell(columnTotals, (C) ancestor.getData()).add(ancestor.getElements());
+                }
+                for (Node<T> descendant : descendants) {
+                    if (rowLevel < columnLevel) {
+                        add((R) ancestor.getData(), (C) descendant.getData(), descendant.getElements());
+                        cell(columnTotals, (C) descendant.getData()).add(descendant.getElements());
+                    } else {
+                        add((R) descendant.getData(), (C) ancestor.getData(), descendant.getElements());
+                        cell(rowTotals, (R) descendant.getData()).add(descendant.getElements());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds to the result the grouping nodes found {@code depth} levels
+         * below the node.
+         */
+        private void collect(Node<T> node, int depth, List<Node<T>> result) {
+            if (depth == 0) {
+                result.add(node);
+                return;
+            }
+            if (!node.hasKeyedChildren()) {
+                // The children are the elements, there are no more levels
+                return;
+            }
+            for (Node<T> child : node.getChildren()) {
+                collect(child, depth - 1, result);
+            }
+        }
+
+        /**
+         * Adds the elements of a node to their cell. The totals are added by
+         * the caller.
+         */
+        private void add(R row, C column, List<T> elements) {
+            Map<C, Matrix.Cell<T, V>> cells = rows.get(row);
+            if (cells == null) {
+                cells = new LinkedHashMap<C, Matrix.Cell<T, V>>();
+                rows.put(row, cells);
+            }
+            cell(cells, column).add(elements);
+        }
+
+        private <K> Cell<T, V> cell(Map<K, Matrix.Cell<T, V>> cells, K key) {
+            Cell<T, V> cell = (Cell<T, V>) cells.get(key);
+            if (cell == null) {
+                cell = new Cell<T, V>(accumulator);
+                cells.put(key, cell);
+            }
+            return cell;
+        }
+    }
+
+    /**
+     * Cell made of the element ranges of one or more tree nodes.
+     */
+    static class Cell<T, V> implements Matrix.Cell<T, V> {
+
+        private final Accumulator<T, V> accumulator;
+        private final Ranges<T> items = new Ranges<T>();
+        private V value;
+        private boolean accumulated;
+
+        Cell(Accumulator<T, V> accumulator) {
+            this.accumulator = accumulator;
+        }
+
+        void add(List<T> range) {
+            items.add(range);
+            accumulated = false;
+        }
+
+        public V getValue() {
+            if (!accumulated) {
+                accumulate();
+            }
+            return value;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        public void accumulate() {
+            value = accumulator.accumulate(items);
+            accumulated = true;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void clear() {
+            throw new UnsupportedOperationException("A tree projection is read-only");
+        }
+    }
+
+    /**
+     * Read-only concatenation of element ranges. An element is found by a
+     * binary search on the offsets of the ranges, and the iterator walks the
+     * ranges one after the other.
+     */
+    static class Ranges<T> extends AbstractList<T> {
+
+        private final List<List<T>> ranges = new ArrayList<List<T>>(1);
+        // The index of the first element of each range
+        private int[] starts = new int[1];
+        private int size;
+
+        void add(List<T> range) {
+            if (range.isEmpty()) {
+                return;
+            }
+            if (ranges.size() == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[ranges.size()] = size;
+            ranges.add(range);
+            size += range.size();
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int range = Arrays.binarySearch(starts, 0, ranges.size(), index);
+            if (range < 0) {
+                range = -range - 2;
+            }
+            return ranges.get(range).get(index - starts[range]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+
+                private int range;
+                private Iterator<T> current = Collections.<T>emptyList().iterator();
+
+                public boolean hasNext() {
+                    while (!current.hasNext() && range < ranges.size()) {
+                        current = ranges.get(range++).iterator();
+                    }
+                    return current.hasNext();
+                }
+
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("A tree projection is read-only");
+                }
+            };
+        }
+    }
+
+    /**
+     * Concatenates the element ranges of the cells, the value is accumulated
+     * when requested.
+     */
+    @Override
+    protected Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+        Cell<T, V> result = new Cell<T, V>(accumulator);
+        for (Matrix.Cell<T, V> cell : cells) {
+            result.add(cell.getItems());
+        }
+        return result;
+    }
+
+    @Override
+    protected Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Resolver<T, R> getRowResolver() {
+        throw new UnsupportedOperationException("A tree projection does not resolve items");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Resolver<T, C> getColResolver() {
+        throw new UnsupportedOperationException("A tree projection does not resolve items");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    protected Matrix.Cell<T, V> createCell() {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public Matrix.Cell<T, V> put(T value) {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void putAll(Collection<T> values) {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void merge(Matrix<R, C, T, V> other) {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void remove(T value) {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void removeAll(Collection<T> values) {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+
+    /**
+     * This operation is not available.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("A tree projection is read-only");
+    }
+}
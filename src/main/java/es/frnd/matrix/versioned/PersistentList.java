@@ -0,0 +1,232 @@
+package es.frnd.matrix.versioned;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list whose updates return a new list sharing all but the path to
+ * the changed item, a trie of 32 branches per level with the last items kept
+ * apart in a tail.
+ *
+ * Like {@link PersistentMap} every update takes an owner, and the nodes
+ * created for an owner are updated in place by its later updates.
+ *
+ * @param <T> the type of the items
+ * @author Fernando Gonzalez
+ */
+final class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentList EMPTY = new PersistentList<Object>(0, BITS, new Node(null), new Node(null));
+
+    private final int size;
+    private final int shift;
+    private final Node root;
+    private final Node tail;
+
+    private PersistentList(int size, int shift, Node root, Node tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentList<T> empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (T) leaf(index).slots[index & MASK];
+    }
+
+    /**
+     * Returns a list with the item added at the end.
+     */
+    PersistentList<T> plus(T item, Object owner) {
+        if (size - tailOffset() < WIDTH) {
+            Node edited = tail.edit(owner);
+            edited.slots[size - tailOffset()] = item;
+            return new PersistentList<T>(size + 1, shift, root, edited);
+        }
+        Node newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            newRoot = new Node(owner);
+            newRoot.slots[0] = root;
+            newRoot.slots[1] = path(owner, shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(owner, shift, root, tail);
+        }
+        Node newTail = new Node(owner);
+        newTail.slots[0] = item;
+        return new PersistentList<T>(size + 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * Returns a list with the item at the given position replaced.
+     */
+    PersistentList<T> set(int index, T item, Object owner) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index >= tailOffset()) {
+            Node edited = tail.edit(owner);
+            edited.slots[index & MASK] = item;
+            return new PersistentList<T>(size, shift, root, edited);
+        }
+        return new PersistentList<T>(size, shift, set(owner, shift, root, index, item), tail);
+    }
+
+    /**
+     * Returns a list without its last item.
+     */
+    PersistentList<T> pop(Object owner) {
+        if (size == 0) {
+            throw new IllegalStateException("The list is empty");
+        }
+        if (size == 1) {
+            return empty();
+        }
+        if (size - tailOffset() > 1) {
+            Node edited = tail.edit(owner);
+            edited.slots[size - 1 - tailOffset()] = null;
+            return new PersistentList<T>(size - 1, shift, root, edited);
+        }
+        Node newTail = leaf(size - 2);
+        Node newRoot = popTail(owner, shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = new Node(owner);
+        }
+        if (shift > BITS && newRoot.slots[1] == null) {
+            newRoot = (Node) newRoot.slots[0];
+            newShift -= BITS;
+        }
+        return new PersistentList<T>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * Returns a list without the first occurrence of the item, replaced by the
+     * last item of the list, so the order of the items is not kept.
+     */
+    PersistentList<T> minus(T item, Object owner) {
+        int index = indexOf(item);
+        if (index < 0) {
+            return this;
+        }
+        if (index < size - 1) {
+            return set(index, get(size - 1), owner).pop(owner);
+        }
+        return pop(owner);
+    }
+
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * Returns the node with the item at the given position.
+     */
+    private Node leaf(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Node pushTail(Object owner, int level, Node parent, Node leaf) {
+        int index = ((size - 1) >>> level) & MASK;
+        Node edited = parent.edit(owner);
+        if (level == BITS) {
+            edited.slots[index] = leaf;
+        } else {
+            Node child = (Node) parent.slots[index];
+            edited.slots[index] = child != null ? pushTail(owner, level - BITS, child, leaf) : path(owner, level
+                    - BITS, leaf);
+        }
+        return edited;
+    }
+
+    private Node popTail(Object owner, int level, Node node) {
+        int index = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Node child = popTail(owner, level - BITS, (Node) node.slots[index]);
+            if (child == null && index == 0) {
+                return null;
+            }
+            Node edited = node.edit(owner);
+            edited.slots[index] = child;
+            return edited;
+        } else if (index == 0) {
+            return null;
+        }
+        Node edited = node.edit(owner);
+        edited.slots[index] = null;
+        return edited;
+    }
+
+    private static Node set(Object owner, int level, Node node, int index, Object item) {
+        Node edited = node.edit(owner);
+        if (level == 0) {
+            edited.slots[index & MASK] = item;
+        } else {
+            int child = (index >>> level) & MASK;
+            edited.slots[child] = set(owner, level - BITS, (Node) node.slots[child], index, item);
+        }
+        return edited;
+    }
+
+    private static Node path(Object owner, int level, Node leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Node node = new Node(owner);
+        node.slots[0] = path(owner, level - BITS, leaf);
+        return node;
+    }
+
+    /**
+     * Node of the trie, with the items or the nodes of the next level.
+     */
+    private static final class Node {
+
+        private final Object owner;
+        private final Object[] slots;
+
+        Node(Object owner) {
+            this(owner, new Object[WIDTH]);
+        }
+
+        private Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns this node when it belongs to the owner, or a copy.
+         */
+        Node edit(Object owner) {
+            return this.owner == owner ? this : new Node(owner, slots.clone());
+        }
+    }
+}
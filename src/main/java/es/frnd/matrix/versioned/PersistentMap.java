@@ -0,0 +1,373 @@
+package es.frnd.matrix.versioned;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map whose updates return a new map sharing all but the path
+ * to the changed entry, a hash array mapped trie of 32 branches per level.
+ *
+ * Every update takes an owner: the nodes created for an owner are updated in
+ * place by the later updates of the same owner, so a batch of updates only
+ * copies each node once. The maps returned to an owner must not be shared
+ * until it stops updating them.
+ *
+ * @param <K> the type of the keys, {@code null} allowed
+ * @param <V> the type of the values
+ * @author Fernando Gonzalez
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<Object, Object>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return leaf(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf<K, V> leaf = leaf(key);
+        return leaf != null ? leaf.value : null;
+    }
+
+    /**
+     * Returns a map with the given entry added or replaced.
+     */
+    PersistentMap<K, V> plus(K key, V value, Object owner) {
+        int[] added = new int[1];
+        Node node = plus(root, 0, hash(key), key, value, owner, added);
+        return node == root && added[0] == 0 ? this : new PersistentMap<K, V>(node, size + added[0]);
+    }
+
+    /**
+     * Returns a map without the entry of the given key.
+     */
+    PersistentMap<K, V> minus(K key, Object owner) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentMap<K, V>(minus(root, 0, hash(key), key, owner), size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<K, V>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Leaf<K, V> leaf(Object key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[index(node.bitmap, bit)];
+            if (!(slot instanceof Node)) {
+                for (Leaf<K, V> leaf = (Leaf<K, V>) slot; leaf != null; leaf = leaf.next) {
+                    if (leaf.hash == hash && equal(leaf.key, key)) {
+                        return leaf;
+                    }
+                }
+                return null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node plus(Node node, int shift, int hash, K key, V value, Object owner, int[] added) {
+        int bit = bit(hash, shift);
+        if (node == null) {
+            added[0] = 1;
+            return new Node(owner, bit, new Object[] { new Leaf<K, V>(hash, key, value, null) });
+        }
+        int index = index(node.bitmap, bit);
+        if ((node.bitmap & bit) == 0) {
+            added[0] = 1;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = new Leaf<K, V>(hash, key, value, null);
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return node.edit(owner, node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = plus((Node) slot, shift + BITS, hash, key, value, owner, added);
+        } else {
+            Leaf<K, V> leaf = (Leaf<K, V>) slot;
+            if (leaf.hash != hash) {
+                added[0] = 1;
+                replacement = split(owner, shift + BITS, leaf, new Leaf<K, V>(hash, key, value, null));
+            } else {
+                replacement = leaf.plus(key, value, added);
+            }
+        }
+        if (replacement == slot) {
+            return node;
+        }
+        Node edited = node.edit(owner, node.bitmap, node.owner == owner ? node.slots : node.slots.clone());
+        edited.slots[index] = replacement;
+        return edited;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node minus(Node node, int shift, int hash, K key, Object owner) {
+        int bit = bit(hash, shift);
+        int index = index(node.bitmap, bit);
+        Object slot = node.slots[index];
+        Object replacement = slot instanceof Node ? minus((Node) slot, shift + BITS, hash, key, owner)
+                : ((Leaf<K, V>) slot).minus(key);
+        if (replacement == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+            return node.edit(owner, node.bitmap & ~bit, slots);
+        }
+        Node edited = node.edit(owner, node.bitmap, node.owner == owner ? node.slots : node.slots.clone());
+        edited.slots[index] = replacement;
+        return edited;
+    }
+
+    /**
+     * Returns the node with two leaves of different hashes.
+     */
+    private Node split(Object owner, int shift, Leaf<K, V> leaf1, Leaf<K, V> leaf2) {
+        int bit1 = bit(leaf1.hash, shift);
+        int bit2 = bit(leaf2.hash, shift);
+        if (bit1 == bit2) {
+            return new Node(owner, bit1, new Object[] { split(owner, shift + BITS, leaf1, leaf2) });
+        }
+        boolean ordered = ((leaf1.hash >>> shift) & MASK) < ((leaf2.hash >>> shift) & MASK);
+        return new Node(owner, bit1 | bit2, ordered ? new Object[] { leaf1, leaf2 } : new Object[] { leaf2, leaf1 });
+    }
+
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    private static boolean equal(Object key1, Object key2) {
+        return key1 == null ? key2 == null : key1.equals(key2);
+    }
+
+    /**
+     * Node of the trie. Its slots are leaves or nodes of the next level, in
+     * the order of the bits set in the bitmap.
+     */
+    private static final class Node {
+
+        private final Object owner;
+        private int bitmap;
+        private Object[] slots;
+
+        Node(Object owner, int bitmap, Object[] slots) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns this node with the given slots when it belongs to the owner,
+         * or a new one.
+         */
+        Node edit(Object owner, int bitmap, Object[] slots) {
+            if (this.owner != owner) {
+                return new Node(owner, bitmap, slots);
+            }
+            this.bitmap = bitmap;
+            this.slots = slots;
+            return this;
+        }
+    }
+
+    /**
+     * Immutable entry, chained to the entries with the same hash.
+     */
+    private static final class Leaf<K, V> implements Map.Entry<K, V> {
+
+        private final int hash;
+        private final K key;
+        private final V value;
+        private final Leaf<K, V> next;
+
+        Leaf(int hash, K key, V value, Leaf<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        Leaf<K, V> plus(K key, V value, int[] added) {
+            if (equal(this.key, key)) {
+                return this.value == value ? this : new Leaf<K, V>(hash, key, value, next);
+            }
+            if (next == null) {
+                added[0] = 1;
+                return new Leaf<K, V>(hash, this.key, this.value, new Leaf<K, V>(hash, key, value, null));
+            }
+            Leaf<K, V> chained = next.plus(key, value, added);
+            return chained == next ? this : new Leaf<K, V>(hash, this.key, this.value, chained);
+        }
+
+        Leaf<K, V> minus(Object key) {
+            if (equal(this.key, key)) {
+                return next;
+            }
+            return new Leaf<K, V>(hash, this.key, this.value, next.minus(key));
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("A persistent map can not be modified");
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+            return equal(key, entry.getKey()) && equal(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, keeping the path in arrays: 32 bits of hash
+     * give at most 7 levels.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Object[][] path = new Object[7][];
+        private final int[] indexes = new int[7];
+        private int depth = -1;
+        private Leaf<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                depth = 0;
+                path[0] = root.slots;
+            }
+            advance();
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<K, V> leaf = next;
+            if (next.next != null) {
+                next = next.next;
+            } else {
+                advance();
+            }
+            return leaf;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException("A persistent map can not be modified");
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (indexes[depth] == path[depth].length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = path[depth][indexes[depth]++];
+                if (slot instanceof Node) {
+                    depth++;
+                    path[depth] = ((Node) slot).slots;
+                    indexes[depth] = 0;
+                } else {
+                    next = (Leaf<K, V>) slot;
+                    return;
+                }
+            }
+        }
+    }
+}
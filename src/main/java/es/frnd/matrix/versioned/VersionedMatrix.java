@@ -0,0 +1,570 @@
+package es.frnd.matrix.versioned;
+
+import es.frnd.matrix.Matrices;
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Selection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matrix that can be read while it is being modified.
+ *
+ * The state of the matrix is an immutable {@link #snapshot() version}.
+ * Its rows, totals and item lists are {@link PersistentMap persistent maps}
+ * and {@link PersistentList lists}: writers build the next version copying
+ * only the paths to the entries and items they modify and sharing the rest
+ * with the previous version, then publish it with a single volatile write. Readers never lock and are never blocked by
+ * writers: each read sees a complete version, and a snapshot gives a
+ * consistent point-in-time view for several reads. Writers are serialized
+ * among them.
+ *
+ * A batch operation such as {@link #putAll(Collection)} publishes a single
+ * version. The items of the matrix are returned grouped by row and column,
+ * not in insertion order, and removing an item may change the order of the
+ * items of its cells.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class VersionedMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Resolver<T, R> rowResolver;
+    private final Resolver<T, C> colResolver;
+    private final Accumulator<T, V> accumulator;
+
+    private volatile Version version;
+
+    public VersionedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver,
+                           Accumulator<T, V> accumulator) {
+        this.rowResolver = rowResolver;
+        this.colResolver = colResolver;
+        this.accumulator = accumulator;
+        this.version = new Version(0, PersistentMap.<R, PersistentMap<C, Matrix.Cell<T, V>>>empty(),
+                PersistentMap.<R, Matrix.Cell<T, V>>empty(), PersistentMap.<C, Matrix.Cell<T, V>>empty(), 0);
+    }
+
+    /**
+     * Returns the current version of the matrix. It is immutable and does not
+     * change when the matrix is modified.
+     *
+     * @return the current version
+     */
+    public Version snapshot() {
+        return version;
+    }
+
+    /**
+     * Cell of a version. It is modified only by its owner, before it is
+     * published.
+     */
+    static class Cell<T, V> implements Matrix.Cell<T, V> {
+
+        private final Object owner;
+        private PersistentList<T> items;
+        private V value;
+
+        Cell(Object owner) {
+            this.owner = owner;
+            items = PersistentList.empty();
+        }
+
+        /**
+         * Copies a cell for a new owner, with the value copied if it is
+         * updated in place.
+         */
+        Cell(Cell<T, V> cell, Object owner, V value) {
+            this.owner = owner;
+            items = cell.items;
+            this.value = value;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void accumulate() {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void clear() {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+    }
+
+    /**
+     * An immutable state of the matrix.
+     */
+    public class Version implements Matrix<R, C, T, V> {
+
+        private final long number;
+        private final PersistentMap<R, PersistentMap<C, Matrix.Cell<T, V>>> rows;
+        private final PersistentMap<R, Matrix.Cell<T, V>> rowTotals;
+        private final PersistentMap<C, Matrix.Cell<T, V>> columnTotals;
+        private final int size;
+
+        Version(long number, PersistentMap<R, PersistentMap<C, Matrix.Cell<T, V>>> rows,
+                PersistentMap<R, Matrix.Cell<T, V>> rowTotals, PersistentMap<C, Matrix.Cell<T, V>> columnTotals,
+                int size) {
+            this.number = number;
+            this.rows = rows;
+            this.rowTotals = rowTotals;
+            this.columnTotals = columnTotals;
+            this.size = size;
+        }
+
+        /**
+         * Returns the number of this version, increased by every modification.
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        public boolean contains(T item) {
+            if (item == null) {
+                return true;
+            }
+            Map<C, Matrix.Cell<T, V>> row = rows.get(rowResolver.resolve(item));
+            Matrix.Cell<T, V> cell = row != null ? row.get(colResolver.resolve(item)) : null;
+            return cell != null && cell.getItems().contains(item);
+        }
+
+        public boolean contains(R rowKey, C columnKey) {
+            Map<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+            return row != null && row.containsKey(columnKey);
+        }
+
+        public boolean containsRow(R rowKey) {
+            return rows.containsKey(rowKey);
+        }
+
+        public boolean containsColumn(C columnKey) {
+            return columnTotals.containsKey(columnKey);
+        }
+
+        public Matrix.Cell<T, V> get(R rowKey, C columnKey) {
+            Map<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+            Matrix.Cell<T, V> cell = row != null ? row.get(columnKey) : null;
+            return cell != null ? cell : new VersionedMatrix.Cell<T, V>(null);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public Map<C, Matrix.Cell<T, V>> row(R rowKey) {
+            Map<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+            return row != null ? row : Collections.<C, Matrix.Cell<T, V>>emptyMap();
+        }
+
+        public Matrix.Cell<T, V> totalRow(R rowKey) {
+            return rowTotals.get(rowKey);
+        }
+
+        public Map<R, Matrix.Cell<T, V>> column(C columnKey) {
+            Map<R, Matrix.Cell<T, V>> column = new LinkedHashMap<R, Matrix.Cell<T, V>>();
+            for (Map.Entry<R, PersistentMap<C, Matrix.Cell<T, V>>> row : rows.entrySet()) {
+                Matrix.Cell<T, V> cell = row.getValue().get(columnKey);
+                if (cell != null) {
+                    column.put(row.getKey(), cell);
+                }
+            }
+            return Collections.unmodifiableMap(column);
+        }
+
+        public Matrix.Cell<T, V> totalColumn(C columnKey) {
+            return columnTotals.get(columnKey);
+        }
+
+        public Map<R, Map<C, Matrix.Cell<T, V>>> rowMap() {
+            Map<R, Map<C, Matrix.Cell<T, V>>> rowMap = new LinkedHashMap<R, Map<C, Matrix.Cell<T, V>>>();
+            for (Map.Entry<R, PersistentMap<C, Matrix.Cell<T, V>>> row : rows.entrySet()) {
+                rowMap.put(row.getKey(), row.getValue());
+            }
+            return Collections.unmodifiableMap(rowMap);
+        }
+
+        public Map<C, Map<R, Matrix.Cell<T, V>>> columnMap() {
+            Map<C, Map<R, Matrix.Cell<T, V>>> columnMap = new LinkedHashMap<C, Map<R, Matrix.Cell<T, V>>>();
+            for (C columnKey : columnTotals.keySet()) {
+                columnMap.put(columnKey, column(columnKey));
+            }
+            return Collections.unmodifiableMap(columnMap);
+        }
+
+        public Set<Matrix.Cell<T, V>> cellSet() {
+            Set<Matrix.Cell<T, V>> cells = new LinkedHashSet<Matrix.Cell<T, V>>();
+            for (PersistentMap<C, Matrix.Cell<T, V>> row : rows.values()) {
+                cells.addAll(row.values());
+            }
+            return Collections.unmodifiableSet(cells);
+        }
+
+        public Set<R> rowKeySet() {
+            return rows.keySet();
+        }
+
+        public Set<C> columnKeySet() {
+            return columnTotals.keySet();
+        }
+
+        public Collection<T> getItems() {
+            List<T> items = new ArrayList<T>(size);
+            for (PersistentMap<C, Matrix.Cell<T, V>> row : rows.values()) {
+                for (Matrix.Cell<T, V> cell : row.values()) {
+                    items.addAll(cell.getItems());
+                }
+            }
+            return Collections.unmodifiableList(items);
+        }
+
+        public Matrix<R, C, T, V> subMatrix(Selection<R> rowSelection, Selection<C> columnSelection) {
+            return Matrices.subMatrix(this, rowSelection, columnSelection);
+        }
+
+        public Matrix.Cell<T, V> aggregate(Selection<R> rowSelection, Selection<C> columnSelection) {
+            VersionedMatrix.Cell<T, V> result = new VersionedMatrix.Cell<T, V>(new Object());
+            for (Map<C, Matrix.Cell<T, V>> row : rowSelection.select(rows).values()) {
+                for (Matrix.Cell<T, V> cell : columnSelection.select(row).values()) {
+                    addCell(result, cell);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void clear() {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public Matrix.Cell<T, V> put(T value) {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void putAll(Collection<T> values) {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void merge(Matrix<R, C, T, V> other) {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void remove(T value) {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        /**
+         * This operation is not available.
+         */
+        public void removeAll(Collection<T> values) {
+            throw new UnsupportedOperationException("A version of the matrix can not be modified");
+        }
+
+        @Override
+        public String toString() {
+            return "Version [number=" + number + ", size=" + size + ", rows=" + rows.size() + "]";
+        }
+    }
+
+    /**
+     * Builds the next version from the current one. The nodes, rows and cells
+     * it copies belong to it, later changes of the same batch are done on the
+     * copies.
+     */
+    private class Writer {
+
+        private final Object owner = new Object();
+        private PersistentMap<R, PersistentMap<C, Matrix.Cell<T, V>>> rows;
+        private PersistentMap<R, Matrix.Cell<T, V>> rowTotals;
+        private PersistentMap<C, Matrix.Cell<T, V>> columnTotals;
+        private int size;
+
+        Writer(Version version) {
+            rows = version.rows;
+            rowTotals = version.rowTotals;
+            columnTotals = version.columnTotals;
+            size = version.size;
+        }
+
+        Matrix.Cell<T, V> put(T item) {
+            R rowKey = rowResolver.resolve(item);
+            C columnKey = colResolver.resolve(item);
+            rowTotals = rowTotals.plus(rowKey, add(rowTotals.get(rowKey), item), owner);
+            columnTotals = columnTotals.plus(columnKey, add(columnTotals.get(columnKey), item), owner);
+            PersistentMap<C, Matrix.Cell<T, V>> row = row(rowKey);
+            Cell<T, V> cell = add(row.get(columnKey), item);
+            rows = rows.plus(rowKey, row.plus(columnKey, cell, owner), owner);
+            size++;
+            return cell;
+        }
+
+        void remove(T item) {
+            R rowKey = rowResolver.resolve(item);
+            C columnKey = colResolver.resolve(item);
+            PersistentMap<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+            if (row == null || row.get(columnKey) == null || !row.get(columnKey).getItems().contains(item)) {
+                return;
+            }
+            row = remove(row, columnKey, item);
+            rows = row.isEmpty() ? rows.minus(rowKey, owner) : rows.plus(rowKey, row, owner);
+            rowTotals = remove(rowTotals, rowKey, item);
+            columnTotals = remove(columnTotals, columnKey, item);
+            size--;
+        }
+
+        void merge(Matrix<R, C, T, V> other) {
+            for (Map.Entry<R, Map<C, Matrix.Cell<T, V>>> row : other.rowMap().entrySet()) {
+                PersistentMap<C, Matrix.Cell<T, V>> merged = row(row.getKey());
+                for (Map.Entry<C, Matrix.Cell<T, V>> cell : row.getValue().entrySet()) {
+                    merged = merged.plus(cell.getKey(), merge(merged.get(cell.getKey()), cell.getValue()), owner);
+                }
+                rows = rows.plus(row.getKey(), merged, owner);
+            }
+            for (R rowKey : other.rowKeySet()) {
+                if (other.totalRow(rowKey) != null) {
+                    rowTotals = rowTotals.plus(rowKey, merge(rowTotals.get(rowKey), other.totalRow(rowKey)), owner);
+                }
+            }
+            for (C columnKey : other.columnKeySet()) {
+                if (other.totalColumn(columnKey) != null) {
+                    columnTotals = columnTotals.plus(columnKey,
+                            merge(columnTotals.get(columnKey), other.totalColumn(columnKey)), owner);
+                }
+            }
+            size += other.size();
+        }
+
+        Version publish(long number) {
+            return new Version(number, rows, rowTotals, columnTotals, size);
+        }
+
+        private PersistentMap<C, Matrix.Cell<T, V>> row(R rowKey) {
+            PersistentMap<C, Matrix.Cell<T, V>> row = rows.get(rowKey);
+            return row != null ? row : PersistentMap.<C, Matrix.Cell<T, V>>empty();
+        }
+
+        /**
+         * Returns the copy of the cell owned by this writer.
+         */
+        private Cell<T, V> cell(Matrix.Cell<T, V> cell) {
+            if (cell == null) {
+                return new Cell<T, V>(owner);
+            }
+            Cell<T, V> copy = (Cell<T, V>) cell;
+            return copy.owner == owner ? copy : new Cell<T, V>(copy, owner, Matrices.copy(accumulator, copy.value));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <K> PersistentMap<K, Matrix.Cell<T, V>> remove(PersistentMap<K, Matrix.Cell<T, V>> cells, K key,
+                T item) {
+            Matrix.Cell<T, V> existing = cells.get(key);
+            if (existing.getItems().size() == 1) {
+                return cells.minus(key, owner);
+            }
+            Cell<T, V> cell = cell(existing);
+            cell.items = cell.items.minus(item, owner);
+            V updated = null;
+            if (accumulator instanceof IncrementalAccumulator) {
+                updated = ((IncrementalAccumulator<T, V>) accumulator).remove(cell.value, item);
+            }
+            cell.value = updated != null ? updated : accumulator.accumulate(cell.items);
+            return cells.plus(key, cell, owner);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Cell<T, V> add(Matrix.Cell<T, V> existing, T item) {
+            Cell<T, V> cell = cell(existing);
+            cell.items = cell.items.plus(item, owner);
+            if (accumulator instanceof IncrementalAccumulator) {
+                cell.value = ((IncrementalAccumulator<T, V>) accumulator).add(cell.value, item);
+            } else if (accumulator instanceof MergeableAccumulator) {
+                MergeableAccumulator<T, V> mergeable = (MergeableAccumulator<T, V>) accumulator;
+                cell.value = mergeable.merge(cell.value, accumulator.accumulate(Collections.singletonList(item)));
+            } else {
+                cell.value = accumulator.accumulate(cell.items);
+            }
+            return cell;
+        }
+
+        private Cell<T, V> merge(Matrix.Cell<T, V> existing, Matrix.Cell<T, V> other) {
+            Cell<T, V> cell = cell(existing);
+            addCell(cell, other);
+            return cell;
+        }
+    }
+
+    /**
+     * Adds the items of other cell to a cell not yet published.
+     */
+    @SuppressWarnings("unchecked")
+    private void addCell(Cell<T, V> cell, Matrix.Cell<T, V> other) {
+        for (T item : other.getItems()) {
+            cell.items = cell.items.plus(item, cell.owner);
+        }
+        if (accumulator instanceof MergeableAccumulator) {
+            cell.value = ((MergeableAccumulator<T, V>) accumulator).merge(cell.value, other.getValue());
+        } else {
+            cell.value = accumulator.accumulate(cell.items);
+        }
+    }
+
+    public boolean contains(T item) {
+        return version.contains(item);
+    }
+
+    public boolean contains(R rowKey, C columnKey) {
+        return version.contains(rowKey, columnKey);
+    }
+
+    public boolean containsRow(R rowKey) {
+        return version.containsRow(rowKey);
+    }
+
+    public boolean containsColumn(C columnKey) {
+        return version.containsColumn(columnKey);
+    }
+
+    public Matrix.Cell<T, V> get(R row, C column) {
+        return version.get(row, column);
+    }
+
+    public int size() {
+        return version.size();
+    }
+
+    public boolean isEmpty() {
+        return version.isEmpty();
+    }
+
+    public synchronized void clear() {
+        version = new Version(version.number + 1, PersistentMap.<R, PersistentMap<C, Matrix.Cell<T, V>>>empty(),
+                PersistentMap.<R, Matrix.Cell<T, V>>empty(), PersistentMap.<C, Matrix.Cell<T, V>>empty(), 0);
+    }
+
+    public synchronized Matrix.Cell<T, V> put(T value) {
+        Writer writer = new Writer(version);
+        Matrix.Cell<T, V> cell = writer.put(value);
+        version = writer.publish(version.number + 1);
+        return cell;
+    }
+
+    public synchronized void putAll(Collection<T> values) {
+        Writer writer = new Writer(version);
+        for (T value : values) {
+            writer.put(value);
+        }
+        version = writer.publish(version.number + 1);
+    }
+
+    public synchronized void merge(Matrix<R, C, T, V> other) {
+        if (other == this) {
+            throw new IllegalArgumentException("A matrix can not be merged into itself");
+        }
+        Writer writer = new Writer(version);
+        writer.merge(other);
+        version = writer.publish(version.number + 1);
+    }
+
+    public synchronized void remove(T value) {
+        Writer writer = new Writer(version);
+        writer.remove(value);
+        version = writer.publish(version.number + 1);
+    }
+
+    public synchronized void removeAll(Collection<T> values) {
+        Writer writer = new Writer(version);
+        for (T value : values) {
+            writer.remove(value);
+        }
+        version = writer.publish(version.number + 1);
+    }
+
+    public Map<C, Matrix.Cell<T, V>> row(R rowKey) {
+        return version.row(rowKey);
+    }
+
+    public Matrix.Cell<T, V> totalRow(R rowKey) {
+        return version.totalRow(rowKey);
+    }
+
+    public Map<R, Matrix.Cell<T, V>> column(C columnKey) {
+        return version.column(columnKey);
+    }
+
+    public Matrix.Cell<T, V> totalColumn(C columnKey) {
+        return version.totalColumn(columnKey);
+    }
+
+    public Map<R, Map<C, Matrix.Cell<T, V>>> rowMap() {
+        return version.rowMap();
+    }
+
+    public Map<C, Map<R, Matrix.Cell<T, V>>> columnMap() {
+        return version.columnMap();
+    }
+
+    public Set<Matrix.Cell<T, V>> cellSet() {
+        return version.cellSet();
+    }
+
+    public Set<R> rowKeySet() {
+        return version.rowKeySet();
+    }
+
+    public Set<C> columnKeySet() {
+        return version.columnKeySet();
+    }
+
+    public Collection<T> getItems() {
+        return version.getItems();
+    }
+
+    /**
+     * Returns a view of the selected cells of the current version, it does
+     * not change when the matrix is modified.
+     */
+    public Matrix<R, C, T, V> subMatrix(Selection<R> rows, Selection<C> columns) {
+        return version.subMatrix(rows, columns);
+    }
+
+    public Matrix.Cell<T, V> aggregate(Selection<R> rows, Selection<C> columns) {
+        return version.aggregate(rows, columns);
+    }
+}
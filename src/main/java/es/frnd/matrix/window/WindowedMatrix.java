@@ -0,0 +1,536 @@
+package es.frnd.matrix.window;
+
+import es.frnd.matrix.AbstractMatrix;
+import es.frnd.matrix.Matrix;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matrix of the items of a sliding time window.
+ *
+ * The window is made of {@code bucketCount} consecutive buckets of
+ * {@code bucketLength} time units. Every cell keeps the items and the value of
+ * each bucket apart, and its value is the merge of the values of the buckets.
+ * When the window slides the oldest buckets are expired at once, dropping
+ * their items and merging again the values of the remaining ones, so the cost
+ * of sliding depends on the number of cells, not on the number of items. A
+ * window of one bucket is a tumbling window.
+ *
+ * The items of a cell are returned grouped by bucket, not in insertion order.
+ *
+ * @param <R> the type of the row keys
+ * @param <C> the type of the column keys
+ * @param <T> the type of the items
+ * @param <V> the type of the cell values
+ * @author Fernando Gonzalez
+ */
+public class WindowedMatrix<R, C, T, V> extends AbstractMatrix<R, C, T, V> implements Matrix<R, C, T, V> {
+
+    private final Resolver<T, R> rowResolver;
+    private final Resolver<T, C> colResolver;
+    private final Resolver<T, Long> timeResolver;
+    private final MergeableAccumulator<T, V> accumulator;
+    private final long bucketLength;
+    private final int bucketCount;
+
+    private final Map<R, Map<C, Matrix.Cell<T, V>>> rows;
+    private final Map<C, Matrix.Cell<T, V>> totalRow;
+    private final Map<R, Matrix.Cell<T, V>> totalColumn;
+    private final Buckets<T> allItems;
+
+    private boolean started;
+    private long newest;
+    private int current;
+    // The buckets of the other window kept by a merge, null if all of them
+    private boolean[] merging;
+
+    /**
+     * @param rowResolver  the row resolver
+     * @param colResolver  the column resolver
+     * @param timeResolver resolves the time of an item
+     * @param accumulator  the accumulator of the cell values
+     * @param bucketLength the time span of each bucket
+     * @param bucketCount  the number of buckets of the window
+     */
+    public WindowedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Resolver<T, Long> timeResolver,
+                          MergeableAccumulator<T, V> accumulator, long bucketLength, int bucketCount) {
+        this(rowResolver, colResolver, timeResolver, accumulator, bucketLength, bucketCount,
+                new HashMap<R, Map<C, Matrix.Cell<T, V>>>(), new Buckets<T>(bucketCount),
+                new HashMap<C, Matrix.Cell<T, V>>(), new HashMap<R, Matrix.Cell<T, V>>());
+    }
+
+    private WindowedMatrix(Resolver<T, R> rowResolver, Resolver<T, C> colResolver, Resolver<T, Long> timeResolver,
+                           MergeableAccumulator<T, V> accumulator, long bucketLength, int bucketCount,
+                           Map<R, Map<C, Matrix.Cell<T, V>>> rows, Buckets<T> allItems,
+                           Map<C, Matrix.Cell<T, V>> totalRow, Map<R, Matrix.Cell<T, V>> totalColumn) {
+        super(rows, allItems, totalRow, totalColumn, new Cell<T, V>(accumulator, bucketCount));
+        if (bucketLength <= 0 || bucketCount <= 0) {
+            throw new IllegalArgumentException("Bucket length and count must be positive: " + bucketLength + ", "
+                    + bucketCount);
+        }
+        this.rowResolver = rowResolver;
+        this.colResolver = colResolver;
+        this.timeResolver = timeResolver;
+        this.accumulator = accumulator;
+        this.bucketLength = bucketLength;
+        this.bucketCount = bucketCount;
+        this.rows = rows;
+        this.allItems = allItems;
+        this.totalRow = totalRow;
+        this.totalColumn = totalColumn;
+    }
+
+    /**
+     * Cell keeping apart the items and the value of each bucket.
+     */
+    static class Cell<T, V> implements Matrix.Cell<T, V> {
+
+        private final MergeableAccumulator<T, V> accumulator;
+        private final Buckets<T> items;
+        private final Object[] values;
+        private V value;
+
+        Cell(MergeableAccumulator<T, V> accumulator, int bucketCount) {
+            this.accumulator = accumulator;
+            this.items = new Buckets<T>(bucketCount);
+            this.values = new Object[bucketCount];
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(int bucket, T item) {
+            items.addTo(bucket, item);
+            if (accumulator instanceof IncrementalAccumulator) {
+                IncrementalAccumulator<T, V> incremental = (IncrementalAccumulator<T, V>) accumulator;
+                values[bucket] = incremental.add((V) values[bucket], item);
+                value = incremental.add(value, item);
+            } else {
+                V single = accumulator.accumulate(Collections.singletonList(item));
+                values[bucket] = accumulator.merge((V) values[bucket], single);
+                value = accumulator.merge(value, single);
+            }
+        }
+
+        void remove(T item) {
+            int bucket = items.removeItem(item);
+            if (bucket >= 0) {
+                values[bucket] = items.bucket(bucket).isEmpty() ? null : accumulator.accumulate(items.bucket(bucket));
+                accumulate();
+            }
+        }
+
+        /*
+         * Adds the items and values of each bucket of other cell of the same
+         * window.
+         */
+        void merge(Cell<T, V> other) {
+            merge(other, null);
+        }
+
+        /*
+         * Adds the items and values of the kept buckets of other cell, all of
+         * them if kept is null.
+         */
+        @SuppressWarnings("unchecked")
+        void merge(Cell<T, V> other, boolean[] kept) {
+            boolean all = true;
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                if (kept != null && !kept[bucket]) {
+                    all = false;
+                    continue;
+                }
+                items.addAll(bucket, other.items.bucket(bucket));
+                if (other.values[bucket] != null) {
+                    values[bucket] = accumulator.merge((V) values[bucket], (V) other.values[bucket]);
+                }
+            }
+            if (all) {
+                value = accumulator.merge(value, other.value);
+            } else {
+                accumulate();
+            }
+        }
+
+        void expire(int bucket) {
+            items.expire(bucket);
+            if (values[bucket] != null) {
+                values[bucket] = null;
+                accumulate();
+            }
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void accumulate() {
+            V result = null;
+            for (Object bucketValue : values) {
+                if (bucketValue != null) {
+                    result = accumulator.merge(result, (V) bucketValue);
+                }
+            }
+            value = result;
+        }
+
+        @Override
+        public void clear() {
+            items.clear();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = null;
+            }
+            value = null;
+        }
+    }
+
+    /**
+     * The items of each bucket, seen as a single list.
+     */
+    static class Buckets<T> extends AbstractList<T> {
+
+        private final List<List<T>> buckets;
+        private int size;
+        private int current;
+
+        Buckets(int bucketCount) {
+            buckets = new ArrayList<List<T>>(bucketCount);
+            for (int i = 0; i < bucketCount; i++) {
+                buckets.add(null);
+            }
+        }
+
+        List<T> bucket(int bucket) {
+            List<T> items = buckets.get(bucket);
+            return items != null ? items : Collections.<T>emptyList();
+        }
+
+        void addTo(int bucket, T item) {
+            List<T> items = buckets.get(bucket);
+            if (items == null) {
+                items = new ArrayList<T>();
+                buckets.set(bucket, items);
+            }
+            items.add(item);
+            size++;
+        }
+
+        void addAll(int bucket, List<T> added) {
+            if (added.isEmpty()) {
+                return;
+            }
+            List<T> items = buckets.get(bucket);
+            if (items == null) {
+                items = new ArrayList<T>(added.size());
+                buckets.set(bucket, items);
+            }
+            items.addAll(added);
+            size += added.size();
+        }
+
+        /**
+         * Adds the item to the current bucket.
+         */
+        @Override
+        public boolean add(T item) {
+            addTo(current, item);
+            return true;
+        }
+
+        /**
+         * Removes an item and returns its bucket, or -1 if not found.
+         */
+        int removeItem(Object item) {
+            for (int i = 0; i < buckets.size(); i++) {
+                List<T> items = buckets.get(i);
+                if (items != null && items.remove(item)) {
+                    size--;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean remove(Object item) {
+            return removeItem(item) >= 0;
+        }
+
+        void expire(int bucket) {
+            List<T> items = buckets.get(bucket);
+            if (items != null) {
+                size -= items.size();
+                buckets.set(bucket, null);
+            }
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            for (List<T> items : buckets) {
+                if (items != null) {
+                    if (index < items.size()) {
+                        return items.get(index);
+                    }
+                    index -= items.size();
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            for (int i = 0; i < buckets.size(); i++) {
+                buckets.set(i, null);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Adds the item to the bucket of its time, sliding the window forward if
+     * the item is newer than the window. Items older than the window are
+     * ignored.
+     *
+     * @return the cell where the item falls, or {@code null} if it is too old
+     */
+    @Override
+    public Matrix.Cell<T, V> put(T value) {
+        long bucket = bucketOf(timeResolver.resolve(value));
+        if (!started || bucket > newest) {
+            slide(bucket);
+        } else if (bucket <= newest - bucketCount) {
+            return null;
+        }
+        current = slot(bucket);
+        allItems.current = current;
+        return super.put(value);
+    }
+
+    /**
+     * Adds the items of the other matrix to the buckets of their time, sliding
+     * the window forward if the other one is newer. The cells of a window with
+     * the same buckets are merged bucket by bucket, leaving out the buckets
+     * older than this window; the items of other matrices are resolved again.
+     *
+     * @throws IllegalArgumentException if the other matrix is this one
+     */
+    @Override
+    public void merge(Matrix<R, C, T, V> other) {
+        if (other == this) {
+            throw new IllegalArgumentException("A matrix can not be merged into itself");
+        }
+        if (!(other instanceof WindowedMatrix)) {
+            putAll(new ArrayList<T>(other.getItems()));
+            return;
+        }
+        WindowedMatrix<R, C, T, V> window = (WindowedMatrix<R, C, T, V>) other;
+        if (window.bucketLength != bucketLength || window.bucketCount != bucketCount) {
+            putAll(new ArrayList<T>(other.getItems()));
+            return;
+        }
+        if (!window.started) {
+            return;
+        }
+        if (!started || window.newest > newest) {
+            slide(window.newest);
+        }
+        boolean[] kept = new boolean[bucketCount];
+        boolean all = true;
+        for (int i = 0; i < bucketCount; i++) {
+            long bucket = window.newest - i;
+            kept[slot(bucket)] = bucket > newest - bucketCount;
+            all &= kept[slot(bucket)];
+        }
+        merging = all ? null : kept;
+        try {
+            super.merge(other);
+        } finally {
+            merging = null;
+        }
+        if (!all) {
+            // The cells with items only in the buckets left out
+            dropEmpty();
+        }
+    }
+
+    /**
+     * Slides the window so its newest bucket is the one of the given time,
+     * expiring the buckets left behind. Does nothing if the time is not newer
+     * than the window.
+     *
+     * @param time the current time
+     */
+    public void advanceTo(long time) {
+        long bucket = bucketOf(time);
+        if (!started || bucket > newest) {
+            slide(bucket);
+        }
+    }
+
+    /**
+     * Returns the start time of the window, inclusive.
+     */
+    public long getWindowStart() {
+        return (newest - bucketCount + 1) * bucketLength;
+    }
+
+    /**
+     * Returns the end time of the window, exclusive.
+     */
+    public long getWindowEnd() {
+        return (newest + 1) * bucketLength;
+    }
+
+    private void slide(long bucket) {
+        if (started) {
+            long expired = Math.min(bucket - newest, bucketCount);
+            for (long i = 1; i <= expired; i++) {
+                expire(slot(newest + i));
+            }
+        }
+        newest = bucket;
+        started = true;
+    }
+
+    private void expire(int slot) {
+        Iterator<Map<C, Matrix.Cell<T, V>>> rowIterator = rows.values().iterator();
+        while (rowIterator.hasNext()) {
+            Map<C, Matrix.Cell<T, V>> row = rowIterator.next();
+            expire(row, slot);
+            if (row.isEmpty()) {
+                rowIterator.remove();
+            }
+        }
+        expire(totalRow, slot);
+        expire(totalColumn, slot);
+        allItems.expire(slot);
+    }
+
+    private void dropEmpty() {
+        Iterator<Map<C, Matrix.Cell<T, V>>> rowIterator = rows.values().iterator();
+        while (rowIterator.hasNext()) {
+            Map<C, Matrix.Cell<T, V>> row = rowIterator.next();
+            dropEmpty(row);
+            if (row.isEmpty()) {
+                rowIterator.remove();
+            }
+        }
+        dropEmpty(totalRow);
+        dropEmpty(totalColumn);
+    }
+
+    private void dropEmpty(Map<?, Matrix.Cell<T, V>> cells) {
+        Iterator<Matrix.Cell<T, V>> iterator = cells.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getItems().isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void expire(Map<?, Matrix.Cell<T, V>> cells, int slot) {
+        Iterator<Matrix.Cell<T, V>> iterator = cells.values().iterator();
+        while (iterator.hasNext()) {
+            Cell<T, V> cell = (Cell<T, V>) iterator.next();
+            cell.expire(slot);
+            if (cell.getItems().isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private long bucketOf(long time) {
+        long bucket = time / bucketLength;
+        return time % bucketLength < 0 ? bucket - 1 : bucket;
+    }
+
+    private int slot(long bucket) {
+        int slot = (int) (bucket % bucketCount);
+        return slot < 0 ? slot + bucketCount : slot;
+    }
+
+    /**
+     * Merges the cells bucket by bucket.
+     */
+    @Override
+    protected Cell<T, V> aggregate(List<Matrix.Cell<T, V>> cells) {
+        Cell<T, V> result = createCell();
+        for (Matrix.Cell<T, V> cell : cells) {
+            result.merge((Cell<T, V>) cell);
+        }
+        return result;
+    }
+
+    @Override
+    protected Accumulator<T, V> getAccumulator() {
+        return accumulator;
+    }
+
+    @Override
+    protected void addItem(Matrix.Cell<T, V> cell, T item) {
+        ((Cell<T, V>) cell).add(current, item);
+    }
+
+    /**
+     * Merges the cell of a window with the same buckets, bucket by bucket.
+     */
+    @Override
+    protected void mergeCell(Matrix.Cell<T, V> cell, Matrix.Cell<T, V> other) {
+        ((Cell<T, V>) cell).merge((Cell<T, V>) other, merging);
+    }
+
+    /**
+     * Adds the items of a window with the same buckets to their buckets.
+     */
+    @Override
+    protected void mergeItems(Matrix<R, C, T, V> other) {
+        Buckets<T> items = ((WindowedMatrix<R, C, T, V>) other).allItems;
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            if (merging == null || merging[bucket]) {
+                allItems.addAll(bucket, items.bucket(bucket));
+            }
+        }
+    }
+
+    @Override
+    protected void removeItem(Matrix.Cell<T, V> cell, T item) {
+        ((Cell<T, V>) cell).remove(item);
+    }
+
+    @Override
+    protected Resolver<T, R> getRowResolver() {
+        return rowResolver;
+    }
+
+    @Override
+    protected Resolver<T, C> getColResolver() {
+        return colResolver;
+    }
+
+    @Override
+    protected Cell<T, V> createCell() {
+        return new Cell<T, V>(accumulator, bucketCount);
+    }
+
+    @Override
+    protected Map<C, Matrix.Cell<T, V>> createBackingMap() {
+        return new HashMap<C, Matrix.Cell<T, V>>();
+    }
+}
@@ -0,0 +1,133 @@
+package es.frnd.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non negative values, such as durations in nanoseconds, in
+ * buckets of powers of two. Recording a value takes a few atomic additions
+ * and no allocation, and it is safe from any thread.
+ * 
+ * @author Fernando Gonzalez
+ */
+public final class Histogram {
+
+	/**
+	 * Bucket {@code i} counts the values below {@code 2^i} and not below
+	 * {@code 2^(i-1)}, bucket 0 counts zeros.
+	 */
+	private final AtomicLongArray	buckets	= new AtomicLongArray(64);
+
+	private final AtomicLong		count	= new AtomicLong();
+
+	private final AtomicLong		sum		= new AtomicLong();
+
+	private final AtomicLong		max		= new AtomicLong();
+
+	/**
+	 * Records a value, negative values count as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	public void reset() {
+		for (int i = 0; i < buckets.length(); i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Returns a copy of the current state. Values recorded meanwhile may be
+	 * partially included.
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[buckets.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = buckets.get(i);
+		}
+		return new Snapshot(copy, count.get(), sum.get(), max.get());
+	}
+
+	/**
+	 * The state of a histogram at some moment.
+	 */
+	public static final class Snapshot {
+
+		private final long[]	buckets;
+
+		private final long		count;
+
+		private final long		sum;
+
+		private final long		max;
+
+		Snapshot(long[] buckets, long count, long sum, long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getSum() {
+			return sum;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * Returns the mean of the values, {@code NaN} if there are none.
+		 */
+		public double getMean() {
+			return count == 0 ? Double.NaN : (double) sum / count;
+		}
+
+		/**
+		 * Returns an upper bound of the value with the given fraction of the
+		 * values below it, at most twice the real one, or 0 if there are no
+		 * values.
+		 * 
+		 * @param fraction
+		 *            from 0 to 1, such as 0.99 for the 99th percentile
+		 */
+		public long getPercentile(double fraction) {
+			long total = 0;
+			for (long bucket : buckets) {
+				total += bucket;
+			}
+			long rank = (long) Math.ceil(fraction * total);
+			long cumulative = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				cumulative += buckets[i];
+				if (cumulative >= rank && cumulative > 0) {
+					return Math.min(max, i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return "[count=" + count + ", mean=" + getMean() + ", p50=" + getPercentile(0.5) + ", p99="
+					+ getPercentile(0.99) + ", max=" + max + "]";
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package es.frnd.metrics;
+
+import es.frnd.tree.Node;
+import es.frnd.tree.Resolver;
+import es.frnd.tree.Visitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counters and distributions of the work done by matrices and trees.
+ * 
+ * Recording is optional: a matrix records its work only once given metrics
+ * with {@link es.frnd.matrix.AbstractMatrix#setMetrics(Metrics)}, and a tree
+ * only if built with the resolvers returned by {@link #instrument(List)}.
+ * Otherwise nothing is measured and nothing is allocated. The same metrics
+ * can be shared by any number of matrices and trees, from any thread.
+ * 
+ * @author Fernando Gonzalez
+ */
+public class Metrics {
+
+	/**
+	 * The events counted.
+	 */
+	public enum Counter {
+		/** Searches of a cell or total by its keys. */
+		LOOKUPS,
+		/** Searches of a cell or total not found. */
+		MISSES,
+		/** Cells and totals created. */
+		CELL_CREATIONS,
+		/** Items removed. */
+		REMOVALS,
+		/** Nodes of the trees counted with {@link Metrics#countNodes(Node)}. */
+		NODES
+	}
+
+	/**
+	 * The values whose distribution is recorded.
+	 */
+	public enum Distribution {
+		/** Nanoseconds of each call to a resolver. */
+		RESOLVE_NANOS,
+		/** Nanoseconds of each update of the value of a cell or total. */
+		ACCUMULATE_NANOS,
+		/** Items of the cell or total after each update of its value. */
+		ACCUMULATED_ITEMS,
+		/**
+		 * Items compared when searching an item to remove, once in the cells
+		 * and once in the list of all the items.
+		 */
+		REMOVAL_SCAN_LENGTH
+	}
+
+	private final AtomicLongArray				counters		= new AtomicLongArray(Counter.values().length);
+
+	private final Map<Distribution, Histogram>	distributions	= new EnumMap<Distribution, Histogram>(
+																		Distribution.class);
+
+	public Metrics() {
+		for (Distribution distribution : Distribution.values()) {
+			distributions.put(distribution, new Histogram());
+		}
+	}
+
+	public void count(Counter counter) {
+		counters.incrementAndGet(counter.ordinal());
+	}
+
+	public void count(Counter counter, long times) {
+		counters.addAndGet(counter.ordinal(), times);
+	}
+
+	public void record(Distribution distribution, long value) {
+		distributions.get(distribution).record(value);
+	}
+
+	public long get(Counter counter) {
+		return counters.get(counter.ordinal());
+	}
+
+	public Histogram get(Distribution distribution) {
+		return distributions.get(distribution);
+	}
+
+	public void reset() {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+		for (Histogram histogram : distributions.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Returns a copy of the current counters and distributions.
+	 */
+	public Snapshot snapshot() {
+		Map<Counter, Long> counts = new EnumMap<Counter, Long>(Counter.class);
+		for (Counter counter : Counter.values()) {
+			counts.put(counter, get(counter));
+		}
+		Map<Distribution, Histogram.Snapshot> histograms = new EnumMap<Distribution, Histogram.Snapshot>(
+				Distribution.class);
+		for (Map.Entry<Distribution, Histogram> distribution : distributions.entrySet()) {
+			histograms.put(distribution.getKey(), distribution.getValue().snapshot());
+		}
+		return new Snapshot(counts, histograms);
+	}
+
+	/**
+	 * The counters and distributions at some moment.
+	 */
+	public static final class Snapshot {
+
+		private final Map<Counter, Long>					counters;
+
+		private final Map<Distribution, Histogram.Snapshot>	distributions;
+
+		Snapshot(Map<Counter, Long> counters, Map<Distribution, Histogram.Snapshot> distributions) {
+			this.counters = Collections.unmodifiableMap(counters);
+			this.distributions = Collections.unmodifiableMap(distributions);
+		}
+
+		public long get(Counter counter) {
+			return counters.get(counter);
+		}
+
+		public Histogram.Snapshot get(Distribution distribution) {
+			return distributions.get(distribution);
+		}
+
+		public Map<Counter, Long> getCounters() {
+			return counters;
+		}
+
+		public Map<Distribution, Histogram.Snapshot> getDistributions() {
+			return distributions;
+		}
+
+		@Override
+		public String toString() {
+			return "Metrics " + counters + " " + distributions;
+		}
+	}
+
+	/**
+	 * Returns resolvers for building a tree that record the duration of each
+	 * call to the given ones.
+	 */
+	public <T> List<Resolver<T, ?>> instrument(List<Resolver<T, ?>> resolvers) {
+		List<Resolver<T, ?>> instrumented = new ArrayList<Resolver<T, ?>>(resolvers.size());
+		for (Resolver<T, ?> resolver : resolvers) {
+			instrumented.add(instrument(resolver));
+		}
+		return instrumented;
+	}
+
+	private <T, K extends Comparable<K>> Resolver<T, K> instrument(final Resolver<T, K> resolver) {
+		return new Resolver<T, K>() {
+
+			@Override
+			public K resolve(T element) {
+				long start = System.nanoTime();
+				K key = resolver.resolve(element);
+				record(Distribution.RESOLVE_NANOS, System.nanoTime() - start);
+				return key;
+			}
+		};
+	}
+
+	/**
+	 * Adds the number of nodes of a tree, the root included, to
+	 * {@link Counter#NODES}.
+	 */
+	public void countNodes(Node<?> tree) {
+		count(Counter.NODES, nodes(tree));
+	}
+
+	private <T> long nodes(Node<T> tree) {
+		final long[] nodes = new long[1];
+		tree.depthFirst(new Visitor<T>() {
+
+			@Override
+			public boolean visit(Node<T> node, int depth) {
+				nodes[0]++;
+				return true;
+			}
+		});
+		return nodes[0];
+	}
+
+	/**
+	 * Management interface of the metrics.
+	 */
+	public interface MetricsMXBean {
+
+		/** The counters by name. */
+		Map<String, Long> getCounters();
+
+		/** The number of values of each distribution. */
+		Map<String, Long> getCounts();
+
+		/** The mean of each distribution. */
+		Map<String, Double> getMeans();
+
+		/** The 99th percentile of each distribution. */
+		Map<String, Long> getPercentiles99();
+
+		void reset();
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server with the given name,
+	 * such as {@code "es.frnd:type=Metrics,name=sales"}.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the name is wrong or already registered
+	 */
+	public ObjectName register(String name) {
+		try {
+			ObjectName objectName = new ObjectName(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					new StandardMBean(new Bean(), MetricsMXBean.class, true), objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Can not register the metrics as " + name, e);
+		}
+	}
+
+	private class Bean implements MetricsMXBean {
+
+		@Override
+		public Map<String, Long> getCounters() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Counter counter : Counter.values()) {
+				result.put(counter.name(), get(counter));
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getCounts() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Distribution distribution : Distribution.values()) {
+				result.put(distribution.name(), get(distribution).snapshot().getCount());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Double> getMeans() {
+			Map<String, Double> result = new LinkedHashMap<String, Double>();
+			for (Distribution distribution : Distribution.values()) {
+				result.put(distribution.name(), get(distribution).snapshot().getMean());
+			}
+			return result;
+		}
+
+		@Override
+		public Map<String, Long> getPercentiles99() {
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Distribution distribution : Distribution.values()) {
+				result.put(distribution.name(), get(distribution).snapshot().getPercentile(0.99));
+			}
+			return result;
+		}
+
+		@Override
+		public void reset() {
+			Metrics.this.reset();
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package es.frnd.tree;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link Tree} stored in a flattened form.
+ *
+ * The elements are kept in a single array sorted by all the resolvers, so the
+ * elements below any node are a contiguous range of it. Inner nodes are laid
+ * out level by level and described by parallel arrays: the key of the node,
+ * the range of elements below it and the range of its children. The
+ * {@link Node} instances returned by {@link #getChildren()} are lightweight
+ * views over these arrays created on demand.
+ *
+ * @param <T>
+ *            the type of the elements of the tree
+ */
+public class CompactTree<T> extends Tree<T> {
+
+	private static final int	INITIAL_CAPACITY	= 16;
+
+	private final Object[]		elements;
+
+	private final int			levels;
+
+	private int					nodeCount;
+
+	private Object[]			keys;
+
+	private int[]				start;
+
+	private int[]				end;
+
+	private int[]				firstChild;
+
+	private int[]				childCount;
+
+	public CompactTree(List<T> elements, List<Resolver<T, ?>> resolvers) {
+		this(elements, resolvers, new int[resolvers.size()]);
+	}
+
+	/**
+	 * Creates a tree sizing its arrays for the nodes expected from the fanout
+	 * of each level, so they do not grow while it is built.
+	 * 
+	 * @param fanout
+	 *            the number of children expected below each level, one for
+	 *            each resolver, 0 if it is not known
+	 */
+	public CompactTree(List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
+		super();
+		checkFanout(resolvers, fanout);
+		List<T> sorted = new ArrayList<T>(elements);
+		Collections.sort(sorted, new PathComparator(resolvers));
+		this.elements = sorted.toArray();
+		this.levels = resolvers.size();
+
+		int capacity = capacity(fanout, this.elements.length);
+		keys = new Object[capacity];
+		start = new int[capacity];
+		end = new int[capacity];
+		firstChild = new int[capacity];
+		childCount = new int[capacity];
+
+		// The root node
+		addNode(null, 0, this.elements.length);
+
+		int levelStart = 0;
+		for (Resolver<T, ?> resolver : resolvers) {
+			int levelEnd = nodeCount;
+			for (int node = levelStart; node < levelEnd; node++) {
+				split(node, resolver);
+			}
+			levelStart = levelEnd;
+		}
+
+		trim();
+	}
+
+	/**
+	 * Creates the children of the node grouping its range of elements by the
+	 * key returned by the resolver.
+	 */
+	@SuppressWarnings("unchecked")
+	private void split(int node, Resolver<T, ?> resolver) {
+		firstChild[node] = nodeCount;
+		if (start[node] == end[node]) {
+			return;
+		}
+
+		int startIndex = start[node];
+		Object current = resolver.resolve((T) elements[startIndex]);
+		for (int i = startIndex + 1; i < end[node]; i++) {
+			Object next = resolver.resolve((T) elements[i]);
+			if (compareKeys(current, next) != 0) {
+				addNode(current, startIndex, i);
+				childCount[node]++;
+				current = next;
+				startIndex = i;
+			}
+		}
+		addNode(current, startIndex, end[node]);
+		childCount[node]++;
+	}
+
+	/**
+	 * Returns the number of inner nodes expected, the root and the nodes of
+	 * every level until the fanout is not known, with no more nodes on a
+	 * level than elements.
+	 */
+	private static int capacity(int[] fanout, int elements) {
+		long nodes = 1;
+		long level = 1;
+		for (int expected : fanout) {
+			if (expected == 0) {
+				break;
+			}
+			level = Math.min(level * expected, elements);
+			nodes += level;
+		}
+		return (int) Math.max(INITIAL_CAPACITY, Math.min(nodes, Integer.MAX_VALUE - 8));
+	}
+
+	private void addNode(Object key, int from, int to) {
+		if (nodeCount == keys.length) {
+			int capacity = keys.length * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			start = Arrays.copyOf(start, capacity);
+			end = Arrays.copyOf(end, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			childCount = Arrays.copyOf(childCount, capacity);
+		}
+		keys[nodeCount] = key;
+		start[nodeCount] = from;
+		end[nodeCount] = to;
+		nodeCount++;
+	}
+
+	private void trim() {
+		if (nodeCount == keys.length) {
+			return;
+		}
+		keys = Arrays.copyOf(keys, nodeCount);
+		start = Arrays.copyOf(start, nodeCount);
+		end = Arrays.copyOf(end, nodeCount);
+		firstChild = Arrays.copyOf(firstChild, nodeCount);
+		childCount = Arrays.copyOf(childCount, nodeCount);
+	}
+
+	/**
+	 * Number of inner nodes, including the root.
+	 *
+	 * @return
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public Object getData() {
+		return null;
+	}
+
+	@Override
+	public List<Node<T>> getChildren() {
+		return children(0, 0);
+	}
+
+	@Override
+	public Node<T> getChild(Object key) {
+		return child(0, 0, key);
+	}
+
+	@Override
+	public List<T> getElements() {
+		return elements(0);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> elements(int node) {
+		List<Object> range = Arrays.asList(elements).subList(start[node], end[node]);
+		return (List<T>) Collections.unmodifiableList(range);
+	}
+
+	@Override
+	public boolean hasKeyedChildren() {
+		return levels > 0;
+	}
+
+	/**
+	 * Binary search of the key on the children of the node.
+	 */
+	private Node<T> child(int node, int depth, Object key) {
+		if (depth == levels) {
+			return null;
+		}
+		int low = firstChild[node];
+		int high = low + childCount[node] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareKeys(keys[mid], key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return new View(mid, depth + 1);
+			}
+		}
+		return null;
+	}
+
+	private List<Node<T>> children(final int node, final int depth) {
+		if (depth == levels) {
+			return new Leaves(start[node], end[node]);
+		}
+		return new AbstractList<Node<T>>() {
+
+			@Override
+			public Node<T> get(int index) {
+				if (index < 0 || index >= childCount[node]) {
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + childCount[node]);
+				}
+				return new View(firstChild[node] + index, depth + 1);
+			}
+
+			@Override
+			public int size() {
+				return childCount[node];
+			}
+		};
+	}
+
+	/**
+	 * Inner node of the tree.
+	 */
+	private class View extends Node<T> {
+
+		private final int	index;
+
+		private final int	depth;
+
+		View(int index, int depth) {
+			super();
+			this.index = index;
+			this.depth = depth;
+		}
+
+		@Override
+		public Object getData() {
+			return keys[index];
+		}
+
+		@Override
+		public List<Node<T>> getChildren() {
+			return children(index, depth);
+		}
+
+		@Override
+		public int childCount() {
+			return depth == levels ? end[index] - start[index] : childCount[index];
+		}
+
+		@Override
+		public Node<T> getChild(Object key) {
+			return child(index, depth, key);
+		}
+
+		@Override
+		public List<T> getElements() {
+			return elements(index);
+		}
+
+		@Override
+		public boolean hasKeyedChildren() {
+			return depth < levels;
+		}
+
+	}
+
+	/**
+	 * The elements below a node of the last level.
+	 */
+	private class Leaves extends AbstractList<Node<T>> {
+
+		private final int	from;
+
+		private final int	to;
+
+		Leaves(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Node<T> get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			return new Node<T>((T) elements[from + index]);
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	/**
+	 * Compares the elements by the keys of every level, in order.
+	 */
+	private class PathComparator implements Comparator<T> {
+
+		private final List<ResolverComparator>	comparators;
+
+		PathComparator(List<Resolver<T, ?>> resolvers) {
+			comparators = new ArrayList<ResolverComparator>(resolvers.size());
+			for (Resolver<T, ?> resolver : resolvers) {
+				comparators.add(new ResolverComparator(resolver));
+			}
+		}
+
+		@Override
+		public int compare(T o1, T o2) {
+			for (ResolverComparator comparator : comparators) {
+				int result = comparator.compare(o1, o2);
+				if (result != 0) {
+					return result;
+				}
+			}
+			return 0;
+		}
+	}
+
+}
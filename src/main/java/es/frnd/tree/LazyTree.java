@@ -0,0 +1,157 @@
+package es.frnd.tree;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link Tree} that groups the elements of a node only when its children
+ * are requested for the first time.
+ *
+ * Building the tree only groups the first level. The deeper levels are built
+ * as {@link #getChildren()} is called on their parents, so browsing a few
+ * branches of a large tree does not pay for the rest of it.
+ *
+ * @param <T>
+ *            the type of the elements of the tree
+ */
+public class LazyTree<T> extends Tree<T> {
+
+	private final boolean	releasable;
+
+	private final LazyNode	root;
+
+	public LazyTree(List<T> elements, List<Resolver<T, ?>> resolvers) {
+		this(elements, resolvers, false);
+	}
+
+	/**
+	 * @param elements
+	 *            the elements of the tree
+	 * @param resolvers
+	 *            the resolvers of each level
+	 * @param releasable
+	 *            if {@code true} the children computed below the first level
+	 *            are softly referenced, so they may be released under memory
+	 *            pressure and grouped again when requested
+	 */
+	public LazyTree(List<T> elements, List<Resolver<T, ?>> resolvers, boolean releasable) {
+		super();
+		this.releasable = releasable;
+		// The elements are sorted in place as levels are expanded
+		root = new LazyNode(null, new ArrayList<T>(elements), resolvers);
+		root.children = root.group(root.elements, root.resolvers);
+	}
+
+	@Override
+	public Object getData() {
+		return null;
+	}
+
+	@Override
+	public List<Node<T>> getChildren() {
+		return root.getChildren();
+	}
+
+	@Override
+	public boolean hasKeyedChildren() {
+		return root.hasKeyedChildren();
+	}
+
+	@Override
+	public List<T> getElements() {
+		return root.getElements();
+	}
+
+	/**
+	 * Returns true if the children of the node have been grouped and are still
+	 * held by the tree.
+	 *
+	 * @param node
+	 *            a node of this tree
+	 */
+	public boolean isExpanded(Node<T> node) {
+		if (node == this) {
+			return true;
+		}
+		return node instanceof LazyTree.LazyNode && ((LazyNode) node).computed() != null;
+	}
+
+	/**
+	 * Releases the children of the node, they will be grouped again the next
+	 * time they are requested.
+	 *
+	 * @param node
+	 *            a node of this tree
+	 */
+	public void collapse(Node<T> node) {
+		if (node instanceof LazyTree.LazyNode) {
+			((LazyNode) node).children = null;
+			((LazyNode) node).released = null;
+		}
+	}
+
+	private class LazyNode extends Node<T> {
+
+		private final Object					data;
+
+		private final List<T>					elements;
+
+		private final List<Resolver<T, ?>>		resolvers;
+
+		private List<Node<T>>					children;
+
+		private SoftReference<List<Node<T>>>	released;
+
+		LazyNode(Object data, List<T> elements, List<Resolver<T, ?>> resolvers) {
+			super();
+			this.data = data;
+			this.elements = elements;
+			this.resolvers = resolvers;
+		}
+
+		@Override
+		public Object getData() {
+			return data;
+		}
+
+		@Override
+		public List<Node<T>> getChildren() {
+			List<Node<T>> result = computed();
+			if (result == null) {
+				result = group(elements, resolvers);
+				if (releasable) {
+					released = new SoftReference<List<Node<T>>>(result);
+				} else {
+					children = result;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public boolean hasKeyedChildren() {
+			return !resolvers.isEmpty();
+		}
+
+		@Override
+		public List<T> getElements() {
+			return Collections.unmodifiableList(elements);
+		}
+
+		List<Node<T>> computed() {
+			if (children != null) {
+				return children;
+			}
+			return released != null ? released.get() : null;
+		}
+
+		@Override
+		Node<T> createNode(Object data, List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
+			return new LazyNode(data, elements, resolvers);
+		}
+
+	}
+
+}
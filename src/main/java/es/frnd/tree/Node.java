@@ -1,10 +1,12 @@
 package es.frnd.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
 
 public class Node<T> {
 
@@ -12,12 +14,57 @@ public class Node<T> {
 
 	private List<Node<T>>	children;
 
+	private List<T>			elements;
+
+	private boolean			keyed;
+
 	protected Node(Object data, List<T> elements, List<Resolver<T, ?>> resolvers) {
-		children = new ArrayList<Node<T>>();
+		this(data, elements, resolvers, null);
+	}
+
+	/**
+	 * @param fanout
+	 *            the number of children expected below each level, one for
+	 *            each resolver, 0 if it is not known, or {@code null}
+	 */
+	protected Node(Object data, List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
 		this.data = data;
+		this.elements = elements;
+		this.keyed = !resolvers.isEmpty();
+		children = group(elements, resolvers, fanout);
+	}
+
+	/**
+	 * Groups the elements by the first resolver creating a node for each
+	 * group, or a leaf for each element if there are no more resolvers.
+	 * 
+	 * @param elements
+	 *            the elements to group, will be sorted
+	 * @param resolvers
+	 *            the resolvers of this and the following levels
+	 * @return the list of child nodes
+	 */
+	List<Node<T>> group(List<T> elements, List<Resolver<T, ?>> resolvers) {
+		return group(elements, resolvers, null);
+	}
+
+	/**
+	 * Groups the elements as {@link #group(List, List)}, presizing the list
+	 * of children: with one leaf per element, or with the expected fanout of
+	 * the level of the first resolver. The fanout is indexed from the end, as
+	 * the list of resolvers shrinks from the start down the tree.
+	 */
+	List<Node<T>> group(List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
+		int expected = 0;
+		if (resolvers.isEmpty()) {
+			expected = elements.size();
+		} else if (fanout != null) {
+			expected = Math.min(fanout[fanout.length - resolvers.size()], elements.size());
+		}
+		List<Node<T>> children = expected > 0 ? new ArrayList<Node<T>>(expected) : new ArrayList<Node<T>>();
 
 		if (elements.isEmpty()) {
-			return;
+			return children;
 		}
 
 		if (resolvers.isEmpty()) {
@@ -40,7 +87,7 @@ public class Node<T> {
 					List<T> sublist = elements.subList(startIndex, endIndex);
 					List<Resolver<T, ?>> nextResolvers = resolvers.subList(1, resolvers.size());
 					Object childData = resolver.resolve(current);
-					children.add(new Node<T>(childData, sublist, nextResolvers));
+					children.add(createNode(childData, sublist, nextResolvers, fanout));
 					current = next;
 					startIndex = endIndex;
 				}
@@ -50,16 +97,32 @@ public class Node<T> {
 				List<T> sublist = elements.subList(startIndex, endIndex);
 				List<Resolver<T, ?>> nextResolvers = resolvers.subList(1, resolvers.size());
 				Object childData = resolver.resolve(current);
-				children.add(new Node<T>(childData, sublist, nextResolvers));
+				children.add(createNode(childData, sublist, nextResolvers, fanout));
 			}
 
 		}
+		return children;
+	}
+
+	/**
+	 * Creates the node for a group of elements.
+	 */
+	Node<T> createNode(Object data, List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
+		return new Node<T>(data, elements, resolvers, fanout);
 	}
 
 	protected Node(T data) {
 		this.data = data;
 	}
 
+	/**
+	 * Constructor for nodes that do not hold their own data and children but
+	 * compute them on demand, overriding {@link #getData()} and
+	 * {@link #getChildren()}.
+	 */
+	protected Node() {
+	}
+
 	class ResolverComparator implements Comparator<T> {
 
 		private final Resolver<T, ?>	resolver;
@@ -69,22 +132,27 @@ public class Node<T> {
 		}
 
 		@Override
-		@SuppressWarnings({ "rawtypes", "unchecked" })
 		public int compare(T o1, T o2) {
-			Comparable resolved1 = resolver.resolve(o1);
-			Comparable resolved2 = resolver.resolve(o2);
-			if (resolved1 == null && resolved2 == null) {
-				return 0;
-			} else if (resolved1 != null && resolved2 == null) {
-				return -1;
-			} else if (resolved1 == null && resolved2 != null) {
-				return 1;
-			}
-			return resolved1.compareTo(resolved2);
+			return compareKeys(resolver.resolve(o1), resolver.resolve(o2));
 		}
 
 	}
 
+	/**
+	 * Compares two keys returned by a resolver, {@code null} goes last.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static int compareKeys(Object key1, Object key2) {
+		if (key1 == null && key2 == null) {
+			return 0;
+		} else if (key1 != null && key2 == null) {
+			return -1;
+		} else if (key1 == null && key2 != null) {
+			return 1;
+		}
+		return ((Comparable) key1).compareTo(key2);
+	}
+
 	/**
 	 * Obtain the data contained on this node
 	 * 
@@ -103,6 +171,59 @@ public class Node<T> {
 		return children;
 	}
 
+	/**
+	 * Returns the elements grouped below this node, in the order of the leaves.
+	 * The list is a view of the elements the tree was built from, not a copy.
+	 * 
+	 * @return the elements of this node
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getElements() {
+		if (elements != null) {
+			return Collections.unmodifiableList(elements);
+		}
+		return Collections.singletonList((T) data);
+	}
+
+	/**
+	 * Returns the child grouping the elements with the given key, or
+	 * {@code null} if there is no such child. The children are sorted by key,
+	 * so this is a binary search.
+	 * 
+	 * @param key
+	 *            the key of the child, as returned by the resolver of its level
+	 * @return the child node or {@code null}
+	 */
+	public Node<T> getChild(Object key) {
+		if (!hasKeyedChildren()) {
+			return null;
+		}
+		List<Node<T>> children = getChildren();
+		int low = 0;
+		int high = children.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Node<T> child = children.get(mid);
+			int cmp = compareKeys(child.getData(), key);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the children of this node are groups identified by a
+	 * key, false if they are the leaf elements.
+	 */
+	public boolean hasKeyedChildren() {
+		return keyed;
+	}
+
 	/**
 	 * Count of elements.
 	 * 
@@ -121,22 +242,90 @@ public class Node<T> {
 
 	@Override
 	public String toString() {
-		return "Node [data=" + data + ", childrenCount=" + childCount() + "]";
+		return "Node [data=" + getData() + ", childrenCount=" + childCount() + "]";
 	}
 
-	String toString(int tabSize) {
-		char[] t = new char[tabSize];
-		Arrays.fill(t, '\t');
-		StringBuffer buffer = new StringBuffer();
-
-		buffer.append(new String(t) + this.toString() + "\n");
-		if (children != null) {
-			for (Node<T> c : children) {
-				buffer.append(c.toString(tabSize + 1));
+	/**
+	 * Visits this node and its descendants in depth-first pre-order. The walk
+	 * keeps its own stack, so it does not depend on the depth of the tree.
+	 * 
+	 * @param visitor
+	 *            the visitor, this node is visited at depth 0
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void depthFirst(Visitor<T> visitor) {
+		if (!visitor.visit(this, 0) || isLeaf()) {
+			return;
+		}
+		List<Node<T>>[] lists = new List[16];
+		int[] next = new int[16];
+		int top = 0;
+		lists[0] = getChildren();
+		while (top >= 0) {
+			List<Node<T>> list = lists[top];
+			if (next[top] == list.size()) {
+				lists[top] = null;
+				next[top] = 0;
+				top--;
+				continue;
+			}
+			Node<T> node = list.get(next[top]++);
+			if (visitor.visit(node, top + 1) && !node.isLeaf()) {
+				top++;
+				if (top == lists.length) {
+					lists = Arrays.copyOf(lists, top * 2);
+					next = Arrays.copyOf(next, top * 2);
+				}
+				lists[top] = node.getChildren();
 			}
 		}
+	}
 
+	/**
+	 * Visits this node and its descendants level by level.
+	 * 
+	 * @param visitor
+	 *            the visitor, this node is visited at depth 0
+	 */
+	public void breadthFirst(Visitor<T> visitor) {
+		Queue<Node<T>> queue = new ArrayDeque<Node<T>>();
+		queue.add(this);
+		int depth = 0;
+		int remaining = 1; // nodes left on the current level
+		while (!queue.isEmpty()) {
+			Node<T> node = queue.remove();
+			if (visitor.visit(node, depth) && !node.isLeaf()) {
+				queue.addAll(node.getChildren());
+			}
+			if (--remaining == 0) {
+				depth++;
+				remaining = queue.size();
+			}
+		}
+	}
+
+	String toString(int tabSize) {
+		StringBuilder buffer = new StringBuilder();
+		appendTo(buffer, tabSize);
 		return buffer.toString();
 	}
 
+	/**
+	 * Appends this node and its descendants, one per line, indented with a
+	 * tab for each level.
+	 */
+	void appendTo(final StringBuilder buffer, final int tabSize) {
+		depthFirst(new Visitor<T>() {
+
+			@Override
+			public boolean visit(Node<T> node, int depth) {
+				for (int i = 0; i < tabSize + depth; i++) {
+					buffer.append('\t');
+				}
+				buffer.append(node.toString()).append('\n');
+				return true;
+			}
+		});
+	}
+
 }
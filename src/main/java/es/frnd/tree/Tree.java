@@ -7,13 +7,67 @@ public class Tree<T> extends Node<T> {
 	protected Tree(List<T> elements, List<Resolver<T, ?>> resolvers) {
 		super(null, elements, resolvers);
 	}
+
+	/**
+	 * @param fanout
+	 *            the number of children expected below each level, one for
+	 *            each resolver, 0 if it is not known
+	 * @see TreeBuilder
+	 */
+	protected Tree(List<T> elements, List<Resolver<T, ?>> resolvers, int[] fanout) {
+		super(null, elements, resolvers, checkFanout(resolvers, fanout));
+	}
+
+	static int[] checkFanout(List<?> resolvers, int[] fanout) {
+		if (fanout.length != resolvers.size()) {
+			throw new IllegalArgumentException("Expected a fanout for each of the " + resolvers.size()
+					+ " levels: " + fanout.length);
+		}
+		for (int expected : fanout) {
+			if (expected < 0) {
+				throw new IllegalArgumentException("Negative fanout: " + expected);
+			}
+		}
+		return fanout;
+	}
+
+	/**
+	 * Constructor for trees with their own representation of the nodes.
+	 */
+	protected Tree() {
+		super();
+	}
 	
+	/**
+	 * Returns the node reached following the children with the given keys, one
+	 * for each level, or {@code null} if there is no such node.
+	 * 
+	 * @param path
+	 *            the keys of the nodes from the first level down, a
+	 *            {@code null} array being the path of a single {@code null}
+	 *            key
+	 * @return the node or {@code null}
+	 */
+	public Node<T> getNode(Object... path) {
+		if (path == null) {
+			path = new Object[] { null };
+		}
+		Node<T> node = this;
+		for (Object key : path) {
+			node = node.getChild(key);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
 	@Override
 	public String toString() {
-		StringBuffer buffer = new StringBuffer();
+		StringBuilder buffer = new StringBuilder();
 		buffer.append("ROOT\n");
 		for (Node<T> node : getChildren()) {
-			buffer.append(node.toString(1));
+			node.appendTo(buffer, 1);
 		}
 		return buffer.toString();
 	}
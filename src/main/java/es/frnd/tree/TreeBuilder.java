@@ -0,0 +1,60 @@
+package es.frnd.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds trees level by level, with the number of children expected below
+ * the nodes of each level when it is known. The lists of children of a
+ * {@link Tree} and the arrays of a {@link CompactTree} are then created with
+ * their size instead of growing while the tree is built.
+ * 
+ * <pre>
+ * Tree&lt;Person&gt; tree = new TreeBuilder&lt;Person&gt;().level(new SexResolver(), 2)
+ * 		.level(new AgeResolver(), 100).build(persons);
+ * </pre>
+ * 
+ * @param <T>
+ *            the type of the elements of the tree
+ */
+public class TreeBuilder<T> {
+
+	private final List<Resolver<T, ?>>	resolvers	= new ArrayList<Resolver<T, ?>>();
+
+	private int[]						fanout		= new int[0];
+
+	/**
+	 * Adds a level whose fanout is not known.
+	 */
+	public TreeBuilder<T> level(Resolver<T, ?> resolver) {
+		return level(resolver, 0);
+	}
+
+	/**
+	 * Adds a level.
+	 * 
+	 * @param resolver
+	 *            the resolver of the keys of the level
+	 * @param fanout
+	 *            the number of children expected below each node of the
+	 *            previous level, 0 if it is not known
+	 */
+	public TreeBuilder<T> level(Resolver<T, ?> resolver, int fanout) {
+		if (fanout < 0) {
+			throw new IllegalArgumentException("Negative fanout: " + fanout);
+		}
+		resolvers.add(resolver);
+		this.fanout = Arrays.copyOf(this.fanout, resolvers.size());
+		this.fanout[resolvers.size() - 1] = fanout;
+		return this;
+	}
+
+	public Tree<T> build(List<T> elements) {
+		return new Tree<T>(elements, new ArrayList<Resolver<T, ?>>(resolvers), fanout.clone());
+	}
+
+	public CompactTree<T> buildCompact(List<T> elements) {
+		return new CompactTree<T>(elements, new ArrayList<Resolver<T, ?>>(resolvers), fanout.clone());
+	}
+}
@@ -0,0 +1,21 @@
+package es.frnd.tree;
+
+/**
+ * Callback of the traversals of a tree.
+ *
+ * @see Node#depthFirst(Visitor)
+ * @see Node#breadthFirst(Visitor)
+ */
+public interface Visitor<T> {
+
+	/**
+	 * Visits a node.
+	 * 
+	 * @param node
+	 *            the node
+	 * @param depth
+	 *            the distance to the node where the traversal started
+	 * @return {@code false} to skip the children of the node
+	 */
+	boolean visit(Node<T> node, int depth);
+}
@@ -0,0 +1,112 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.generic.GenericMatrix;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdditiveTest {
+
+	class Parity implements Resolver<Integer, Boolean> {
+
+		public Boolean resolve(Integer number) {
+			return number % 2 == 0;
+		}
+	}
+
+	class Sign implements Resolver<Integer, Boolean> {
+
+		public Boolean resolve(Integer number) {
+			return number >= 0;
+		}
+	}
+
+	class Identity implements PropertyResolver<Integer, Integer> {
+
+		public Integer getValue(Integer number) {
+			return number;
+		}
+	}
+
+	private static final List<Integer>	NUMBERS	= Arrays.asList(2, 4, 4, 4, 5, 5, 7, 9, -3);
+
+	private <V> Matrix<Boolean, Boolean, Integer, V> matrix(Matrix.Accumulator<Integer, V> accumulator) {
+		Matrix<Boolean, Boolean, Integer, V> matrix = new GenericMatrix<Boolean, Boolean, Integer, V>(new Parity(),
+				new Sign(), accumulator);
+		matrix.putAll(NUMBERS);
+		return matrix;
+	}
+
+	@Test
+	public void sumAndCount() {
+		Matrix<Boolean, Boolean, Integer, Double> sums = matrix(new Sum<Integer>(new Identity()));
+		assertEquals(14.0, sums.get(true, true).getValue(), 0);
+		assertEquals(40.0, sums.totalColumn(true).getValue(), 0);
+		sums.remove(4);
+		assertEquals(10.0, sums.get(true, true).getValue(), 0);
+
+		Matrix<Boolean, Boolean, Integer, Long> counts = matrix(new Count<Integer>());
+		assertEquals(Long.valueOf(4), counts.get(true, true).getValue());
+		assertEquals(Long.valueOf(5), counts.totalRow(false).getValue());
+	}
+
+	@Test
+	public void minAndMax() {
+		Matrix<Boolean, Boolean, Integer, Double> mins = matrix(new Min<Integer>(new Identity()));
+		assertEquals(5.0, mins.get(false, true).getValue(), 0);
+		mins.remove(7);
+		assertEquals(5.0, mins.get(false, true).getValue(), 0);
+		mins.remove(5);
+		assertEquals(5.0, mins.get(false, true).getValue(), 0);
+		mins.remove(5);
+		assertEquals(9.0, mins.get(false, true).getValue(), 0);
+
+		Matrix<Boolean, Boolean, Integer, Double> maxs = matrix(new Max<Integer>(new Identity()));
+		assertEquals(9.0, maxs.totalColumn(true).getValue(), 0);
+		maxs.remove(9);
+		assertEquals(7.0, maxs.totalColumn(true).getValue(), 0);
+
+		final int[] accumulations = new int[1];
+		Matrix<Boolean, Boolean, Integer, Double> lazy = matrix(new Max<Integer>(new Identity()) {
+
+			@Override
+			public Double accumulate(List<Integer> items) {
+				accumulations[0]++;
+				return super.accumulate(items);
+			}
+		});
+		lazy.removeAll(Arrays.asList(9, 7));
+		lazy.remove(5);
+		assertEquals(0, accumulations[0]);
+		assertEquals(5.0, lazy.get(false, true).getValue(), 0);
+		assertEquals(5.0, lazy.get(false, true).getValue(), 0);
+		assertEquals(1, accumulations[0]);
+	}
+
+	@Test
+	public void meanAndVariance() {
+		Matrix<Boolean, Boolean, Integer, Mean.Value> means = matrix(new Mean<Integer>(new Identity()));
+		assertEquals(3.5, means.get(true, true).getValue().doubleValue(), 1e-9);
+		assertEquals(4.6, means.totalRow(false).getValue().doubleValue(), 1e-9);
+
+		Variance<Integer> accumulator = new Variance<Integer>(new Identity());
+		Matrix<Boolean, Boolean, Integer, Variance.Value> variances = matrix(accumulator);
+		Variance.Value positive = variances.totalColumn(true).getValue();
+		assertEquals(5.0, positive.mean(), 1e-9);
+		assertEquals(4.0, positive.variance(), 1e-9);
+		assertEquals(2.0, positive.standardDeviation(), 1e-9);
+
+		variances.remove(9);
+		assertEquals(31.0 / 7, variances.totalColumn(true).getValue().mean(), 1e-9);
+		assertEquals(accumulator.accumulate(Arrays.asList(2, 4, 4, 4, 5, 5, 7)).variance(),
+				accumulator.merge(accumulator.accumulate(Arrays.asList(2, 4, 4)),
+						accumulator.accumulate(Arrays.asList(4, 5, 5, 7))).variance(), 1e-9);
+		assertEquals(accumulator.accumulate(Arrays.asList(2, 4, 4, 4, 5, 5, 7)).variance(),
+				variances.totalColumn(true).getValue().variance(), 1e-9);
+	}
+}
@@ -0,0 +1,202 @@
+package es.frnd.matrix.additive;
+
+import es.frnd.matrix.Change;
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.MatrixListener;
+import es.frnd.matrix.cube.Cube;
+import es.frnd.matrix.generic.GenericMatrix;
+import es.frnd.matrix.versioned.VersionedMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SketchTest {
+
+	class Parity implements Resolver<Integer, Boolean> {
+
+		public Boolean resolve(Integer number) {
+			return number % 2 == 0;
+		}
+	}
+
+	class Size implements Resolver<Integer, Integer> {
+
+		public Integer resolve(Integer number) {
+			return number < 5000 ? 0 : 1;
+		}
+	}
+
+	class Identity implements PropertyResolver<Integer, Integer> {
+
+		public Integer getValue(Integer number) {
+			return number;
+		}
+	}
+
+	/**
+	 * Numbers 0 to 9999, twice each one.
+	 */
+	private List<Integer> numbers() {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			numbers.add(i);
+			numbers.add(i);
+		}
+		Collections.shuffle(numbers, new Random(1));
+		return numbers;
+	}
+
+	@Test
+	public void hyperLogLog() {
+		GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch> matrix = new GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch>(
+				new Parity(), new Size(), new HyperLogLog<Integer>(new Identity()));
+		matrix.putAll(numbers());
+
+		assertEquals(2500, matrix.get(true, 0).getValue().estimate(), 2500 * 0.05);
+		assertEquals(5000, matrix.totalRow(true).getValue().estimate(), 5000 * 0.05);
+
+		GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch> other = new GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch>(
+				new Parity(), new Size(), new HyperLogLog<Integer>(new Identity()));
+		other.putAll(numbers());
+		HyperLogLog<Integer> accumulator = new HyperLogLog<Integer>(new Identity());
+		HyperLogLog.Sketch before = accumulator.copy(matrix.get(true, 0).getValue());
+		matrix.merge(other);
+		assertEquals(before, matrix.get(true, 0).getValue());
+	}
+
+	@Test
+	public void quantiles() {
+		QuantileSketch<Integer> accumulator = new QuantileSketch<Integer>(new Identity());
+		QuantileSketch.Sketch sketch = accumulator.accumulate(numbers());
+
+		assertEquals(20000, sketch.count());
+		assertEquals(5000, sketch.quantile(0.5), 10000 * 0.02);
+		assertEquals(9900, sketch.quantile(0.99), 10000 * 0.02);
+		assertEquals(0, sketch.quantile(0), 10000 * 0.02);
+
+		// Into a copy of the first sketch, then into the copy itself
+		QuantileSketch.Sketch copy = accumulator.merge(null, sketch);
+		assertNotSame(sketch, copy);
+		QuantileSketch.Sketch merged = accumulator.merge(copy, sketch);
+		assertSame(copy, merged);
+		assertEquals(40000, merged.count());
+		assertEquals(5000, merged.quantile(0.5), 10000 * 0.02);
+		assertEquals(20000, sketch.count());
+		assertEquals(80000, accumulator.merge(merged, merged).count());
+		assertTrue(Double.isNaN(accumulator.accumulate(new ArrayList<Integer>()).quantile(0.5)));
+	}
+
+	@Test
+	public void countMin() {
+		Matrix<Boolean, Integer, Integer, CountMinSketch.Sketch> matrix = new GenericMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch>(
+				new Parity(), new Size(), new CountMinSketch<Integer>(new Identity()));
+		matrix.putAll(numbers());
+
+		CountMinSketch.Sketch sketch = matrix.get(true, 0).getValue();
+		assertEquals(5000, sketch.count());
+		assertTrue(sketch.frequency(42) >= 2);
+		assertTrue(sketch.frequency(42) <= 2 + 5000 * Math.E / CountMinSketch.DEFAULT_WIDTH);
+
+		matrix.remove(42);
+		assertEquals(4999, matrix.get(true, 0).getValue().count());
+		assertEquals(9999, matrix.totalRow(true).getValue().count());
+	}
+
+	@Test
+	public void freezeThenModify() {
+		GenericMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch> counts = new GenericMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch>(
+				new Parity(), new Size(), new CountMinSketch<Integer>(new Identity()));
+		counts.putAll(numbers());
+		Matrix<Boolean, Integer, Integer, CountMinSketch.Sketch> frozenCounts = counts.freeze();
+		counts.put(42);
+		counts.remove(44);
+
+		assertEquals(5000, frozenCounts.get(true, 0).getValue().count());
+		assertEquals(10000, frozenCounts.totalRow(true).getValue().count());
+		assertEquals(5000, counts.get(true, 0).getValue().count());
+
+		HyperLogLog<Integer> accumulator = new HyperLogLog<Integer>(new Identity());
+		GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch> distinct = new GenericMatrix<Boolean, Integer, Integer, HyperLogLog.Sketch>(
+				new Parity(), new Size(), accumulator);
+		distinct.putAll(numbers());
+		Matrix<Boolean, Integer, Integer, HyperLogLog.Sketch> frozenDistinct = distinct.freeze();
+		HyperLogLog.Sketch before = accumulator.copy(distinct.get(true, 1).getValue());
+		for (int i = 10000; i < 20000; i += 2) {
+			distinct.put(i);
+		}
+
+		assertEquals(before, frozenDistinct.get(true, 1).getValue());
+		assertFalse(before.equals(distinct.get(true, 1).getValue()));
+
+		GenericMatrix<Boolean, Integer, Integer, QuantileSketch.Sketch> quantiles = new GenericMatrix<Boolean, Integer, Integer, QuantileSketch.Sketch>(
+				new Parity(), new Size(), new QuantileSketch<Integer>(new Identity()));
+		quantiles.putAll(numbers());
+		Matrix<Boolean, Integer, Integer, QuantileSketch.Sketch> frozenQuantiles = quantiles.freeze();
+		quantiles.put(0);
+
+		assertEquals(5000, frozenQuantiles.get(true, 0).getValue().count());
+		assertEquals(5001, quantiles.get(true, 0).getValue().count());
+	}
+
+	@Test
+	public void updatedInPlace() {
+		final int[] accumulations = new int[1];
+		CountMinSketch<Integer> accumulator = new CountMinSketch<Integer>(new Identity()) {
+
+			@Override
+			public CountMinSketch.Sketch accumulate(List<Integer> items) {
+				accumulations[0]++;
+				return super.accumulate(items);
+			}
+		};
+		GenericMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch> counts = new GenericMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch>(
+				new Parity(), new Size(), accumulator);
+		counts.putAll(numbers());
+		final List<Change<Boolean, Integer, CountMinSketch.Sketch>> changes = new ArrayList<Change<Boolean, Integer, CountMinSketch.Sketch>>();
+		counts.addListener(new MatrixListener<Boolean, Integer, CountMinSketch.Sketch>() {
+
+			public void changed(List<Change<Boolean, Integer, CountMinSketch.Sketch>> batch) {
+				changes.addAll(batch);
+			}
+		});
+		CountMinSketch.Sketch sketch = counts.get(true, 0).getValue();
+		counts.put(42);
+		assertSame(sketch, counts.get(true, 0).getValue());
+		assertEquals(5001, sketch.count());
+		// The column total, the row total and the cell, with a copy of the old value
+		assertEquals(3, changes.size());
+		assertEquals(Change.Kind.CELL, changes.get(2).getKind());
+		assertEquals(5000, changes.get(2).getOldValue().count());
+		assertSame(sketch, changes.get(2).getNewValue());
+
+		List<Resolver<Integer, ?>> resolvers = new ArrayList<Resolver<Integer, ?>>();
+		resolvers.add(new Parity());
+		resolvers.add(new Size());
+		Cube<Integer, CountMinSketch.Sketch> cube = new Cube<Integer, CountMinSketch.Sketch>(resolvers, accumulator,
+				new int[] { 0 });
+		cube.putAll(numbers());
+		cube.remove(42);
+		assertEquals(4999, cube.get(true, 0).getValue().count());
+		assertEquals(9999, cube.marginal(0).get(Cube.Key.of(true)).getValue().count());
+
+		VersionedMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch> versioned = new VersionedMatrix<Boolean, Integer, Integer, CountMinSketch.Sketch>(
+				new Parity(), new Size(), accumulator);
+		versioned.putAll(numbers());
+		Matrix<Boolean, Integer, Integer, CountMinSketch.Sketch> snapshot = versioned.snapshot();
+		versioned.put(42);
+		versioned.remove(44);
+		versioned.remove(44);
+		assertEquals(4999, versioned.get(true, 0).getValue().count());
+		assertEquals(5000, snapshot.get(true, 0).getValue().count());
+		assertEquals(10000, snapshot.totalRow(true).getValue().count());
+
+		// Every change updated the sketches, none accumulated the items
+		assertEquals(0, accumulations[0]);
+	}
+}
@@ -0,0 +1,92 @@
+package es.frnd.matrix.cube;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CubeTest {
+
+    class FirstLetter implements Resolver<String, Character> {
+
+        public Character resolve(String word) {
+            return word.charAt(0);
+        }
+    }
+
+    class Length implements Resolver<String, Integer> {
+
+        public Integer resolve(String word) {
+            return word.length();
+        }
+    }
+
+    class LastLetter implements Resolver<String, Character> {
+
+        public Character resolve(String word) {
+            return word.charAt(word.length() - 1);
+        }
+    }
+
+    class CountAccumulator implements Matrix.Accumulator<String, Integer> {
+
+        public Integer accumulate(List<String> items) {
+            return items.size();
+        }
+    }
+
+    private Cube<String, Integer> cube() {
+        List<Resolver<String, ?>> resolvers = new ArrayList<Resolver<String, ?>>();
+        resolvers.add(new FirstLetter());
+        resolvers.add(new Length());
+        resolvers.add(new LastLetter());
+        return new Cube<String, Integer>(resolvers, new CountAccumulator(), new int[] {0}, new int[] {1},
+                new int[] {1, 0}, new int[] {2});
+    }
+
+    @Test
+    public void marginals() {
+        Cube<String, Integer> cube = cube();
+        cube.putAll(Arrays.asList("ant", "bee", "bat", "bird", "bat"));
+
+        assertEquals(5, cube.size());
+        assertEquals(Integer.valueOf(2), cube.get('b', 3, 't').getValue());
+        assertNull(cube.get('a', 4, 't'));
+        assertEquals(4, cube.cells().size());
+        assertEquals(Integer.valueOf(4), cube.marginal(0).get(Cube.Key.of('b')).getValue());
+        assertEquals(Integer.valueOf(3), cube.marginal(0, 1).get(Cube.Key.of('b', 3)).getValue());
+        assertEquals(Integer.valueOf(3), cube.marginal(2).get(Cube.Key.of('t')).getValue());
+        assertEquals(Integer.valueOf(5), cube.getTotal().getValue());
+
+        cube.remove("ant");
+        cube.remove("cat");
+        assertEquals(4, cube.size());
+        assertNull(cube.marginal(0).get(Cube.Key.of('a')));
+        assertEquals(Integer.valueOf(2), cube.marginal(2).get(Cube.Key.of('t')).getValue());
+
+        try {
+            cube.marginal(0, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void pivot() {
+        Cube<String, Integer> cube = cube();
+        cube.putAll(Arrays.asList("ant", "bee", "bat", "bird"));
+
+        Matrix<Integer, Character, String, Integer> pivot = cube.pivot(1, 0);
+        assertEquals(4, pivot.size());
+        assertEquals(Integer.valueOf(2), pivot.get(3, 'b').getValue());
+        assertEquals(Integer.valueOf(3), pivot.totalRow(3).getValue());
+        assertEquals(Integer.valueOf(3), pivot.totalColumn('b').getValue());
+        assertFalse(pivot.contains(4, 'a'));
+    }
+}
@@ -0,0 +1,168 @@
+package es.frnd.matrix.generic;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.MatrixBuilder;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class SpillingItemStoreTest {
+
+    class StringSerializer implements Serializer<String> {
+
+        public void write(String item, DataOutput out) throws IOException {
+            out.writeUTF(item);
+        }
+
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+
+    class FirstLetter implements Resolver<String, Character> {
+
+        public Character resolve(String word) {
+            return word.charAt(0);
+        }
+    }
+
+    class Length implements Resolver<String, Integer> {
+
+        public Integer resolve(String word) {
+            return word.length();
+        }
+    }
+
+    class CountAccumulator implements Matrix.Accumulator<String, Integer> {
+
+        public Integer accumulate(List<String> items) {
+            return items.size();
+        }
+    }
+
+    @Test
+    public void testList() throws IOException {
+        SpillingItemStore<String> store = new SpillingItemStore<String>(new StringSerializer(), null, 64, 3);
+        try {
+            List<String> items = store.newItems(0);
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                items.add("item" + i);
+                expected.add("item" + i);
+            }
+            assertEquals(expected, items);
+            assertTrue(store.getSegments() > 1);
+            assertTrue(store.getSpilledBytes() > 0);
+
+            // From a full block, the last item of a block, a pending one
+            assertTrue(items.remove("item4"));
+            expected.remove("item4");
+            items.remove(2);
+            expected.remove(2);
+            items.remove(items.size() - 1);
+            expected.remove(expected.size() - 1);
+            assertEquals(expected, items);
+            assertEquals("item10", items.get(8));
+
+            // Emptying a block
+            items.removeAll(Arrays.asList("item0", "item1"));
+            expected.removeAll(Arrays.asList("item0", "item1"));
+            assertEquals(expected, items);
+
+            items.clear();
+            assertTrue(items.isEmpty());
+            items.add("again");
+            assertEquals(Arrays.asList("again"), items);
+        } finally {
+            store.close();
+        }
+        assertEquals(0, store.getSegments());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        File directory = File.createTempFile("items", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        SpillingItemStore<String> store = new SpillingItemStore<String>(new StringSerializer(), directory, 64, 2);
+        List<String> items = store.newItems(0);
+        items.addAll(Arrays.asList("a", "b", "c"));
+        assertEquals(1, directory.list().length);
+
+        store.close();
+        assertEquals(0, directory.list().length);
+        assertTrue(directory.delete());
+        try {
+            items.get(0);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMatrix() throws IOException {
+        List<String> words = Arrays.asList("apple", "avocado", "banana", "blueberry", "cherry", "apricot", "bean",
+                "corn", "almond", "beet", "carrot", "acorn");
+        SpillingItemStore<String> store = new SpillingItemStore<String>(new StringSerializer(), null, 1024, 2);
+        try {
+            GenericMatrix<Character, Integer, String, Integer> spilled = new GenericMatrix<Character, Integer,
+                    String, Integer>(new FirstLetter(), new Length(), new CountAccumulator(), store);
+            GenericMatrix<Character, Integer, String, Integer> heap = new GenericMatrix<Character, Integer,
+                    String, Integer>(new FirstLetter(), new Length(), new CountAccumulator());
+            spilled.putAll(words);
+            heap.putAll(words);
+            spilled.remove("apricot");
+            heap.remove("apricot");
+
+            assertSame(store, ((HashStorage<?, ?, String, ?>) spilled.getStorage()).getItemStore());
+            assertEquals(heap.size(), spilled.size());
+            assertEquals(new ArrayList<String>(heap.getItems()), new ArrayList<String>(spilled.getItems()));
+            for (Character row : heap.rowKeySet()) {
+                assertEquals(heap.totalRow(row).getItems(), spilled.totalRow(row).getItems());
+                for (Integer column : heap.row(row).keySet()) {
+                    assertEquals(heap.get(row, column).getItems(), spilled.get(row, column).getItems());
+                    assertEquals(heap.get(row, column).getValue(), spilled.get(row, column).getValue());
+                }
+            }
+            assertEquals(Integer.valueOf(4), spilled.totalRow('a').getValue());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        List<String> words = Arrays.asList("apple", "avocado", "banana", "blueberry", "cherry", "corn");
+        SpillingItemStore<String> store = new SpillingItemStore<String>(new StringSerializer(), null, 1024, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MatrixBuilder<Character, Integer, String, Integer> builder = new MatrixBuilder<Character, Integer,
+                    String, Integer>(new FirstLetter(), new Length(), new CountAccumulator()).itemStore(store);
+            try {
+                builder.parallel(executor, 2).build(words);
+                fail();
+            } catch (IllegalStateException e) {
+                // Expected, the shards would share the store
+            }
+            assertEquals(0, store.getSegments());
+
+            Matrix<Character, Integer, String, Integer> matrix = builder.sequential().build(words);
+            assertEquals(Integer.valueOf(2), matrix.totalRow('a').getValue());
+            assertTrue(store.getSegments() > 0);
+        } finally {
+            executor.shutdown();
+            store.close();
+        }
+    }
+}
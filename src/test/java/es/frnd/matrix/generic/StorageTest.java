@@ -0,0 +1,146 @@
+package es.frnd.matrix.generic;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Accumulator;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.Selection;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StorageTest {
+
+    class FirstLetter implements Resolver<String, Character> {
+
+        public Character resolve(String word) {
+            return word.charAt(0);
+        }
+    }
+
+    class Length implements Resolver<String, Integer> {
+
+        public Integer resolve(String word) {
+            return word.length();
+        }
+    }
+
+    class CountAccumulator implements Matrix.Accumulator<String, Integer> {
+
+        public Integer accumulate(List<String> items) {
+            return items.size();
+        }
+    }
+
+    /*
+     * Cell accumulated again on each change
+     */
+    class PlainCell implements Matrix.Cell<String, Integer> {
+
+        final Accumulator<String, Integer> accumulator;
+        final List<String> items = new ArrayList<String>();
+        Integer value;
+
+        PlainCell(Accumulator<String, Integer> accumulator) {
+            this.accumulator = accumulator;
+        }
+
+        public Integer getValue() {
+            return value;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void accumulate() {
+            value = accumulator.accumulate(items);
+        }
+
+        public void clear() {
+            items.clear();
+            value = null;
+        }
+    }
+
+    /*
+     * Keeps the keys in insertion order, recording the expected columns
+     */
+    class LinkedStorage implements Storage<Character, Integer, String, Integer> {
+
+        final List<Integer> expectedColumns = new ArrayList<Integer>();
+        final List<Integer> expectedItems = new ArrayList<Integer>();
+        int expectedRows = -1;
+
+        public Map<Character, Map<Integer, Matrix.Cell<String, Integer>>> newRows(int expectedRows) {
+            this.expectedRows = expectedRows;
+            return new LinkedHashMap<Character, Map<Integer, Matrix.Cell<String, Integer>>>();
+        }
+
+        public Map<Integer, Matrix.Cell<String, Integer>> newRow(int expectedColumns) {
+            this.expectedColumns.add(expectedColumns);
+            return new LinkedHashMap<Integer, Matrix.Cell<String, Integer>>();
+        }
+
+        public Map<Integer, Matrix.Cell<String, Integer>> newColumnTotals(int expectedColumns) {
+            return new LinkedHashMap<Integer, Matrix.Cell<String, Integer>>();
+        }
+
+        public Map<Character, Matrix.Cell<String, Integer>> newRowTotals(int expectedRows) {
+            return new LinkedHashMap<Character, Matrix.Cell<String, Integer>>();
+        }
+
+        public Matrix.Cell<String, Integer> newCell(Accumulator<String, Integer> accumulator, int expectedItems) {
+            this.expectedItems.add(expectedItems);
+            return new PlainCell(accumulator);
+        }
+
+        public List<String> newItems(int expectedItems) {
+            return new ArrayList<String>();
+        }
+    }
+
+    @Test
+    public void testStorage() {
+        LinkedStorage storage = new LinkedStorage();
+        GenericMatrix<Character, Integer, String, Integer> matrix = new GenericMatrix<Character, Integer, String,
+                Integer>(new FirstLetter(), new Length(), new CountAccumulator(), storage);
+        matrix.putAll(Arrays.asList("cherry", "apple", "corn", "banana", "carrot", "avocado"));
+        matrix.remove("carrot");
+
+        assertSame(storage, matrix.getStorage());
+        assertEquals(Arrays.asList('c', 'a', 'b'), new ArrayList<Character>(matrix.rowMap().keySet()));
+        assertEquals(Arrays.asList(6, 4), new ArrayList<Integer>(matrix.row('c').keySet()));
+        assertTrue(matrix.get('c', 6) instanceof PlainCell);
+        assertEquals(Integer.valueOf(1), matrix.get('c', 6).getValue());
+        assertEquals(Integer.valueOf(2), matrix.totalRow('c').getValue());
+        assertEquals(Integer.valueOf(2), matrix.totalColumn(6).getValue());
+        assertEquals(Integer.valueOf(5), matrix.aggregate(Selection.<Character>all(), Selection.<Integer>all()).getValue());
+        // New rows expect the columns known, including the one of their first item
+        assertEquals(Arrays.asList(1, 2, 3), storage.expectedColumns);
+    }
+
+    @Test
+    public void testCapacity() {
+        LinkedStorage storage = new LinkedStorage();
+        GenericMatrix<Character, Integer, String, Integer> matrix = new GenericMatrix<Character, Integer, String,
+                Integer>(new FirstLetter(), new Length(), new CountAccumulator(), storage,
+                new Capacity().rows(3).columns(4).items(120));
+        matrix.putAll(Arrays.asList("cherry", "apple"));
+
+        assertEquals(3, storage.expectedRows);
+        assertEquals(Arrays.asList(4, 4), storage.expectedColumns);
+        // The total, then the column total, the row total and the cell of each item
+        assertEquals(Arrays.asList(0, 30, 40, 10, 30, 40, 10), storage.expectedItems);
+        assertEquals(0, new Capacity().rows(3).items(120).getItemsPerCell());
+        assertEquals(1, new Capacity().rows(300).columns(4).items(120).getItemsPerCell());
+        assertEquals(40, new Capacity().rows(3).items(120).getItemsPerRow());
+        assertEquals(0, new Capacity().rows(3).items(120).getItemsPerColumn());
+        assertEquals(0, new Capacity().rows(50).columns(4).getItemsPerRow());
+    }
+}
@@ -0,0 +1,106 @@
+package es.frnd.matrix.hierarchy;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalMatrixTest {
+
+    /**
+     * Sales as "city:product".
+     */
+    class City implements Resolver<String, String> {
+
+        public String resolve(String sale) {
+            return sale.substring(0, sale.indexOf(':'));
+        }
+    }
+
+    class Product implements Resolver<String, String> {
+
+        public String resolve(String sale) {
+            return sale.substring(sale.indexOf(':') + 1);
+        }
+    }
+
+    class Places implements Hierarchy<String> {
+
+        private final Map<String, String> parents = new HashMap<String, String>();
+
+        Places() {
+            parents.put("Vigo", "Galicia");
+            parents.put("Lugo", "Galicia");
+            parents.put("Bilbao", "Euskadi");
+            parents.put("Galicia", "Spain");
+            parents.put("Euskadi", "Spain");
+        }
+
+        public String parent(String place) {
+            return parents.get(place);
+        }
+    }
+
+    class CountAccumulator implements Matrix.MergeableAccumulator<String, Integer> {
+
+        public Integer accumulate(List<String> items) {
+            return items.size();
+        }
+
+        public Integer merge(Integer value1, Integer value2) {
+            return value1 == null ? value2 : value2 == null ? value1 : value1 + value2;
+        }
+    }
+
+    private HierarchicalMatrix<String, String, String, Integer> matrix() {
+        return new HierarchicalMatrix<String, String, String, Integer>(new City(), new Places(), 3, new Product(),
+                null, 1, new CountAccumulator());
+    }
+
+    @Test
+    public void rollUp() {
+        HierarchicalMatrix<String, String, String, Integer> matrix = matrix();
+        matrix.putAll(Arrays.asList("Vigo:wine", "Lugo:wine", "Lugo:cheese", "Bilbao:wine"));
+
+        assertEquals(Integer.valueOf(1), matrix.get("Vigo", "wine").getValue());
+        Matrix<String, String, String, Integer> regions = matrix.level(1, 0);
+        assertEquals(Integer.valueOf(2), regions.get("Galicia", "wine").getValue());
+        assertEquals(Integer.valueOf(3), regions.totalRow("Galicia").getValue());
+        assertEquals(Integer.valueOf(3), regions.totalColumn("wine").getValue());
+        Matrix<String, String, String, Integer> countries = matrix.level(2, 0);
+        assertEquals(Integer.valueOf(3), countries.get("Spain", "wine").getValue());
+        assertEquals(1, countries.rowKeySet().size());
+        assertSame(matrix, matrix.level(0, 0));
+
+        matrix.remove("Vigo:wine");
+        assertFalse(matrix.containsRow("Vigo"));
+        assertEquals(Integer.valueOf(1), regions.get("Galicia", "wine").getValue());
+        assertEquals(Integer.valueOf(2), countries.get("Spain", "wine").getValue());
+
+        try {
+            regions.put("Vigo:wine");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void merge() {
+        HierarchicalMatrix<String, String, String, Integer> matrix = matrix();
+        matrix.put("Vigo:wine");
+        HierarchicalMatrix<String, String, String, Integer> other = matrix();
+        other.putAll(Arrays.asList("Lugo:wine", "Bilbao:cheese"));
+
+        matrix.merge(other);
+        assertEquals(3, matrix.size());
+        assertEquals(Integer.valueOf(2), matrix.level(1, 0).get("Galicia", "wine").getValue());
+        assertEquals(Integer.valueOf(3), matrix.level(2, 0).totalRow("Spain").getValue());
+    }
+}
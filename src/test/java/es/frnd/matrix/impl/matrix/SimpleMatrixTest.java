@@ -1,15 +1,36 @@
 package es.frnd.matrix.impl.matrix;
 
+import es.frnd.matrix.Change;
+import es.frnd.matrix.ColumnarWriter;
+import es.frnd.matrix.Footprint;
+import es.frnd.matrix.Matrices;
 import es.frnd.matrix.Matrix;
 import es.frnd.matrix.Matrix.Cell;
 import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.matrix.MatrixBuilder;
+import es.frnd.matrix.MatrixListener;
+import es.frnd.matrix.MatrixWriter;
+import es.frnd.matrix.Selection;
+import es.frnd.matrix.SummedAreaTable;
+import es.frnd.matrix.TopK;
 import es.frnd.matrix.generic.GenericMatrix;
+import es.frnd.matrix.generic.Capacity;
+import es.frnd.matrix.generic.SortedMatrix;
+import es.frnd.matrix.versioned.VersionedMatrix;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -432,4 +453,486 @@ public class SimpleMatrixTest {
         assertEquals(2, totalColumn.getItems().size());
         assertEquals(2, totalRow.getItems().size());
     }
+
+    @Test
+    public void testMerge() throws Exception {
+        List<Matrix<Sex, LegalDOBStatus, Person, Integer>> shards;
+        Matrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        shards = new ArrayList<Matrix<Sex, LegalDOBStatus, Person, Integer>>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                    new DateResolver(), new CountAccumulator()));
+        }
+        shards.get(0).put(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        shards.get(1).put(new Person("Pepe", formatter.parse("11-04-1978"), Sex.MALE));
+        shards.get(1).put(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        shards.get(2).put(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+
+        matrix = Matrices.merge(shards);
+
+        assertEquals(4, matrix.size());
+        assertEquals(new Integer(2), matrix.get(Sex.MALE, LegalDOBStatus.ADULTHOOD).getValue());
+        assertEquals(new Integer(1), matrix.get(Sex.FEMALE, LegalDOBStatus.CHILDHOOD).getValue());
+        assertEquals(new Integer(2), matrix.totalRow(Sex.FEMALE).getValue());
+        assertEquals(new Integer(3), matrix.totalColumn(LegalDOBStatus.ADULTHOOD).getValue());
+        assertEquals(3, matrix.totalColumn(LegalDOBStatus.ADULTHOOD).getItems().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeItself() throws Exception {
+        Matrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+
+        matrix = new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(), new DateResolver(),
+                new CountAccumulator());
+        matrix.put(new Person("Fernando", new SimpleDateFormat("dd-MM-yyyy").parse("11-04-1979"), Sex.MALE));
+
+        matrix.merge(matrix);
+    }
+
+    @Test
+    public void testFreeze() throws Exception {
+        List<Person> persons;
+        GenericMatrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+        Matrix<Sex, LegalDOBStatus, Person, Integer> frozen;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lolo", formatter.parse("18-12-1980"), null));
+
+        matrix = new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        frozen = matrix.freeze();
+        matrix.put(new Person("Pepe", formatter.parse("11-04-1978"), Sex.MALE));
+
+        assertEquals(4, frozen.size());
+        assertEquals(Arrays.asList(Sex.MALE, Sex.FEMALE, null), new ArrayList<Sex>(frozen.rowKeySet()));
+        assertEquals(Arrays.asList(LegalDOBStatus.CHILDHOOD, LegalDOBStatus.ADULTHOOD),
+                new ArrayList<LegalDOBStatus>(frozen.columnKeySet()));
+        assertEquals(new Integer(1), frozen.get(Sex.MALE, LegalDOBStatus.ADULTHOOD).getValue());
+        assertNull(frozen.get(Sex.MALE, LegalDOBStatus.CHILDHOOD).getValue());
+        assertEquals(new Integer(2), frozen.totalRow(Sex.FEMALE).getValue());
+        assertEquals(new Integer(3), frozen.totalColumn(LegalDOBStatus.ADULTHOOD).getValue());
+        assertEquals(3, frozen.column(LegalDOBStatus.ADULTHOOD).size());
+        assertEquals(1, frozen.row(Sex.MALE).size());
+        assertEquals(Arrays.asList(LegalDOBStatus.CHILDHOOD, LegalDOBStatus.ADULTHOOD),
+                new ArrayList<LegalDOBStatus>(frozen.row(Sex.FEMALE).keySet()));
+        assertEquals(4, frozen.cellSet().size());
+
+        try {
+            frozen.put(persons.get(0));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSortedMatrix() throws Exception {
+        List<Person> persons;
+        SortedMatrix<String, LegalDOBStatus, Person, Integer> matrix;
+        Matrix<String, LegalDOBStatus, Person, Integer> range;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Pepe", formatter.parse("11-04-1978"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lolo", formatter.parse("18-12-1980"), null));
+
+        matrix = new SortedMatrix<String, LegalDOBStatus, Person, Integer>(new Resolver<Person, String>() {
+
+            public String resolve(Person person) {
+                return person.name;
+            }
+        }, new DateResolver(), new CountAccumulator(), null, Collections.<LegalDOBStatus>reverseOrder());
+        matrix.putAll(persons);
+
+        assertEquals(Arrays.asList("Fernando", "Isabel", "Larisa", "Lolo", "Pepe"),
+                new ArrayList<String>(matrix.rowKeySet()));
+        assertEquals(Arrays.asList(LegalDOBStatus.ADULTHOOD, LegalDOBStatus.CHILDHOOD),
+                new ArrayList<LegalDOBStatus>(matrix.columnKeySet()));
+
+        range = matrix.subMatrix("Isabel", "Lolo", LegalDOBStatus.ADULTHOOD, LegalDOBStatus.ADULTHOOD);
+        assertEquals(Arrays.asList("Isabel", "Lolo"), new ArrayList<String>(range.rowKeySet()));
+        assertEquals(Arrays.asList(LegalDOBStatus.ADULTHOOD), new ArrayList<LegalDOBStatus>(range.columnKeySet()));
+        assertEquals(2, range.size());
+        assertFalse(range.contains("Larisa", LegalDOBStatus.CHILDHOOD));
+        assertEquals(new Integer(2), range.totalColumn(LegalDOBStatus.ADULTHOOD).getValue());
+        assertNull(range.totalColumn(LegalDOBStatus.CHILDHOOD));
+        assertEquals(new Integer(1), range.totalRow("Isabel").getValue());
+
+        matrix.put(new Person("Juan", formatter.parse("01-01-1990"), Sex.MALE));
+        assertEquals(3, range.size());
+        assertEquals(new Integer(3), range.totalColumn(LegalDOBStatus.ADULTHOOD).getValue());
+
+        try {
+            range.put(persons.get(0));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        range = matrix.subMatrix("Lolo", "Isabel", LegalDOBStatus.ADULTHOOD, LegalDOBStatus.ADULTHOOD);
+        assertTrue(range.isEmpty());
+
+        range = matrix.subMatrix(Selection.range("Lolo", "Isabel", Collections.<String>reverseOrder()),
+                Selection.<LegalDOBStatus>all());
+        assertEquals(Arrays.asList("Isabel", "Juan", "Larisa", "Lolo"), new ArrayList<String>(range.rowKeySet()));
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        List<Person> persons;
+        SortedMatrix<String, LegalDOBStatus, Person, Integer> matrix;
+        Matrix<String, LegalDOBStatus, Person, Integer> selection;
+        SummedAreaTable<String, LegalDOBStatus> table;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Pepe", formatter.parse("11-04-1978"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lolo", formatter.parse("18-12-1980"), null));
+
+        matrix = new SortedMatrix<String, LegalDOBStatus, Person, Integer>(new Resolver<Person, String>() {
+
+            public String resolve(Person person) {
+                return person.name;
+            }
+        }, new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        assertEquals(new Integer(2), matrix.aggregate(Selection.keys(Arrays.asList("Isabel", "Pepe", "Juan")),
+                Selection.<LegalDOBStatus>all()).getValue());
+        assertEquals(new Integer(2), matrix.aggregate(Selection.range("F", "L", null),
+                Selection.<LegalDOBStatus>all()).getValue());
+        assertEquals(0, matrix.aggregate(Selection.keys(Arrays.asList("Larisa")),
+                Selection.keys(Arrays.asList(LegalDOBStatus.ADULTHOOD))).getItems().size());
+
+        selection = matrix.subMatrix(Selection.keys(Arrays.asList("Larisa", "Pepe")), Selection.<LegalDOBStatus>all());
+        assertEquals(2, selection.size());
+        assertEquals(new Integer(1), selection.totalColumn(LegalDOBStatus.CHILDHOOD).getValue());
+        assertEquals(new Integer(1), selection.aggregate(Selection.<String>all(),
+                Selection.keys(Arrays.asList(LegalDOBStatus.ADULTHOOD))).getValue());
+        assertEquals(new Integer(1), matrix.freeze().aggregate(Selection.keys(Arrays.asList("Larisa")),
+                Selection.<LegalDOBStatus>all()).getValue());
+
+        table = new SummedAreaTable<String, LegalDOBStatus>(matrix);
+        assertEquals(5, table.total(), 0);
+        assertEquals(4, table.sum("Fernando", "Pepe", LegalDOBStatus.ADULTHOOD, LegalDOBStatus.ADULTHOOD), 0);
+        assertEquals(3, table.sum("Isabel", "Lolo", LegalDOBStatus.CHILDHOOD, LegalDOBStatus.ADULTHOOD), 0);
+        assertEquals(0, table.sum(2, 1, 0, 1), 0);
+    }
+
+    @Test
+    public void testTopK() throws Exception {
+        List<Person> persons;
+        Matrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+        Comparator<Integer> order = new Comparator<Integer>() {
+
+            public int compare(Integer value1, Integer value2) {
+                return value1.compareTo(value2);
+            }
+        };
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Pepe", formatter.parse("11-04-1978"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+        persons.add(new Person("Ana", formatter.parse("18-12-2013"), Sex.FEMALE));
+
+        matrix = new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        List<TopK.Ranked<Sex, LegalDOBStatus, Person, Integer>> cells = TopK.cells(matrix, 2, order);
+        assertEquals(2, cells.size());
+        assertEquals(Sex.FEMALE, cells.get(0).getRowKey());
+        assertEquals(LegalDOBStatus.CHILDHOOD, cells.get(0).getColumnKey());
+        assertEquals(new Integer(3), cells.get(0).getCell().getValue());
+        assertEquals(new Integer(2), cells.get(1).getCell().getValue());
+
+        assertEquals(Sex.FEMALE, TopK.rows(matrix, 1, order).get(0).getKey());
+        assertEquals(2, TopK.columns(matrix, 5, order).size());
+        assertEquals(new Integer(3), TopK.columns(matrix, 5, order).get(0).getValue().getValue());
+        assertEquals(LegalDOBStatus.CHILDHOOD, TopK.columnsPerRow(matrix, 1, order).get(Sex.FEMALE).get(0).getKey());
+        assertTrue(TopK.cells(matrix, 0, order).isEmpty());
+    }
+
+    @Test
+    public void testFootprint() throws Exception {
+        List<Person> persons;
+        GenericMatrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+        persons.add(new Person("Ana", formatter.parse("18-12-2013"), Sex.FEMALE));
+
+        matrix = new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        Footprint footprint = Footprint.of(matrix);
+        assertEquals(2, footprint.getRows());
+        assertEquals(2, footprint.getColumns());
+        assertEquals(3, footprint.getCells());
+        assertEquals(3, footprint.getItemsPerCell().getMax());
+        assertEquals(3, footprint.getItemsPerCell().getCount());
+        assertEquals(2, footprint.getCellsPerRow().getMax());
+        assertTrue(footprint.getValueBytes() > 0);
+        assertEquals(footprint.getKeyBytes() + footprint.getCellBytes() + footprint.getItemBytes()
+                + footprint.getValueBytes(), footprint.getTotalBytes());
+        if (canReadCollections()) {
+            assertTrue(footprint.getSlack() > 0);
+            assertEquals(2.0 / 16, footprint.getRowMapLoad(), 0);
+            assertTrue(footprint.getColumnMapLoad() > 0 && footprint.getColumnMapLoad() <= 0.75);
+        } else {
+            assertTrue(Double.isNaN(footprint.getRowMapLoad()));
+        }
+
+        matrix.compact();
+        footprint = Footprint.of(matrix);
+        assertEquals(0, footprint.getSlack());
+        assertEquals(3, matrix.get(Sex.FEMALE, LegalDOBStatus.CHILDHOOD).getItems().size());
+    }
+
+    /**
+     * Whether the arrays of the collections of the JDK can be read by
+     * reflection, as Footprint does.
+     */
+    private static boolean canReadCollections() {
+        try {
+            ArrayList.class.getDeclaredField("elementData").setAccessible(true);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testListeners() throws Exception {
+        List<Person> persons;
+        GenericMatrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+        final List<List<Change<Sex, LegalDOBStatus, Integer>>> batches = new ArrayList<List<Change<Sex, LegalDOBStatus, Integer>>>();
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+
+        matrix = new GenericMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.addListener(new MatrixListener<Sex, LegalDOBStatus, Integer>() {
+
+            public void changed(List<Change<Sex, LegalDOBStatus, Integer>> changes) {
+                batches.add(changes);
+            }
+        });
+        matrix.putAll(persons);
+
+        assertEquals(1, batches.size());
+        // 2 cells, 2 row totals and 2 column totals
+        assertEquals(6, batches.get(0).size());
+        Change<Sex, LegalDOBStatus, Integer> change = batches.get(0).get(5);
+        assertEquals(Change.Kind.CELL, change.getKind());
+        assertEquals(Sex.FEMALE, change.getRowKey());
+        assertEquals(LegalDOBStatus.CHILDHOOD, change.getColumnKey());
+        assertNull(change.getOldValue());
+        assertEquals(new Integer(2), change.getNewValue());
+
+        matrix.remove(persons.get(0));
+        assertEquals(2, batches.size());
+        assertEquals(3, batches.get(1).size());
+        assertEquals(new Integer(1), batches.get(1).get(2).getOldValue());
+        assertNull(batches.get(1).get(2).getNewValue());
+
+        // The cell left without items had no value
+        matrix.put(persons.get(0));
+        assertEquals(3, batches.size());
+        assertEquals(3, batches.get(2).size());
+        for (Change<Sex, LegalDOBStatus, Integer> added : batches.get(2)) {
+            assertNull(added.getOldValue());
+            assertEquals(new Integer(1), added.getNewValue());
+        }
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        List<Person> persons;
+        Matrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+
+        matrix = new SortedMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        StringBuilder csv = new StringBuilder();
+        new MatrixWriter(MatrixWriter.Format.CSV, true, 0).write(matrix, csv);
+        assertEquals(",CHILDHOOD,ADULTHOOD,Total\n" + "MALE,,1,1\n" + "FEMALE,2,,2\n" + "Total,2,1,\n",
+                csv.toString());
+
+        StringWriter tsv = new StringWriter();
+        new MatrixWriter(MatrixWriter.Format.TSV).write(matrix, tsv);
+        assertEquals("\tCHILDHOOD\tADULTHOOD\n" + "MALE\t\t1\n" + "FEMALE\t2\t\n", tsv.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MatrixWriter(MatrixWriter.Format.FIXED_WIDTH, false, 6).write(matrix, bytes,
+                Charset.forName("UTF-8"));
+        assertEquals("       |CHILDHOOD |ADULTHOOD |\n" + "  MALE |       |     1 |\n"
+                + "FEMALE |     2 |       |\n", bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testColumnarWriter() throws Exception {
+        List<Person> persons;
+        Matrix<Sex, LegalDOBStatus, Person, Integer> matrix;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+
+        matrix = new SortedMatrix<Sex, LegalDOBStatus, Person, Integer>(new SexResolver(),
+                new DateResolver(), new CountAccumulator());
+        matrix.putAll(persons);
+
+        assertEquals(136, ColumnarWriter.size(matrix));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(136);
+        ColumnarWriter.write(matrix, buffer);
+        assertEquals(136, buffer.position());
+        assertEquals(ByteOrder.BIG_ENDIAN, buffer.order());
+
+        buffer.flip();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[8];
+        buffer.get(magic);
+        assertEquals("MTRXCOL1", new String(magic, "US-ASCII"));
+        assertEquals(2, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(2, buffer.getLong());
+        // Row keys, offsets padded to 16 and data to 16
+        assertEquals(0, buffer.getInt(24));
+        assertEquals(4, buffer.getInt(28));
+        assertEquals(10, buffer.getInt(32));
+        assertEquals("MALEFEMALE", ascii(buffer, 40, 10));
+        // Column keys, offsets padded to 16 and data to 24
+        assertEquals(18, buffer.getInt(64));
+        assertEquals("CHILDHOODADULTHOOD", ascii(buffer, 72, 18));
+        // Row index, column index, validity and values
+        assertEquals(0, buffer.getInt(96));
+        assertEquals(1, buffer.getInt(100));
+        assertEquals(1, buffer.getInt(104));
+        assertEquals(0, buffer.getInt(108));
+        assertEquals(3, buffer.get(112));
+        assertEquals(1.0, buffer.getDouble(120), 0);
+        assertEquals(2.0, buffer.getDouble(128), 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(136, ColumnarWriter.write(matrix, Channels.newChannel(bytes)));
+        byte[] written = new byte[136];
+        buffer.rewind();
+        buffer.get(written);
+        assertArrayEquals(written, bytes.toByteArray());
+    }
+
+    private static String ascii(ByteBuffer buffer, int position, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            result.append((char) buffer.get(position + i));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testMatrixBuilder() throws ParseException {
+        List<Person> persons;
+
+        DateFormat formatter;
+        formatter = new SimpleDateFormat("dd-MM-yyyy");
+
+        persons = new ArrayList<SimpleMatrixTest.Person>();
+        persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+        persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+        persons.add(new Person("Lucia", formatter.parse("18-12-2012"), Sex.FEMALE));
+        persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+        persons.add(new Person("Lolo", formatter.parse("18-12-1980"), Sex.MALE));
+
+        MatrixBuilder<Sex, LegalDOBStatus, Person, Integer> builder = new MatrixBuilder<Sex, LegalDOBStatus, Person,
+                Integer>(new SexResolver(), new DateResolver(), new CountAccumulator());
+        Matrix<Sex, LegalDOBStatus, Person, Integer> sequential = builder.capacity(
+                new Capacity().rows(2).columns(2).items(5)).build(persons);
+        assertTrue(sequential instanceof GenericMatrix);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Matrix<Sex, LegalDOBStatus, Person, Integer> parallel = builder.parallel(executor, 3).build(persons);
+            assertEquals(5, parallel.size());
+            for (Sex sex : Sex.values()) {
+                assertEquals(sequential.totalRow(sex).getValue(), parallel.totalRow(sex).getValue());
+                for (LegalDOBStatus status : LegalDOBStatus.values()) {
+                    assertEquals(sequential.get(sex, status).getValue(), parallel.get(sex, status).getValue());
+                }
+            }
+
+            Matrix<Sex, LegalDOBStatus, Person, Integer> sorted = builder.sorted().build(persons);
+            assertTrue(sorted instanceof SortedMatrix);
+            assertEquals(Integer.valueOf(3), sorted.totalRow(Sex.FEMALE).getValue());
+        } finally {
+            executor.shutdown();
+        }
+
+        Matrix<Sex, LegalDOBStatus, Person, Integer> versioned = new MatrixBuilder<Sex, LegalDOBStatus, Person,
+                Integer>(new SexResolver(), new DateResolver(), new CountAccumulator())
+                .concurrency(MatrixBuilder.Concurrency.VERSIONED).build(persons);
+        assertTrue(versioned instanceof VersionedMatrix);
+        assertEquals(Integer.valueOf(2), versioned.totalColumn(LegalDOBStatus.CHILDHOOD).getValue());
+
+        try {
+            builder.concurrency(MatrixBuilder.Concurrency.VERSIONED).build();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected, a versioned matrix is not sorted
+        }
+    }
 }
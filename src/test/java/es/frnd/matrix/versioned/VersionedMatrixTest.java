@@ -0,0 +1,135 @@
+package es.frnd.matrix.versioned;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VersionedMatrixTest {
+
+    class FirstLetter implements Resolver<String, Character> {
+
+        public Character resolve(String word) {
+            return word.charAt(0);
+        }
+    }
+
+    class Length implements Resolver<String, Integer> {
+
+        public Integer resolve(String word) {
+            return word.length();
+        }
+    }
+
+    class CountAccumulator implements Matrix.Accumulator<String, Integer> {
+
+        public Integer accumulate(List<String> items) {
+            return items.size();
+        }
+    }
+
+    private VersionedMatrix<Character, Integer, String, Integer> matrix() {
+        return new VersionedMatrix<Character, Integer, String, Integer>(new FirstLetter(), new Length(),
+                new CountAccumulator());
+    }
+
+    @Test
+    public void snapshotIsNotModified() {
+        VersionedMatrix<Character, Integer, String, Integer> matrix = matrix();
+        matrix.putAll(Arrays.asList("ant", "bee", "bat", "bird"));
+
+        Matrix<Character, Integer, String, Integer> snapshot = matrix.snapshot();
+        matrix.put("bug");
+        matrix.remove("ant");
+
+        assertEquals(4, snapshot.size());
+        assertEquals(Integer.valueOf(2), snapshot.get('b', 3).getValue());
+        assertTrue(snapshot.contains("ant"));
+        assertFalse(snapshot.contains("bug"));
+
+        assertEquals(4, matrix.size());
+        assertEquals(Integer.valueOf(3), matrix.get('b', 3).getValue());
+        assertEquals(Integer.valueOf(4), matrix.totalRow('b').getValue());
+        assertFalse(matrix.containsRow('a'));
+        assertEquals(3, matrix.snapshot().getNumber());
+    }
+
+    @Test
+    public void mergeAndClear() {
+        VersionedMatrix<Character, Integer, String, Integer> matrix = matrix();
+        VersionedMatrix<Character, Integer, String, Integer> other = matrix();
+        matrix.putAll(Arrays.asList("ant", "bee"));
+        other.putAll(Arrays.asList("bat", "bird"));
+
+        matrix.merge(other);
+        assertEquals(4, matrix.size());
+        assertEquals(Integer.valueOf(2), matrix.get('b', 3).getValue());
+        assertEquals(Integer.valueOf(3), matrix.totalColumn(3).getValue());
+
+        matrix.clear();
+        assertTrue(matrix.isEmpty());
+        assertEquals(2, other.size());
+
+        try {
+            other.merge(other);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(2, other.size());
+        assertEquals(1, other.snapshot().getNumber());
+    }
+
+    @Test
+    public void versionsShareUnmodifiedStructure() {
+        VersionedMatrix<Integer, Integer, Integer, Integer> matrix = new VersionedMatrix<Integer, Integer, Integer, Integer>(
+                new Resolver<Integer, Integer>() {
+
+                    public Integer resolve(Integer item) {
+                        return item % 500;
+                    }
+                }, new Resolver<Integer, Integer>() {
+
+                    public Integer resolve(Integer item) {
+                        return item % 3;
+                    }
+                }, new Matrix.Accumulator<Integer, Integer>() {
+
+                    public Integer accumulate(List<Integer> items) {
+                        return items.size();
+                    }
+                });
+        List<Integer> items = new ArrayList<Integer>();
+        for (int i = 0; i < 6000; i++) {
+            items.add(i);
+        }
+        matrix.putAll(items);
+        Matrix<Integer, Integer, Integer, Integer> loaded = matrix.snapshot();
+
+        for (int i = 0; i < 6000; i += 2) {
+            matrix.remove(i);
+        }
+        matrix.put(6000);
+
+        assertEquals(6000, loaded.size());
+        assertEquals(500, loaded.rowKeySet().size());
+        assertEquals(Integer.valueOf(2000), loaded.totalColumn(0).getValue());
+        assertEquals(new HashSet<Integer>(items), new HashSet<Integer>(loaded.getItems()));
+        assertTrue(loaded.contains(4));
+
+        assertEquals(3001, matrix.size());
+        assertEquals(251, matrix.rowKeySet().size());
+        assertEquals(Integer.valueOf(1000), matrix.totalColumn(1).getValue());
+        assertEquals(Integer.valueOf(1001), matrix.totalColumn(0).getValue());
+        assertEquals(1001, new HashSet<Integer>(matrix.totalColumn(0).getItems()).size());
+        assertFalse(matrix.contains(4));
+        assertTrue(matrix.contains(6000));
+        assertEquals(Integer.valueOf(12), matrix.totalRow(1).getValue());
+    }
+}
@@ -0,0 +1,192 @@
+package es.frnd.matrix.window;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Matrix.Resolver;
+import es.frnd.metrics.Metrics;
+import es.frnd.metrics.Metrics.Counter;
+import es.frnd.metrics.Metrics.Distribution;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WindowedMatrixTest {
+
+    /*
+     * Event to categorize
+     */
+    class Event {
+
+        String user;
+        String type;
+        long time;
+
+        public Event(String user, String type, long time) {
+            this.user = user;
+            this.type = type;
+            this.time = time;
+        }
+    }
+
+    class UserResolver implements Resolver<Event, String> {
+
+        public String resolve(Event event) {
+            return event.user;
+        }
+    }
+
+    class TypeResolver implements Resolver<Event, String> {
+
+        public String resolve(Event event) {
+            return event.type;
+        }
+    }
+
+    class TimeResolver implements Resolver<Event, Long> {
+
+        public Long resolve(Event event) {
+            return event.time;
+        }
+    }
+
+    class CountAccumulator implements Matrix.MergeableAccumulator<Event, Integer> {
+
+        public Integer accumulate(List<Event> items) {
+            return items.size();
+        }
+
+        public Integer merge(Integer value1, Integer value2) {
+            return (value1 != null ? value1 : 0) + (value2 != null ? value2 : 0);
+        }
+    }
+
+    private WindowedMatrix<String, String, Event, Integer> matrix(int buckets) {
+        return new WindowedMatrix<String, String, Event, Integer>(new UserResolver(), new TypeResolver(),
+                new TimeResolver(), new CountAccumulator(), 10, buckets);
+    }
+
+    @Test
+    public void slidingWindow() {
+        WindowedMatrix<String, String, Event, Integer> matrix = matrix(3);
+
+        matrix.putAll(Arrays.asList(new Event("ana", "login", 1), new Event("ana", "login", 5),
+                new Event("ana", "click", 12), new Event("bob", "login", 25)));
+
+        assertEquals(4, matrix.size());
+        assertEquals(Integer.valueOf(2), matrix.get("ana", "login").getValue());
+        assertEquals(Integer.valueOf(3), matrix.totalRow("ana").getValue());
+        assertEquals(Integer.valueOf(3), matrix.totalColumn("login").getValue());
+        assertEquals(0, matrix.getWindowStart());
+        assertEquals(30, matrix.getWindowEnd());
+
+        // The first bucket falls out of the window
+        matrix.put(new Event("bob", "click", 31));
+        assertEquals(3, matrix.size());
+        assertFalse(matrix.contains("ana", "login"));
+        assertEquals(Integer.valueOf(1), matrix.totalRow("ana").getValue());
+        assertEquals(Integer.valueOf(1), matrix.totalColumn("login").getValue());
+
+        // Too old
+        assertNull(matrix.put(new Event("ana", "login", 2)));
+        assertEquals(3, matrix.size());
+
+        matrix.advanceTo(100);
+        assertTrue(matrix.isEmpty());
+        assertTrue(matrix.rowKeySet().isEmpty());
+    }
+
+    @Test
+    public void tumblingWindow() {
+        WindowedMatrix<String, String, Event, Integer> matrix = matrix(1);
+
+        matrix.putAll(Arrays.asList(new Event("ana", "login", 1), new Event("ana", "login", 5)));
+        assertEquals(Integer.valueOf(2), matrix.get("ana", "login").getValue());
+
+        matrix.put(new Event("ana", "login", 11));
+        assertEquals(Integer.valueOf(1), matrix.get("ana", "login").getValue());
+        assertEquals(1, matrix.get("ana", "login").getItems().size());
+    }
+
+    @Test
+    public void remove() {
+        WindowedMatrix<String, String, Event, Integer> matrix = matrix(3);
+        Event first = new Event("ana", "login", 1);
+
+        matrix.putAll(Arrays.asList(first, new Event("ana", "login", 15)));
+        matrix.remove(first);
+
+        assertEquals(1, matrix.size());
+        assertEquals(Integer.valueOf(1), matrix.get("ana", "login").getValue());
+        assertEquals(Integer.valueOf(1), matrix.totalRow("ana").getValue());
+    }
+
+    @Test
+    public void removeWithMetrics() {
+        WindowedMatrix<String, String, Event, Integer> matrix = matrix(3);
+        Metrics metrics = new Metrics();
+        matrix.setMetrics(metrics);
+        Event first = new Event("ana", "login", 1);
+
+        matrix.putAll(Arrays.asList(first, new Event("ana", "login", 15)));
+        matrix.remove(first);
+
+        assertEquals(1, matrix.size());
+        assertEquals(1, matrix.getItems().size());
+        assertEquals(Integer.valueOf(1), matrix.get("ana", "login").getValue());
+        assertEquals(Integer.valueOf(1), matrix.totalColumn("login").getValue());
+        Metrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.get(Counter.REMOVALS));
+        // Searched in the cells, then in the list of items
+        assertEquals(2, snapshot.get(Distribution.REMOVAL_SCAN_LENGTH).getCount());
+    }
+
+    @Test
+    public void merge() {
+        WindowedMatrix<String, String, Event, Integer> matrix = matrix(3);
+        matrix.putAll(Arrays.asList(new Event("ana", "login", 1), new Event("ana", "click", 12)));
+
+        // A newer window slides this one
+        WindowedMatrix<String, String, Event, Integer> newer = matrix(3);
+        newer.putAll(Arrays.asList(new Event("ana", "login", 25), new Event("bob", "login", 41)));
+        matrix.merge(newer);
+        assertEquals(20, matrix.getWindowStart());
+        assertEquals(2, matrix.size());
+        assertFalse(matrix.contains("ana", "click"));
+        assertEquals(Integer.valueOf(1), matrix.get("ana", "login").getValue());
+        assertEquals(Integer.valueOf(2), matrix.totalColumn("login").getValue());
+        assertEquals(2, newer.size());
+
+        // The buckets of an older window before this one are left out
+        WindowedMatrix<String, String, Event, Integer> older = matrix(3);
+        older.putAll(Arrays.asList(new Event("ana", "click", 5), new Event("ana", "login", 22)));
+        matrix.merge(older);
+        assertEquals(3, matrix.size());
+        assertFalse(matrix.contains("ana", "click"));
+        assertNull(matrix.totalColumn("click"));
+        assertEquals(Integer.valueOf(2), matrix.get("ana", "login").getValue());
+        assertEquals(Integer.valueOf(2), matrix.totalRow("ana").getValue());
+
+        // The merged items expire with the bucket of their time
+        matrix.advanceTo(59);
+        assertEquals(1, matrix.size());
+        assertFalse(matrix.containsRow("ana"));
+
+        // Other buckets, resolved again
+        WindowedMatrix<String, String, Event, Integer> other = new WindowedMatrix<String, String, Event,
+                Integer>(new UserResolver(), new TypeResolver(), new TimeResolver(), new CountAccumulator(), 5, 6);
+        other.put(new Event("carol", "login", 55));
+        matrix.merge(other);
+        assertEquals(2, matrix.size());
+        assertEquals(Integer.valueOf(2), matrix.totalColumn("login").getValue());
+
+        try {
+            matrix.merge(matrix);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(2, matrix.size());
+    }
+}
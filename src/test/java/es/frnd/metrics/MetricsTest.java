@@ -0,0 +1,106 @@
+package es.frnd.metrics;
+
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.additive.Count;
+import es.frnd.matrix.generic.GenericMatrix;
+import es.frnd.metrics.Metrics.Counter;
+import es.frnd.metrics.Metrics.Distribution;
+import es.frnd.tree.CompactTree;
+import es.frnd.tree.Resolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+	class Length implements Matrix.Resolver<String, Integer>, Resolver<String, Integer> {
+
+		public Integer resolve(String word) {
+			return word.length();
+		}
+	}
+
+	class FirstLetter implements Matrix.Resolver<String, Character> {
+
+		public Character resolve(String word) {
+			return word.charAt(0);
+		}
+	}
+
+	@Test
+	public void matrix() {
+		GenericMatrix<Integer, Character, String, Long> matrix = new GenericMatrix<Integer, Character, String, Long>(
+				new Length(), new FirstLetter(), new Count<String>());
+		matrix.put("ant");
+		Metrics metrics = new Metrics();
+		matrix.setMetrics(metrics);
+		matrix.putAll(Arrays.asList("bee", "bat", "bird"));
+		matrix.remove("bat");
+		matrix.get(4, 'a');
+
+		Metrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(8, snapshot.get(Distribution.RESOLVE_NANOS).getCount());
+		assertEquals(12, snapshot.get(Distribution.ACCUMULATE_NANOS).getCount());
+		// Searched in the cells, then in the list of items ant, bee, bat, bird
+		assertEquals(2, snapshot.get(Distribution.REMOVAL_SCAN_LENGTH).getCount());
+		assertEquals(3, snapshot.get(Distribution.REMOVAL_SCAN_LENGTH).getMax());
+		assertEquals(1, snapshot.get(Counter.REMOVALS));
+		// Cells (3, b), (4, b) and totals b and 4
+		assertEquals(4, snapshot.get(Counter.CELL_CREATIONS));
+		assertEquals(13, snapshot.get(Counter.LOOKUPS));
+		assertEquals(5, snapshot.get(Counter.MISSES));
+		assertEquals(3, snapshot.get(Distribution.ACCUMULATED_ITEMS).getMax());
+
+		matrix.setMetrics(null);
+		matrix.put("cat");
+		assertEquals(8, metrics.get(Distribution.RESOLVE_NANOS).snapshot().getCount());
+		metrics.reset();
+		assertEquals(0, metrics.get(Counter.LOOKUPS));
+	}
+
+	@Test
+	public void cellsLeftEmpty() {
+		GenericMatrix<Integer, Character, String, Long> matrix = new GenericMatrix<Integer, Character, String, Long>(
+				new Length(), new FirstLetter(), new Count<String>());
+		matrix.putAll(Arrays.asList("ant", "bee"));
+		matrix.remove("bee");
+		Metrics metrics = new Metrics();
+		matrix.setMetrics(metrics);
+		matrix.put("bat");
+
+		assertEquals(3, metrics.get(Counter.LOOKUPS));
+		assertEquals(0, metrics.get(Counter.MISSES));
+		assertEquals(0, metrics.get(Counter.CELL_CREATIONS));
+	}
+
+	@Test
+	public void tree() {
+		Metrics metrics = new Metrics();
+		List<Resolver<String, ?>> resolvers = new ArrayList<Resolver<String, ?>>();
+		resolvers.add(new Length());
+		CompactTree<String> tree = new CompactTree<String>(Arrays.asList("ant", "bee", "bird"),
+				metrics.instrument(resolvers));
+		metrics.countNodes(tree);
+
+		assertTrue(metrics.get(Distribution.RESOLVE_NANOS).snapshot().getCount() >= 3);
+		assertEquals(6, metrics.get(Counter.NODES));
+	}
+
+	@Test
+	public void histogram() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(50.5, snapshot.getMean(), 1e-9);
+		assertEquals(100, snapshot.getMax());
+		assertEquals(63, snapshot.getPercentile(0.5));
+		assertEquals(100, snapshot.getPercentile(0.99));
+	}
+}
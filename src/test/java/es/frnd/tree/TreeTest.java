@@ -13,6 +13,10 @@ import org.joda.time.DateTime;
 import org.joda.time.Years;
 import org.junit.Test;
 
+import es.frnd.matrix.Matrix;
+import es.frnd.matrix.Selection;
+import es.frnd.matrix.tree.TreeMatrix;
+
 public class TreeTest {
 
 	@Test
@@ -70,6 +74,216 @@ public class TreeTest {
 		assertEquals(2, node.childCount());
 	}
 
+	@Test
+	public void compactTree() throws ParseException {
+		List<Person> persons = persons();
+		List<Resolver<Person, ?>> resolvers = resolvers();
+
+		CompactTree<Person> compact = new CompactTree<Person>(persons, resolvers);
+		Tree<Person> tree = new Tree<Person>(persons, resolvers);
+
+		assertEquals(tree.toString(), compact.toString());
+		assertEquals(10, compact.nodeCount()); // root, 3 sexes and 6 ages
+
+		Node<Person> node;
+		node = compact.getChildren().get(1); // Female elements
+		assertEquals(Sex.FEMALE, node.getData());
+		assertEquals(2, node.childCount());
+		node = node.getChildren().get(0);
+		assertEquals(1, node.childCount());
+		assertTrue(node.getChildren().get(0).isLeaf());
+		assertEquals("Larisa", ((Person) node.getChildren().get(0).getData()).name);
+	}
+
+	@Test
+	public void treeBuilder() throws ParseException {
+		List<Person> persons = persons();
+		List<Resolver<Person, ?>> resolvers = resolvers();
+
+		TreeBuilder<Person> builder = new TreeBuilder<Person>().level(resolvers.get(0), 3).level(resolvers.get(1));
+		Tree<Person> tree = new Tree<Person>(persons, resolvers);
+		assertEquals(tree.toString(), builder.build(persons).toString());
+		CompactTree<Person> compact = builder.buildCompact(persons);
+		assertEquals(tree.toString(), compact.toString());
+		assertEquals(10, compact.nodeCount());
+
+		// A fanout bigger than the elements is bounded by them
+		builder = new TreeBuilder<Person>().level(resolvers.get(0), 1000).level(resolvers.get(1), 1000);
+		assertEquals(tree.toString(), builder.build(persons).toString());
+		assertEquals(10, builder.buildCompact(persons).nodeCount());
+
+		try {
+			new TreeBuilder<Person>().level(resolvers.get(0), -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		try {
+			new Tree<Person>(persons, resolvers, new int[] { 2 });
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void lazyTree() throws ParseException {
+		List<Person> persons = persons();
+		List<Resolver<Person, ?>> resolvers = resolvers();
+
+		LazyTree<Person> lazy = new LazyTree<Person>(persons, resolvers);
+		assertEquals(3, lazy.childCount());
+
+		Node<Person> node = lazy.getChildren().get(0); // Male elements
+		assertFalse(lazy.isExpanded(node));
+		assertEquals(2, node.childCount());
+		assertTrue(lazy.isExpanded(node));
+		assertFalse(lazy.isExpanded(node.getChildren().get(0)));
+
+		lazy.collapse(node);
+		assertFalse(lazy.isExpanded(node));
+
+		assertEquals(new Tree<Person>(persons, resolvers).toString(), lazy.toString());
+	}
+
+	@Test
+	public void nodeByPath() throws ParseException {
+		List<Person> persons = persons();
+		List<Resolver<Person, ?>> resolvers = resolvers();
+		Integer age = (Integer) resolvers.get(1).resolve(persons.get(2)); // Isabel
+
+		List<Tree<Person>> trees = new ArrayList<Tree<Person>>();
+		trees.add(new Tree<Person>(persons, resolvers));
+		trees.add(new CompactTree<Person>(persons, resolvers));
+		trees.add(new LazyTree<Person>(persons, resolvers));
+
+		for (Tree<Person> tree : trees) {
+			Node<Person> node = tree.getNode(Sex.FEMALE, age);
+			assertNotNull(node);
+			assertEquals(age, node.getData());
+			assertEquals("Isabel", ((Person) node.getChildren().get(0).getData()).name);
+
+			assertEquals(Sex.MALE, tree.getNode(Sex.MALE).getData());
+			assertNotNull(tree.getNode(null, null));
+			Node<Person> none = tree.getNode((Object[]) null); // The child with a null key
+			assertNull(none.getData());
+			assertEquals(tree.getNode((Object) null).childCount(), none.childCount());
+			assertSame(tree, tree.getNode());
+			assertNull(tree.getNode(Sex.FEMALE, -1));
+			assertNull(node.getChild(persons.get(2)));
+		}
+	}
+
+	@Test
+	public void treeMatrix() throws ParseException {
+		List<Person> persons = persons();
+		List<Resolver<Person, ?>> resolvers = resolvers();
+		Integer age = (Integer) resolvers.get(1).resolve(persons.get(2)); // Isabel
+		Matrix.Accumulator<Person, Integer> count = new Matrix.Accumulator<Person, Integer>() {
+
+			@Override
+			public Integer accumulate(List<Person> items) {
+				return items.size();
+			}
+		};
+
+		Tree<Person> tree = new CompactTree<Person>(persons, resolvers);
+		Matrix<Sex, Integer, Person, Integer> matrix = new TreeMatrix<Sex, Integer, Person, Integer>(tree, 1, 2, count);
+
+		assertEquals(persons.size(), matrix.size());
+		assertEquals(3, matrix.rowKeySet().size());
+		assertEquals(Integer.valueOf(1), matrix.get(Sex.FEMALE, age).getValue());
+		assertEquals("Isabel", matrix.get(Sex.FEMALE, age).getItems().get(0).name);
+		assertEquals(Integer.valueOf(2), matrix.totalRow(Sex.FEMALE).getValue());
+		assertEquals(Integer.valueOf(2), matrix.totalColumn(null).getValue());
+		// A total joining the ranges of several nodes, by index and iterated
+		List<Person> joined = matrix.totalColumn(null).getItems();
+		assertEquals(2, joined.size());
+		assertEquals(Sex.MALE, joined.get(0).sex);
+		assertNull(joined.get(1).sex);
+		assertEquals(joined, new ArrayList<Person>(joined));
+		List<Person> all = matrix.aggregate(Selection.<Sex> all(), Selection.<Integer> all()).getItems();
+		assertEquals(persons.size(), all.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertTrue(persons.contains(all.get(i)));
+		}
+
+		Matrix<Integer, Sex, Person, Integer> transposed = new TreeMatrix<Integer, Sex, Person, Integer>(tree, 2, 1, count);
+		assertEquals(Integer.valueOf(1), transposed.get(age, Sex.FEMALE).getValue());
+		assertEquals(Integer.valueOf(2), transposed.totalRow(null).getValue());
+	}
+
+	@Test
+	public void traversal() throws ParseException {
+		Tree<Person> tree = new Tree<Person>(persons(), resolvers());
+		final List<String> visited = new ArrayList<String>();
+
+		// Skip the elements of the male branch
+		tree.depthFirst(new Visitor<Person>() {
+
+			@Override
+			public boolean visit(Node<Person> node, int depth) {
+				visited.add(depth + ":" + node.getData());
+				return node.getData() != Sex.MALE;
+			}
+		});
+		assertEquals(12, visited.size()); // root, 3 sexes, 4 ages and 4 elements
+		assertEquals("0:null", visited.get(0));
+		assertEquals("1:MALE", visited.get(1));
+		assertEquals("1:FEMALE", visited.get(2));
+		assertTrue(visited.get(4).startsWith("3:Person [name=Larisa"));
+
+		visited.clear();
+		tree.breadthFirst(new Visitor<Person>() {
+
+			@Override
+			public boolean visit(Node<Person> node, int depth) {
+				visited.add(depth + ":" + node.getData());
+				return depth < 1;
+			}
+		});
+		assertEquals(4, visited.size());
+		assertEquals("1:null", visited.get(3));
+	}
+
+	private List<Person> persons() throws ParseException {
+		DateFormat formatter = new SimpleDateFormat("dd-MM-yyyy");
+		List<Person> persons = new ArrayList<Person>();
+		persons.add(new Person("Fernando", formatter.parse("11-04-1979"), Sex.MALE));
+		persons.add(new Person("Larisa", formatter.parse("30-10-2011"), Sex.FEMALE));
+		persons.add(new Person("Isabel", formatter.parse("18-12-1985"), Sex.FEMALE));
+		persons.add(new Person("Lolo", formatter.parse("18-12-1980"), null));
+		persons.add(new Person("Lolailo", null, Sex.MALE));
+		persons.add(new Person("Lolailo", null, null));
+		return persons;
+	}
+
+	private List<Resolver<Person, ?>> resolvers() {
+		Resolver<Person, Sex> firstLevel = new Resolver<Person, Sex>() {
+
+			@Override
+			public Sex resolve(Person item) {
+				return item.sex;
+			}
+		};
+
+		Resolver<Person, Integer> secondLevel = new Resolver<Person, Integer>() {
+
+			@Override
+			public Integer resolve(Person item) {
+				if (item.dob == null) {
+					return null;
+				}
+				return Years.yearsBetween(new DateTime(item.dob.getTime()), DateTime.now()).getYears();
+			}
+		};
+
+		List<Resolver<Person, ?>> resolvers = new ArrayList<Resolver<Person, ?>>();
+		resolvers.add(firstLevel);
+		resolvers.add(secondLevel);
+		return resolvers;
+	}
+
 	/*
 	 * Bean to categorize
 	 */